@@ -0,0 +1,85 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* One exploit-path step as the policies see it: learn() a single
+ * configuration, then pick the lowest |Q|. "scan" is the linear pass
+ * argMaxSelect used to do, "index" reads the tournament tree maintained by
+ * ConfigurationStats. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArgMaxBenchmark {
+
+  @Param({"10", "1000", "100000", "1000000"})
+  public int size;
+
+  private ConfigurationStats _stats;
+  private int _next;
+  private long _seed = 42;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    _stats = new ConfigurationStats(size);
+    for (int i = 0; i < size; i++) {
+      _stats.learn(i, noise(), 0.0);
+    }
+  }
+
+  private double noise() {
+    _seed = (_seed * 6364136223846793005L) + 1442695040888963407L;
+    return (double) (_seed >>> 11) / (double) (1L << 53);
+  }
+
+  private void learnOne() {
+    _stats.learn(_next, noise(), 0.0);
+    _next = (_next + 1 == size) ? 0 : _next + 1;
+  }
+
+  @Benchmark
+  public int scan() {
+    learnOne();
+    double minScore = Double.MAX_VALUE;
+    int minInd = 0;
+    for (int i = 0; i < _stats.size(); i++) {
+      double reward = Math.abs(_stats.qvalue(i));
+      if (Double.compare(reward, minScore) < 0) {
+        minScore = reward;
+        minInd = i;
+      }
+    }
+    return minInd;
+  }
+
+  @Benchmark
+  public int index() {
+    learnOne();
+    return _stats.bestId();
+  }
+}
@@ -0,0 +1,142 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.types.*;
+
+import java.util.*;
+
+/* How quickly change detection (AeneasMachine.setChangeDetection) moves off
+ * a configuration whose energy has shifted, and how often it alarms when
+ * nothing shifts, as a plain program since it measures accuracy rather than
+ * time:
+ *
+ *   java -cp target/benchmarks.jar com.stoke.bench.ChangeDetectionCheck [runs]
+ *
+ * One discrete knob with ARMS settings; setting i costs 5 + 0.5 i J with
+ * Gaussian noise of sd NOISE, two tasks per sample. After SHIFT tasks the
+ * best setting gets SHIFT_JOULES worse, which makes setting 1 the best.
+ * Prints, per policy and with detection off and on, the mean number of
+ * tasks after the shift until setting 1 held at least half of the last
+ * WINDOW selections (runs that never got there count as TASKS - SHIFT, and
+ * are also counted), and the alarms raised over the same runs without the
+ * shift. Run r draws its noise and its policy's choices from seed r. */
+public class ChangeDetectionCheck {
+  public static final int ARMS = 8;
+  public static final double NOISE = 0.5;
+  public static final int SHIFT = 600;
+  public static final double SHIFT_JOULES = 4.0;
+  public static final int TASKS = 1200;
+  public static final int WINDOW = 20;
+  public static final StochasticPolicyType[] POLICIES = {
+    StochasticPolicyType.EPSILON_GREEDY_10, StochasticPolicyType.THOMPSON, StochasticPolicyType.VBDE_10
+  };
+
+  public static void main(String[] args) {
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+    Fixtures.quietStderr();
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+
+    System.out.format("%d runs\n", runs);
+    System.out.format("%-18s %9s %14s %6s %22s\n", "policy", "detection", "tasks to move", "never", "alarms without shift");
+    for (int p = 0; p < POLICIES.length; p++) {
+      for (int d = 0; d < 2; d++) {
+        boolean detection = (d == 1);
+        double tasks = 0.0;
+        int never = 0;
+        int alarms = 0;
+        for (int run = 1; run <= runs; run++) {
+          int moved = simulate(POLICIES[p], detection, true, run)[0];
+          if (moved < 0) {
+            never++;
+            moved = TASKS - SHIFT;
+          }
+          tasks += moved;
+          alarms += simulate(POLICIES[p], detection, false, run)[1];
+        }
+        System.out.format("%-18s %9s %14.1f %6d %22d\n", POLICIES[p], detection ? "on" : "off",
+            tasks / runs, never, alarms);
+      }
+    }
+  }
+
+  /* { tasks after the shift until setting 1 held half of the window, or -1,
+   * alarms raised } */
+  static int[] simulate(StochasticPolicyType type, boolean detection, final boolean shift, int run) {
+    final Random random = new Random(run);
+    final int[] task = { 0 };
+    final Knob[] knobs = new Knob[]{ knob() };
+    Reward reward = new Reward(null) {
+      @Override
+      public double valuate() {
+        int pos = knobs[0].getPos();
+        double joules = 5.0 + (0.5 * pos) + (random.nextGaussian() * NOISE);
+        if (shift && pos == 0 && task[0] >= SHIFT) {
+          joules += SHIFT_JOULES;
+        }
+        _cachedJoules = joules;
+        return joules;
+      }
+    };
+
+    Probe machine = new Probe(type, knobs, reward);
+    machine.setNumTaskSamples(2);
+    machine.setChangeDetection(detection);
+    machine.setPolicySeed(run);
+    machine.preStep();
+    int[] window = new int[WINDOW];
+    int onRunnerUp = 0;
+    int moved = -1;
+    for (; task[0] < TASKS; task[0]++) {
+      machine.postStep();
+      machine.preStep();
+      int slot = task[0] % WINDOW;
+      int now = (machine.currentConfiguration() == 1) ? 1 : 0;
+      onRunnerUp += now - window[slot];
+      window[slot] = now;
+      if (moved < 0 && task[0] >= SHIFT && (2 * onRunnerUp) >= WINDOW) {
+        moved = task[0] + 1 - SHIFT;
+      }
+    }
+    return new int[]{ moved, machine.detections() };
+  }
+
+  static Knob knob() {
+    Integer[] settings = new Integer[ARMS];
+    for (int i = 0; i < ARMS; i++) {
+      settings[i] = i + 1;
+    }
+    return new DiscreteKnob("arm", KnobValT.haveIntegers(settings));
+  }
+
+  /* The detector lives in the machine's mini bandit */
+  static class Probe extends AeneasMachine {
+    Probe(StochasticPolicyType type, Knob[] knobs, Reward reward) {
+      super(type, knobs, reward);
+    }
+
+    int detections() {
+      ChangeDetector detector = _miniMachine.changeDetector();
+      return (detector != null) ? detector.detections() : 0;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* Building the configuration set for a knob set, as createConfigsFromKnobs
+ * does on every continuous-knob round, and building a whole machine over it,
+ * by knob count (4 positions each: 16 to 65536 configurations). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigSpaceBenchmark {
+
+  @Param({"2", "4", "6", "8"})
+  public int numKnobs;
+
+  @Param({"4"})
+  public int positions;
+
+  private Knob[] _knobs;
+  private final Recording[] _recordings = new Recording[]{};
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Fixtures.quietStderr();
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+    _knobs = Fixtures.knobs(numKnobs, positions);
+  }
+
+  @Benchmark
+  public Configuration space() {
+    ConfigurationSpace space = new ConfigurationSpace(_knobs, _recordings);
+    return space.get(space.size() - 1);
+  }
+
+  @Benchmark
+  public AeneasMachine machine() {
+    return Fixtures.exploitingMachine(StochasticPolicyType.EPSILON_GREEDY_10, _knobs);
+  }
+}
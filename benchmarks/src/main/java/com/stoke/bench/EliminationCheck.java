@@ -0,0 +1,96 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* What SamplingPolicy.SAMPLE_ELIMINATE saves over SAMPLE_ALL, as a plain
+ * program since it measures accuracy rather than time:
+ *
+ *   java -cp target/benchmarks.jar com.stoke.bench.EliminationCheck [runs]
+ *
+ * Writes a trace in the stoke.log format (ETask lines) for CONFIGURATIONS
+ * configurations whose mean energy is 5 + SPREAD id J, with REWARDS
+ * recorded rewards each of Gaussian noise sd NOISE, drawn from seed 1. It
+ * then replays it with the Simulator for STEPS tasks, with SAMPLES task
+ * samples per configuration under both sampling policies. Replay r draws
+ * its rewards and its policy's choices from seed r, so the output is
+ * reproducible. Prints the Simulator's report: sampling tasks, regret,
+ * energy and convergence per setup. */
+public class EliminationCheck {
+  public static final int CONFIGURATIONS = 24;
+  public static final double SPREAD = 0.25;
+  public static final double NOISE = 0.5;
+  public static final int REWARDS = 50;
+  public static final int SAMPLES = 4;
+  public static final int STEPS = 500;
+  public static final StochasticPolicyType[] POLICIES = {
+    StochasticPolicyType.EPSILON_GREEDY_10, StochasticPolicyType.THOMPSON, StochasticPolicyType.VBDE_10
+  };
+
+  public static void main(String[] args) throws IOException {
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+    Fixtures.quietStderr();
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+
+    File path = File.createTempFile("elimination", ".log");
+    path.deleteOnExit();
+    writeTrace(path);
+    Simulator.Trace trace = Simulator.Trace.load(path.getPath());
+
+    List<Simulator.Setup> setups = new ArrayList<>();
+    for (int p = 0; p < POLICIES.length; p++) {
+      setups.add(new Simulator.Setup(POLICIES[p], SamplingPolicy.SAMPLE_ALL, SAMPLES));
+      setups.add(new Simulator.Setup(POLICIES[p], SamplingPolicy.SAMPLE_ELIMINATE, SAMPLES));
+    }
+    Simulator sim = new Simulator(trace);
+    sim.setSteps(STEPS);
+    sim.setRuns(runs);
+    sim.setSeed(1);
+    ForkJoinPool pool = new ForkJoinPool();
+    try {
+      Simulator.report(trace, sim.run(setups, pool), System.out);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  static void writeTrace(File path) throws IOException {
+    Random random = new Random(1);
+    PrintWriter out = new PrintWriter(new FileWriter(path));
+    try {
+      int task = 0;
+      for (int i = 0; i < REWARDS; i++) {
+        for (int id = 0; id < CONFIGURATIONS; id++) {
+          double joules = 5.0 + (SPREAD * id) + (random.nextGaussian() * NOISE);
+          out.format(Locale.ROOT, "ETask %d: Configuration:%d Energy:%.4f Reward:%.4f Raw:%.4f Time:0\n",
+              task++, id, joules, -joules, joules);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
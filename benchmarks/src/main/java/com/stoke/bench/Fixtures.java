@@ -0,0 +1,145 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.eval.*;
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+
+/* Shared set-up for the benchmarks: synthetic knobs and a Reward that never
+ * touches the android battery APIs, so everything runs on a desktop JVM. */
+public class Fixtures {
+
+  /* The library reports every step on stderr; benchmarks measure the work,
+   * not the terminal. */
+  public static void quietStderr() {
+    System.setErr(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) { }
+
+      @Override
+      public void write(byte[] b, int off, int len) { }
+    }));
+  }
+
+  public static Knob[] knobs(int numKnobs, int positions) {
+    Knob[] knobs = new Knob[numKnobs];
+    for (int i = 0; i < numKnobs; i++) {
+      Integer[] settings = new Integer[positions];
+      for (int j = 0; j < positions; j++) {
+        settings[j] = (j + 1) * 1000;
+      }
+      knobs[i] = new DiscreteKnob("knob-" + i, KnobValT.haveIntegers(settings));
+    }
+    return knobs;
+  }
+
+  /* Knobs whose product is exactly size: as many 10-position knobs as
+   * divide it, plus one knob for whatever is left. */
+  public static Knob[] knobsForSize(int size) {
+    List<Knob> knobs = new ArrayList<>();
+    int rest = size;
+    while (rest % 10 == 0 && rest > 10) {
+      knobs.add(knob("knob-" + knobs.size(), 10));
+      rest /= 10;
+    }
+    knobs.add(knob("knob-" + knobs.size(), rest));
+    return knobs.toArray(new Knob[]{});
+  }
+
+  private static Knob knob(String name, int positions) {
+    Integer[] settings = new Integer[positions];
+    for (int j = 0; j < positions; j++) {
+      settings[j] = (j + 1) * 1000;
+    }
+    return new DiscreteKnob(name, KnobValT.haveIntegers(settings));
+  }
+
+  /* A machine that is past sampling from the first step, so benchmarks
+   * measure the steady state rather than the SAMPLE_ALL sweep. */
+  public static AeneasMachine exploitingMachine(StochasticPolicyType type, Knob[] knobs) {
+    return new AeneasMachine(knobs, new Recording[]{}, null, type, SamplingPolicy.SAMPLE_NONE,
+        new SyntheticReward(knobs), Experiment.MACHINE, false);
+  }
+
+  /* A mini bandit whose stats already hold one observation per configuration */
+  public static MiniMachine trainedMiniMachine(StochasticPolicyType type, Knob[] knobs) {
+    return trainedMiniMachine(exploitingMachine(type, knobs), type, knobs);
+  }
+
+  /* The same, under a machine that hands its policies a context of the given
+   * dimension (see AeneasMachine.taskContext) */
+  public static MiniMachine contextualMiniMachine(StochasticPolicyType type, Knob[] knobs, int dimension) {
+    AeneasMachine machine = exploitingMachine(type, knobs);
+    machine.setContextDimension(dimension);
+    return trainedMiniMachine(machine, type, knobs);
+  }
+
+  private static MiniMachine trainedMiniMachine(AeneasMachine machine, StochasticPolicyType type, Knob[] knobs) {
+    Map<String, Knob> byName = new LinkedHashMap<>();
+    for (int i = 0; i < knobs.length; i++) {
+      byName.put(knobs[i].name(), knobs[i]);
+    }
+    ConfigurationSpace space = new ConfigurationSpace(knobs, new Recording[]{});
+    MiniMachine mini = new MiniMachine(machine, byName, space, SamplingPolicy.SAMPLE_NONE, type, RewardType.JOULES);
+    Noise noise = new Noise();
+    for (int id = 0; id < space.size(); id++) {
+      mini.stats().learn(id, -10.0 * noise.next(), 0.0);
+    }
+    return mini;
+  }
+
+  /* Deterministic uniform [0, 1) */
+  public static class Noise {
+    private long _seed = 42;
+
+    public double next() {
+      _seed = (_seed * 6364136223846793005L) + 1442695040888963407L;
+      return (double) (_seed >>> 11) / (double) (1L << 53);
+    }
+  }
+
+  /* Energy is a fixed function of the selected knob positions plus a little
+   * deterministic noise, so the bandit has something to converge on. */
+  public static class SyntheticReward extends Reward {
+    private final Knob[] _knobs;
+    private long _seed = 42;
+
+    public SyntheticReward(Knob[] knobs) {
+      super(null);
+      _knobs = knobs;
+    }
+
+    @Override
+    public double valuate() {
+      double joules = 10.0;
+      for (int i = 0; i < _knobs.length; i++) {
+        joules += (i + 1) * Math.abs(_knobs[i].getPos() - 1);
+      }
+      _seed = (_seed * 6364136223846793005L) + 1442695040888963407L;
+      joules += ((_seed >>> 40) & 0xff) / 256.0;
+      _cachedJoules = joules;
+      return joules;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+
+/* How fast ContinuousSearch.GAUSSIAN_PROCESS finds an inferred knob's
+ * optimum compared to the default rounds, as a plain program since it
+ * measures accuracy rather than time:
+ *
+ *   java -cp target/benchmarks.jar com.stoke.bench.GaussianProcessCheck [runs]
+ *
+ * The inferred knob spans 500-10000 and its energy grows by 1 J per 300
+ * away from an optimum drawn per run; a two-setting discrete knob adds 1 J
+ * on its second setting, and the reward has Gaussian noise of sd NOISE.
+ * Every run is TASKS tasks (below the round safety limit) with two tasks
+ * per sample. Prints, averaged over the runs, the task at which the knob
+ * first came within NEAR of the optimum (and in how many runs it never
+ * did), the mean distance over all tasks and the final distance. */
+public class GaussianProcessCheck {
+  public static final int TASKS = 120;
+  public static final int NEAR = 200;
+  public static final double NOISE = 0.3;
+
+  public static void main(String[] args) {
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+    Fixtures.quietStderr();
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+
+    System.out.format("%-18s %10s %6s %14s %14s\n", "search", "first near", "never", "mean |v-opt|", "final |v-opt|");
+    ContinuousSearch[] searches = { ContinuousSearch.ROUNDS, ContinuousSearch.GAUSSIAN_PROCESS };
+    for (int s = 0; s < searches.length; s++) {
+      double[] result = simulate(searches[s], runs);
+      System.out.format("%-18s %10.1f %6d %14.0f %14.0f\n",
+          searches[s], result[0], (int) result[1], result[2], result[3]);
+    }
+  }
+
+  /* { mean first near task over the runs that got near, runs that never
+   * did, mean distance, mean final distance } */
+  static double[] simulate(ContinuousSearch search, int runs) {
+    PrintStream out = System.out;
+    double first = 0.0;
+    int never = 0;
+    double distance = 0.0;
+    double last = 0.0;
+    for (int run = 1; run <= runs; run++) {
+      final Random random = new Random(run);
+      final int optimum = 1000 + random.nextInt(8000);
+      final Knob[] knobs = new Knob[]{
+        new DiscreteKnob("a", KnobValT.haveIntegers(1, 2)),
+        new InferredKnob("interval", 10000, 500, new Integer[]{ 1000 })
+      };
+      Reward reward = new Reward(null) {
+        @Override
+        public double valuate() {
+          int v = KnobValT.needInteger(knobs[1].getSetting());
+          double joules = 5.0 + (random.nextGaussian() * NOISE) + (Math.abs(v - optimum) / 300.0) + knobs[0].getPos();
+          _cachedJoules = joules;
+          return joules;
+        }
+      };
+
+      int near = -1;
+      double sum = 0.0;
+      // The round logic reports on stdout
+      System.setOut(new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+      }));
+      try {
+        AeneasMachine machine = new AeneasMachine(StochasticPolicyType.NO_STOCHASTIC, knobs, reward);
+        machine.setNumTaskSamples(2);
+        machine.setContinuousSearch(search);
+        machine.preStep();
+        for (int task = 0; task < TASKS; task++) {
+          machine.postStep();
+          machine.preStep();
+          int d = Math.abs(KnobValT.needInteger(knobs[1].getSetting()) - optimum);
+          sum += d;
+          if (near < 0 && d <= NEAR) {
+            near = task;
+          }
+        }
+      } finally {
+        System.setOut(out);
+      }
+      if (near >= 0) {
+        first += near;
+      } else {
+        never++;
+      }
+      distance += sum / TASKS;
+      last += Math.abs(KnobValT.needInteger(knobs[1].getSetting()) - optimum);
+    }
+    double reached = runs - never;
+    return new double[]{ (reached > 0) ? first / reached : -1, never, distance / runs, last / runs };
+  }
+}
@@ -0,0 +1,81 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* Round-trip latency of AeneasMachine.interact() as seen by the app thread,
+ * blocking handoff versus the async observation slot, on a dedicated machine
+ * thread or on a shared AeneasRuntime. Sample-time mode so the report carries
+ * p0.50 / p0.99. */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InteractBenchmark {
+
+  @Param({"BLOCKING", "ASYNC"})
+  public String mode;
+
+  @Param({"false", "true"})
+  public boolean shared;
+
+  @Param({"3"})
+  public int numKnobs;
+
+  @Param({"4"})
+  public int positions;
+
+  private AeneasMachine _machine;
+  private AeneasRuntime _runtime;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Fixtures.quietStderr();
+    Knob[] knobs = Fixtures.knobs(numKnobs, positions);
+    _machine = new AeneasMachine(StochasticPolicyType.EPSILON_GREEDY_10, knobs, new Fixtures.SyntheticReward(knobs));
+    _machine.setNumTaskSamples(1);
+    _machine.setAsyncInteract(mode.equals("ASYNC"));
+    if (shared) {
+      _runtime = new AeneasRuntime();
+      _runtime.register(_machine);
+    }
+    _machine.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    _machine.stop();
+    if (_runtime != null) {
+      _runtime.shutdown();
+    }
+  }
+
+  @Benchmark
+  public void interact() {
+    _machine.interact();
+  }
+}
@@ -0,0 +1,175 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+
+/* How log-scaled and real-valued inferred knobs are searched, as a plain
+ * program since it measures accuracy rather than time:
+ *
+ *   java -cp target/benchmarks.jar com.stoke.bench.KnobScaleCheck [runs]
+ *
+ * 1. A timeout over 10-60000 ms, linear and log-scaled, whose optimum is
+ *    drawn per run log-uniformly from 20-5000 ms; energy grows by 2 J per
+ *    e-fold away from it. Prints, for both searches, the task at which the
+ *    knob first came within NEAR of the optimum (and in how many runs it
+ *    never did) and the final distance, both relative to the optimum.
+ * 2. A real-valued ratio over 0.1-1.0 whose optimum is drawn uniformly from
+ *    0.2-0.9; energy grows by 1 J per 0.1 away from it. Prints the final
+ *    distance for both searches.
+ *
+ * The reward has Gaussian noise of sd NOISE, every run is TASKS tasks
+ * (below the round safety limit) with two tasks per sample, and run r
+ * draws its optimum and its noise from seed r. */
+public class KnobScaleCheck {
+  public static final int TASKS = 120;
+  public static final double NEAR = 0.1;
+  public static final double NOISE = 0.3;
+
+  public static void main(String[] args) {
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+    Fixtures.quietStderr();
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+    ContinuousSearch[] searches = { ContinuousSearch.ROUNDS, ContinuousSearch.GAUSSIAN_PROCESS };
+
+    System.out.format("%d runs\n", runs);
+    System.out.format("%-18s %-6s %10s %6s %16s\n", "timeout", "scale", "first near", "never", "final |v/opt-1|");
+    for (int s = 0; s < searches.length; s++) {
+      for (int l = 0; l < 2; l++) {
+        boolean logScale = (l == 1);
+        double[] result = timeout(searches[s], logScale, runs);
+        System.out.format("%-18s %-6s %10.1f %6d %16.2f\n", searches[s], logScale ? "log" : "linear",
+            result[0], (int) result[1], result[2]);
+      }
+    }
+
+    System.out.format("%-18s %14s\n", "ratio", "final |v-opt|");
+    for (int s = 0; s < searches.length; s++) {
+      System.out.format("%-18s %14.3f\n", searches[s], ratio(searches[s], runs));
+    }
+  }
+
+  /* { mean first near task over the runs that got near, runs that never
+   * did, mean final relative distance } */
+  static double[] timeout(ContinuousSearch search, boolean logScale, int runs) {
+    double first = 0.0;
+    int never = 0;
+    double last = 0.0;
+    for (int run = 1; run <= runs; run++) {
+      final Random random = new Random(run);
+      final double optimum = 20.0 * Math.exp(random.nextDouble() * Math.log(250.0));
+      final Knob[] knobs = new Knob[]{
+        new InferredKnob("timeout", 60000, 10, new Integer[]{ 1000 }, logScale)
+      };
+      Reward reward = new Reward(null) {
+        @Override
+        public double valuate() {
+          int v = KnobValT.needInteger(knobs[0].getSetting());
+          double joules = 5.0 + (random.nextGaussian() * NOISE) + (2.0 * Math.abs(Math.log(v / optimum)));
+          _cachedJoules = joules;
+          return joules;
+        }
+      };
+
+      int near = -1;
+      double d = 0.0;
+      AeneasMachine machine = machine(search, knobs, reward);
+      PrintStream out = quietStdout();
+      try {
+        machine.preStep();
+        for (int task = 0; task < TASKS; task++) {
+          machine.postStep();
+          machine.preStep();
+          d = Math.abs((KnobValT.needInteger(knobs[0].getSetting()) / optimum) - 1.0);
+          if (near < 0 && d <= NEAR) {
+            near = task;
+          }
+        }
+      } finally {
+        System.setOut(out);
+      }
+      if (near >= 0) {
+        first += near;
+      } else {
+        never++;
+      }
+      last += d;
+    }
+    double reached = runs - never;
+    return new double[]{ (reached > 0) ? first / reached : -1, never, last / runs };
+  }
+
+  /* Mean final distance to the optimum */
+  static double ratio(ContinuousSearch search, int runs) {
+    double last = 0.0;
+    for (int run = 1; run <= runs; run++) {
+      final Random random = new Random(run);
+      final double optimum = 0.2 + (random.nextDouble() * 0.7);
+      final Knob[] knobs = new Knob[]{
+        new InferredKnob("ratio", 1.0, 0.1, new Double[]{ 0.75 })
+      };
+      Reward reward = new Reward(null) {
+        @Override
+        public double valuate() {
+          double v = KnobValT.needDouble(knobs[0].getSetting());
+          double joules = 5.0 + (random.nextGaussian() * NOISE) + (10.0 * Math.abs(v - optimum));
+          _cachedJoules = joules;
+          return joules;
+        }
+      };
+
+      AeneasMachine machine = machine(search, knobs, reward);
+      PrintStream out = quietStdout();
+      try {
+        machine.preStep();
+        for (int task = 0; task < TASKS; task++) {
+          machine.postStep();
+          machine.preStep();
+        }
+      } finally {
+        System.setOut(out);
+      }
+      last += Math.abs(KnobValT.needDouble(knobs[0].getSetting()) - optimum);
+    }
+    return last / runs;
+  }
+
+  static AeneasMachine machine(ContinuousSearch search, Knob[] knobs, Reward reward) {
+    AeneasMachine machine = new AeneasMachine(StochasticPolicyType.NO_STOCHASTIC, knobs, reward);
+    machine.setNumTaskSamples(2);
+    machine.setContinuousSearch(search);
+    return machine;
+  }
+
+  /* The round logic reports on stdout; returns the stream to put back */
+  static PrintStream quietStdout() {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) { }
+    }));
+    return out;
+  }
+}
@@ -0,0 +1,65 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.types.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* KnobVal arithmetic as the interval division code uses it (midpoints of
+ * two settings, comparisons, unboxing), and the seeding helper built on it. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KnobValBenchmark {
+
+  private KnobVal _ia = KnobValT.haveInteger(10000);
+  private KnobVal _ib = KnobValT.haveInteger(500);
+  private KnobVal _da = KnobValT.haveDouble(0.75);
+  private KnobVal _db = KnobValT.haveDouble(0.25);
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Fixtures.quietStderr();
+  }
+
+  @Benchmark
+  public int integerMidpoint() {
+    KnobVal mid = _ia.add(_ib).dividedBy(2);
+    return mid.compareTo(_ib) + KnobValT.needInteger(mid);
+  }
+
+  @Benchmark
+  public double doubleMidpoint() {
+    KnobVal mid = _da.add(_db).dividedBy(2);
+    return mid.compareTo(_db) + KnobValT.forceDouble(mid);
+  }
+
+  @Benchmark
+  public KnobVal[] seedMinMax() {
+    return AeneasMachine.seedMinMax(10000, 500, AeneasMachine.SLOTS);
+  }
+}
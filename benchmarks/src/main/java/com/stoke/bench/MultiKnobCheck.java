@@ -0,0 +1,132 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+
+/* How the two continuous searches do with two inferred knobs searched
+ * together, as a plain program since it measures accuracy rather than time:
+ *
+ *   java -cp target/benchmarks.jar com.stoke.bench.MultiKnobCheck [runs]
+ *
+ * A GPS interval over 500-10000 and a sync interval over 1000-60000, each
+ * with an optimum drawn per run; energy grows by 1 J per 300 away from the
+ * GPS optimum and by 1 J per 2000 away from the sync optimum, with Gaussian
+ * noise of sd NOISE. Every run is TASKS tasks (below the round safety limit)
+ * with two tasks per sample. Run r draws its optima and its noise from seed
+ * r. Prints, averaged over the runs, the task from which both knobs stayed
+ * within NEAR of their range of the optimum to the end of the run (and in
+ * how many runs that never happened), and the final distance on each knob
+ * as a fraction of its range. */
+public class MultiKnobCheck {
+  public static final int TASKS = 120;
+  public static final double NEAR = 0.02;
+  public static final double NOISE = 0.3;
+  public static final int GPS_LOW = 500;
+  public static final int GPS_HIGH = 10000;
+  public static final int SYNC_LOW = 1000;
+  public static final int SYNC_HIGH = 60000;
+
+  public static void main(String[] args) {
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+    Fixtures.quietStderr();
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+
+    System.out.format("%d runs\n", runs);
+    System.out.format("%-18s %10s %6s %12s %12s\n", "search", "settled", "never", "final gps", "final sync");
+    ContinuousSearch[] searches = { ContinuousSearch.ROUNDS, ContinuousSearch.GAUSSIAN_PROCESS };
+    for (int s = 0; s < searches.length; s++) {
+      double[] result = simulate(searches[s], runs);
+      System.out.format("%-18s %10.1f %6d %11.1f%% %11.1f%%\n",
+          searches[s], result[0], (int) result[1], 100.0 * result[2], 100.0 * result[3]);
+    }
+  }
+
+  /* { mean settling task over the runs that settled, runs that never did,
+   * mean final GPS distance, mean final sync distance } as fractions of
+   * each knob's range */
+  static double[] simulate(ContinuousSearch search, int runs) {
+    PrintStream out = System.out;
+    double settled = 0.0;
+    int never = 0;
+    double gpsLast = 0.0;
+    double syncLast = 0.0;
+    for (int run = 1; run <= runs; run++) {
+      final Random random = new Random(run);
+      final int gpsOptimum = GPS_LOW + random.nextInt(GPS_HIGH - GPS_LOW);
+      final int syncOptimum = SYNC_LOW + random.nextInt(SYNC_HIGH - SYNC_LOW);
+      final Knob[] knobs = new Knob[]{
+        new InferredKnob("gps", GPS_HIGH, GPS_LOW, new Integer[]{ 1000 }),
+        new InferredKnob("sync", SYNC_HIGH, SYNC_LOW, new Integer[]{ 5000 })
+      };
+      Reward reward = new Reward(null) {
+        @Override
+        public double valuate() {
+          int gps = KnobValT.needInteger(knobs[0].getSetting());
+          int sync = KnobValT.needInteger(knobs[1].getSetting());
+          double joules = 5.0 + (random.nextGaussian() * NOISE)
+              + (Math.abs(gps - gpsOptimum) / 300.0) + (Math.abs(sync - syncOptimum) / 2000.0);
+          _cachedJoules = joules;
+          return joules;
+        }
+      };
+
+      int lastOff = -1;
+      double gps = 0.0;
+      double sync = 0.0;
+      // The round logic reports on stdout
+      System.setOut(new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+      }));
+      try {
+        AeneasMachine machine = new AeneasMachine(StochasticPolicyType.NO_STOCHASTIC, knobs, reward);
+        machine.setNumTaskSamples(2);
+        machine.setContinuousSearch(search);
+        machine.preStep();
+        for (int task = 0; task < TASKS; task++) {
+          machine.postStep();
+          machine.preStep();
+          gps = Math.abs(KnobValT.needInteger(knobs[0].getSetting()) - gpsOptimum) / (double) (GPS_HIGH - GPS_LOW);
+          sync = Math.abs(KnobValT.needInteger(knobs[1].getSetting()) - syncOptimum) / (double) (SYNC_HIGH - SYNC_LOW);
+          if (gps > NEAR || sync > NEAR) {
+            lastOff = task;
+          }
+        }
+      } finally {
+        System.setOut(out);
+      }
+      if (lastOff < TASKS - 1) {
+        settled += lastOff + 1;
+      } else {
+        never++;
+      }
+      gpsLast += gps;
+      syncLast += sync;
+    }
+    double reached = runs - never;
+    return new double[]{ (reached > 0) ? settled / reached : -1, never, gpsLast / runs, syncLast / runs };
+  }
+}
@@ -0,0 +1,114 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* Selection cost of the policies over trained stats. Every operation first
+ * learns one observation, as the machine does between two selections, so
+ * incremental structures pay for their upkeep. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PolicyBenchmark {
+
+  /* Context features LinUCB regresses on (plus its constant) */
+  public static final int CONTEXT = 4;
+
+  @Param({"10", "1000", "100000"})
+  public int size;
+
+  private ConfigurationStats _stats;
+  private StochasticPolicy _greedy;
+  private StochasticPolicy _ucb;
+  private StochasticPolicy _thompson;
+  private StochasticPolicy _linucb;
+  private double[] _context;
+  private final Fixtures.Noise _noise = new Fixtures.Noise();
+  private int _next;
+  private int _step;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Fixtures.quietStderr();
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+    Knob[] knobs = Fixtures.knobsForSize(size);
+    MiniMachine mini = Fixtures.trainedMiniMachine(StochasticPolicyType.UCB, knobs);
+    _stats = mini.stats();
+    _greedy = new EpsilonGreedyStochastic(mini, new ConfigurationSpace(knobs, new Recording[]{}), 0.0);
+    _ucb = new UCBStochastic(mini, new ConfigurationSpace(knobs, new Recording[]{}));
+    _thompson = new ThompsonStochastic(mini, new ConfigurationSpace(knobs, new Recording[]{}));
+
+    MiniMachine contextual = Fixtures.contextualMiniMachine(StochasticPolicyType.LINUCB, knobs, CONTEXT);
+    _linucb = new LinUCBStochastic(contextual, new ConfigurationSpace(knobs, new Recording[]{}));
+    _context = contextual.machine().taskContext();
+    for (int id = 0; id < size; id++) {
+      nextContext();
+      _linucb.observe(id, -10.0 * _noise.next());
+    }
+    _step = size;
+  }
+
+  private void learnOne() {
+    _stats.learn(_next, -10.0 * _noise.next(), 0.0);
+    _next = (_next + 1 == size) ? 0 : _next + 1;
+    _step++;
+  }
+
+  private void nextContext() {
+    for (int i = 0; i < CONTEXT; i++) {
+      _context[i] = _noise.next();
+    }
+  }
+
+  @Benchmark
+  public Configuration argMaxSelect() {
+    learnOne();
+    return _greedy.argMaxSelect(_step);
+  }
+
+  @Benchmark
+  public Configuration ucbSelect() {
+    learnOne();
+    return _ucb.stochasticSelect(_step);
+  }
+
+  @Benchmark
+  public Configuration thompsonSelect() {
+    learnOne();
+    return _thompson.stochasticSelect(_step);
+  }
+
+  /* Learns under one context and selects under the next, as the machine does */
+  @Benchmark
+  public Configuration linucbSelect() {
+    _linucb.observe(_next, -10.0 * _noise.next());
+    _next = (_next + 1 == size) ? 0 : _next + 1;
+    nextContext();
+    return _linucb.stochasticSelect(_step++);
+  }
+}
@@ -0,0 +1,225 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+
+/* The checks behind the round test (AeneasMachine.setRoundTest), as a plain
+ * program since they measure accuracy rather than time:
+ *
+ *   java -cp target/benchmarks.jar com.stoke.bench.RoundTestCheck [runs]
+ *
+ * 1. WelchTest.studentTCdf against the closed forms of the t CDF for integer
+ *    degrees of freedom (Abramowitz & Stegun 26.7.3-4), 1 to MAX_DF degrees
+ *    of freedom over t in [-10, 10]. Exits with 1 if any value is off by
+ *    more than TOLERANCE.
+ * 2. Rounds ended by the test against rounds ended on CONVERGE_THRESHOLD:
+ *    an inferred knob over 500-10000 whose energy grows by 1 J per 300 away
+ *    from an optimum drawn per run, a two-setting discrete knob alongside,
+ *    Gaussian reward noise, EPSILON_GREEDY_10 and TASKS tasks (below the
+ *    round safety limit). Run r draws its optimum, its noise and its
+ *    policy's choices from seed r, so both modes face the same runs and
+ *    the output is reproducible. Prints the mean and standard deviation
+ *    over the runs of the rounds ended and of the final distance to the
+ *    optimum, and the mean paired difference (t-test - converge) with its
+ *    standard error. */
+public class RoundTestCheck {
+  public static final double TOLERANCE = 1e-8;
+  public static final int MAX_DF = 30;
+  public static final int TASKS = 120;
+  public static final double[] NOISE = { 0.3, 1.5 };
+  public static final int RUNS = 200;
+
+  public static void main(String[] args) throws IOException {
+    int runs = (args.length > 0) ? Integer.parseInt(args[0]) : RUNS;
+    Fixtures.quietStderr();
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+
+    double maxError = checkCdf();
+    System.out.format("studentTCdf(2, 10) = %.6f, studentTCdf(-1, 3) = %.6f\n",
+        WelchTest.studentTCdf(2.0, 10), WelchTest.studentTCdf(-1.0, 3));
+    System.out.format("studentTCdf: largest error against the closed forms %.2e (df 1-%d)\n", maxError, MAX_DF);
+
+    System.out.format("%d runs, mean +- sd\n", runs);
+    System.out.format("%-10s %6s %14s %16s\n", "rounds", "noise", "rounds ended", "final |v-opt|");
+    for (int n = 0; n < NOISE.length; n++) {
+      double[][] converge = simulate(false, NOISE[n], runs);
+      double[][] test = simulate(true, NOISE[n], runs);
+      System.out.format("%-10s %6.1f %7.2f +- %4.2f %8.0f +- %4.0f\n", "converge", NOISE[n],
+          mean(converge[0]), sd(converge[0]), mean(converge[1]), sd(converge[1]));
+      System.out.format("%-10s %6.1f %7.2f +- %4.2f %8.0f +- %4.0f\n", "t-test", NOISE[n],
+          mean(test[0]), sd(test[0]), mean(test[1]), sd(test[1]));
+      double[] rounds = difference(test[0], converge[0]);
+      double[] distance = difference(test[1], converge[1]);
+      System.out.format("%-10s %6.1f %7.2f +- %4.2f %8.0f +- %4.0f  (mean +- standard error)\n", "difference", NOISE[n],
+          mean(rounds), sd(rounds) / Math.sqrt(runs), mean(distance), sd(distance) / Math.sqrt(runs));
+    }
+
+    if (!(maxError <= TOLERANCE)) {
+      System.out.format("FAILED: studentTCdf is off by more than %.0e\n", TOLERANCE);
+      System.exit(1);
+    }
+  }
+
+  static double checkCdf() {
+    double maxError = 0.0;
+    for (int df = 1; df <= MAX_DF; df++) {
+      for (int i = -200; i <= 200; i++) {
+        double t = i / 20.0;
+        double error = Math.abs(WelchTest.studentTCdf(t, df) - closedFormCdf(t, df));
+        if (!(error <= maxError)) {
+          maxError = error;
+        }
+      }
+    }
+    return maxError;
+  }
+
+  /* P(T <= t) = 1/2 + A(t|df)/2, with theta = atan(t / sqrt(df)) and
+   *   df odd:  A = 2/pi (theta + sin cos (1 + 2/3 cos^2 + ... + 2.4..(df-3)/1.3..(df-2) cos^(df-3)))
+   *   df even: A = sin (1 + 1/2 cos^2 + ... + 1.3..(df-3)/2.4..(df-2) cos^(df-2)) */
+  static double closedFormCdf(double t, int df) {
+    double theta = Math.atan(t / Math.sqrt(df));
+    double sin = Math.sin(theta);
+    double cos = Math.cos(theta);
+    double a;
+    if (df % 2 == 1) {
+      double sum = 0.0;
+      if (df > 1) {
+        double term = cos;
+        sum = term;
+        for (int k = 3; k <= df - 2; k += 2) {
+          term *= ((k - 1) / (double) k) * cos * cos;
+          sum += term;
+        }
+      }
+      a = (2.0 / Math.PI) * (theta + (sin * sum));
+    } else {
+      double term = 1.0;
+      double sum = term;
+      for (int k = 2; k <= df - 2; k += 2) {
+        term *= ((k - 1) / (double) k) * cos * cos;
+        sum += term;
+      }
+      a = sin * sum;
+    }
+    return 0.5 + (a / 2.0);
+  }
+
+  static double mean(double[] xs) {
+    double sum = 0.0;
+    for (int i = 0; i < xs.length; i++) {
+      sum += xs[i];
+    }
+    return sum / xs.length;
+  }
+
+  static double sd(double[] xs) {
+    if (xs.length < 2) {
+      return 0.0;
+    }
+    double mean = mean(xs);
+    double m2 = 0.0;
+    for (int i = 0; i < xs.length; i++) {
+      m2 += (xs[i] - mean) * (xs[i] - mean);
+    }
+    return Math.sqrt(m2 / (xs.length - 1));
+  }
+
+  static double[] difference(double[] a, double[] b) {
+    double[] d = new double[a.length];
+    for (int i = 0; i < a.length; i++) {
+      d[i] = a[i] - b[i];
+    }
+    return d;
+  }
+
+  /* { rounds ended, final distance to the optimum }, one entry per run;
+   * rounds are counted from the ROUND_END events of an EventJournal */
+  static double[][] simulate(boolean roundTest, final double noise, int runs) throws IOException {
+    PrintStream out = System.out;
+    File journal = File.createTempFile("roundtest", ".journal");
+    journal.deleteOnExit();
+    double[] rounds = new double[runs];
+    double[] distance = new double[runs];
+    for (int run = 1; run <= runs; run++) {
+      final Random random = new Random(run);
+      final int optimum = 2000 + random.nextInt(6000);
+      final Knob[] knobs = new Knob[]{
+        new DiscreteKnob("a", KnobValT.haveIntegers(1, 2)),
+        new InferredKnob("interval", 10000, 500, new Integer[]{ 1000 })
+      };
+      Reward reward = new Reward(null) {
+        @Override
+        public double valuate() {
+          int v = KnobValT.needInteger(knobs[1].getSetting());
+          double joules = 5.0 + (random.nextGaussian() * noise) + (Math.abs(v - optimum) / 300.0) + knobs[0].getPos();
+          _cachedJoules = joules;
+          return joules;
+        }
+      };
+
+      // The round logic reports on stdout
+      System.setOut(new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+      }));
+      EventJournal.open(journal.getPath());
+      try {
+        AeneasMachine machine = new AeneasMachine(StochasticPolicyType.EPSILON_GREEDY_10, knobs, reward);
+        machine.setNumTaskSamples(2);
+        machine.setRoundTest(roundTest);
+        machine.setPolicySeed(run);
+        machine.preStep();
+        for (int task = 0; task < TASKS; task++) {
+          machine.postStep();
+          machine.preStep();
+        }
+      } finally {
+        EventJournal.close();
+        System.setOut(out);
+      }
+      rounds[run - 1] = roundsEnded(journal.getPath());
+      distance[run - 1] = Math.abs(KnobValT.needInteger(knobs[1].getSetting()) - optimum);
+    }
+    return new double[][]{ rounds, distance };
+  }
+
+  static int roundsEnded(String path) throws IOException {
+    int rounds = 0;
+    EventJournal.Reader reader = new EventJournal.Reader(path);
+    try {
+      EventJournal.Event ev;
+      while ((ev = reader.next()) != null) {
+        if (ev._type == EventJournal.ROUND_END && ev._configId >= 0) {
+          rounds++;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return rounds;
+  }
+}
@@ -0,0 +1,84 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.bench;
+
+import com.stoke.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* The machine-side cost of one task: AeneasMachine.postStep() (reward,
+ * MiniMachine.postStep/learn, policy learn, logging) followed by preStep()
+ * (policy selection), called directly so no thread handoff is measured. The
+ * "learn" benchmark is the Q update alone. UCB is left to PolicyBenchmark:
+ * without a sampling sweep its bound is undefined for unvisited arms. With
+ * fileLog=false (no ETask line) and level=ERROR, a step should allocate
+ * nothing once its configurations exist (-prof gc). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StepBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  public int size;
+
+  @Param({"EPSILON_GREEDY_10", "VBDE_10"})
+  public String policy;
+
+  @Param({"ERROR", "DEBUG"})
+  public String level;
+
+  @Param({"true", "false"})
+  public boolean fileLog;
+
+  private AeneasMachine _machine;
+  private ConfigurationStats _stats;
+  private final Fixtures.Noise _noise = new Fixtures.Noise();
+  private int _next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Fixtures.quietStderr();
+    LogUtil.setLevel(LogUtil.Level.valueOf(level));
+    LogUtil.setFileEnabled(fileLog);
+    Knob[] knobs = Fixtures.knobsForSize(size);
+    _machine = Fixtures.exploitingMachine(StochasticPolicyType.valueOf(policy), knobs);
+    _machine.preStep();
+    _stats = new ConfigurationStats(size);
+  }
+
+  @Benchmark
+  public int step() {
+    _machine.postStep();
+    _machine.preStep();
+    return _machine.currentConfiguration();
+  }
+
+  @Benchmark
+  public double learn() {
+    _stats.learn(_next, _noise.next(), 0.0);
+    _next = (_next + 1 == size) ? 0 : _next + 1;
+    return _stats.qvalue(_next);
+  }
+}
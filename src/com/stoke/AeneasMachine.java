@@ -27,6 +27,7 @@ import com.google.common.base.Stopwatch;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
 
 import java.io.*;
@@ -46,7 +47,7 @@ public class AeneasMachine implements Runnable {
   /* Bandits abstract over a set of configurations of Knobs. We must generate
    * all possible configurations given a set of inputs, and currently have one
    * configuration "selected" at any point. */
-  protected Configuration[]             _configurations    = null;
+  protected ConfigurationSpace          _space             = null;
 
   protected static int QUALITY_WINDOW = 1; 
   protected int[] _configWindow = new int[QUALITY_WINDOW]; 
@@ -56,6 +57,10 @@ public class AeneasMachine implements Runnable {
   protected int       _banditStep = 0; 
   private int         _taskSkip   = 0; 
 
+  /* Tasks learned by all of this machine's mini bandits, the first number of
+   * an ETask log line */
+  protected int       _totalStep  = 0;
+
   private int         _repeatTick = 0;
   private int         _repeatTaskReset = 0;
   private int         _repeatTotal = 0;
@@ -103,22 +108,81 @@ public class AeneasMachine implements Runnable {
   
   //public int FALLBACK_STEPS = 500;
 
-  private InferredKnob _continuousKnob = null;
+  /* Every InferredKnob, in the order given; they are searched together */
+  private InferredKnob[] _continuousKnobs = null;
 
   List<Double> _lastRoundQStack = new ArrayList<Double>();
-  List<Integer> _lastRoundPickStack = new ArrayList<Integer>();
+  List<StateKey> _lastRoundPickStack = new ArrayList<StateKey>();
+
+  /* The settings of every inferred knob in a configuration, as one point */
+  public static class StateKey {
+    public final double[] _coords;
+    public StateKey(double[] coords) {
+      _coords = coords;
+    }
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof StateKey) && Arrays.equals(_coords, ((StateKey) o)._coords);
+    }
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(_coords);
+    }
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < _coords.length; i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        if (_coords[i] == Math.rint(_coords[i]) && Math.abs(_coords[i]) < Long.MAX_VALUE) {
+          sb.append((long) _coords[i]);
+        } else {
+          sb.append(_coords[i]);
+        }
+      }
+      return sb.toString();
+    }
+  }
+
+  public static StateKey stateKey(ConfigurationSpace space, int id, Knob[] knobs) {
+    return stateKey(space, id, knobs, new double[knobs.length]);
+  }
+
+  protected static StateKey stateKey(ConfigurationSpace space, int id, Knob[] knobs, double[] coords) {
+    for (int k = 0; k < knobs.length; k++) {
+      coords[k] = KnobValT.forceDouble(space.getSetting(id, knobs[k]));
+    }
+    return new StateKey(coords);
+  }
+
+  /* Looks _states up without allocating a key per configuration */
+  private StateKey _probeKey = null;
+
+  protected StatePreserve savedState(ConfigurationSpace space, int id) {
+    if (_probeKey == null || _probeKey._coords.length != _continuousKnobs.length) {
+      _probeKey = new StateKey(new double[_continuousKnobs.length]);
+    }
+    stateKey(space, id, _continuousKnobs, _probeKey._coords);
+    return _states.get(_probeKey);
+  }
 
   /* Hacking for Cross-Iteration State Preservation */
   public class StatePreserve {
     public double _q;
     public int _numOn;
+    public double _m2;
     public StatePreserve(double joules, int numOn) {
+      this(joules, numOn, 0.0);
+    }
+    public StatePreserve(double joules, int numOn, double m2) {
       _q = joules;
       _numOn = numOn;
+      _m2 = m2;
     }
   }
 
-  Map<Integer, StatePreserve> _states = new HashMap<>();
+  Map<StateKey, StatePreserve> _states = new HashMap<>();
 
   List<SeedRange> _seedStack = new ArrayList<SeedRange>();
 
@@ -126,13 +190,13 @@ public class AeneasMachine implements Runnable {
     public int _slow;
     public int _fast;
     public int _mid;
-    public KnobVal[] _settings;
+    public KnobVal[][] _settings;
     public SeedRange(int slow, int fast, int mid) {
       _slow = slow;
       _fast = fast;
       _mid  = mid;
     }
-    public SeedRange(KnobVal[] settings) {
+    public SeedRange(KnobVal[][] settings) {
       _settings = settings;
     }
   }
@@ -168,14 +232,17 @@ public class AeneasMachine implements Runnable {
       _slots = slotsI;
     }
 
+    List<InferredKnob> continuousKnobs = new ArrayList<>();
     for (int i = 0; i < inputKnobs.length; i++) {
       Knob ik = inputKnobs[i];
       if (ik instanceof InferredKnob) {
         _performContinousLogic = true;
-        _continuousKnob = (InferredKnob) ik; 
-        break;
+        continuousKnobs.add((InferredKnob) ik);
       }
     }
+    if (_performContinousLogic) {
+      _continuousKnobs = continuousKnobs.toArray(new InferredKnob[]{});
+    }
     
     for (int i = 0; i < inputKnobs.length; i++) {
       _inputKnobs.put(inputKnobs[i].name(), inputKnobs[i]);
@@ -186,6 +253,32 @@ public class AeneasMachine implements Runnable {
 
     _userRecordings = recordings;
 
+    _sharedStatsPath = (String) AndroidUtil.getProperty("STOKE_SHARED_STATS");
+
+    Boolean convergenceDump = (Boolean) AndroidUtil.getProperty("STOKE_CONVERGENCE_DUMP");
+    if (convergenceDump != null) {
+      _convergenceDump = convergenceDump;
+    }
+
+    Boolean changeDetection = (Boolean) AndroidUtil.getProperty("STOKE_CHANGE_DETECTION");
+    if (changeDetection != null) {
+      _changeDetection = changeDetection;
+    }
+
+    Boolean roundTest = (Boolean) AndroidUtil.getProperty("STOKE_ROUND_TEST");
+    if (roundTest != null) {
+      _roundTest = roundTest;
+    }
+    Double roundConfidence = (Double) AndroidUtil.getProperty("STOKE_ROUND_CONFIDENCE");
+    if (roundConfidence != null) {
+      setRoundConfidence(roundConfidence);
+    }
+
+    Integer contextDimension = (Integer) AndroidUtil.getProperty("STOKE_CONTEXT_DIMENSION");
+    if (contextDimension != null) {
+      setContextDimension(contextDimension);
+    }
+
     /* Everything from here on inits stuff for experimental evaluation */
     //LogUtil.initLogger();
 
@@ -196,7 +289,7 @@ public class AeneasMachine implements Runnable {
     if (useSelfOptimizer) {
       initializeSelfOptimizer();
     } else {
-      _miniMachine = new MiniMachine(this, _inputKnobs, _configurations, _samplingPolicy, _stochasticPolicyType, _rewardType);
+      _miniMachine = new MiniMachine(this, _inputKnobs, _space, _samplingPolicy, _stochasticPolicyType, _rewardType);
     }
 
     Integer minSteps = (Integer) AndroidUtil.getProperty("STOKE_MIN_STEPS");
@@ -208,41 +301,102 @@ public class AeneasMachine implements Runnable {
       MAX_STEPS = maxSteps;
     }
 
+    Integer checkpointInterval = (Integer) AndroidUtil.getProperty("STOKE_CHECKPOINT_INTERVAL");
+    if (checkpointInterval != null) {
+      _checkpointInterval = checkpointInterval;
+    }
+    String continuousSearch = (String) AndroidUtil.getProperty("STOKE_CONTINUOUS_SEARCH");
+    if (continuousSearch != null) {
+      setContinuousSearch(ContinuousSearch.toContinuousSearch(continuousSearch));
+    }
+
+    String checkpoint = (String) AndroidUtil.getProperty("STOKE_CHECKPOINT");
+    if (checkpoint != null) {
+      setCheckpoint(checkpoint);
+      restoreCheckpoint();
+    }
+    publishConfiguration();
   } 
 
+  /* Offline replay (see Simulator): reads no properties, shares no stats,
+   * keeps no checkpoint and builds no mini bandit of its own, so that any
+   * number of replays can run side by side. The caller drives a MiniMachine
+   * over _inputKnobs and _space, whose policy draws from policySeed.
+   * Discrete knobs only. */
+  protected static AeneasMachine forReplay(Knob[] inputKnobs,
+      StochasticPolicyType stochasticPolicyType,
+      SamplingPolicy samplingPolicy,
+      Reward reward,
+      long policySeed) {
+    AeneasMachine machine = new AeneasMachine(inputKnobs, stochasticPolicyType, samplingPolicy, reward);
+    machine._policySeed = policySeed;
+    return machine;
+  }
+
+  private AeneasMachine(Knob[] inputKnobs,
+      StochasticPolicyType stochasticPolicyType,
+      SamplingPolicy samplingPolicy,
+      Reward reward) {
+    _experiment = Experiment.MACHINE;
+    _samplingPolicy = samplingPolicy;
+    _stochasticPolicyType = stochasticPolicyType;
+    _originalPolicyType = _stochasticPolicyType;
+    _reward = reward;
+
+    for (int i = 0; i < inputKnobs.length; i++) {
+      if (inputKnobs[i] instanceof InferredKnob) {
+        throw new RuntimeException("Error: Replays cannot have inferred knobs");
+      }
+      _inputKnobs.put(inputKnobs[i].name(), inputKnobs[i]);
+    }
+    _userRecordings = new Recording[]{};
+
+    initConfigurations();
+  }
+
   protected void resetConfigurations() {
     _banditStep = 0;
     _repeatTick = 0;
-    Configuration.resetIdGen();
     initConfigurations();
-    _miniMachine = new MiniMachine(this, _inputKnobs, _configurations, _samplingPolicy, _stochasticPolicyType, _rewardType);
+    _miniMachine = new MiniMachine(this, _inputKnobs, _space, _samplingPolicy, _stochasticPolicyType, _rewardType);
     _miniMachine.setNumTaskSamples(_numTaskSamples);
     _miniMachine.setTaskDelay(_taskDelay);
+    configurationsChanged();
+    publishConfiguration();
   }
 
-  protected boolean performContinuousKnobDivision(boolean shouldTighten, KnobVal[] settings, int winId) {
-    _miniMachine.dumpConfigurations(_miniMachine._configurations, false);
-    _miniMachine.dumpConfigurations(_miniMachine._configurations, true);
+  protected boolean performContinuousKnobDivision(boolean shouldTighten, KnobVal[][] settings, int winId) {
+    _miniMachine.dumpConfigurations(false);
+    _miniMachine.dumpConfigurations(true);
 
-    for (int i = 0; i < _miniMachine._configurations.length; i++) {
-      Configuration c = _miniMachine._configurations[i];
-      int interval = KnobValT.needInteger(c.getSettingForKnob(_continuousKnob));
-      double joules = _miniMachine._leftRewards.get(c.getId());
-      int numOn = _miniMachine._numOns.get(c.getId());
-      _states.put(interval, new StatePreserve(joules, numOn));
+    ConfigurationSpace space = _miniMachine._space;
+    ConfigurationStats stats = _miniMachine.stats();
+    for (int id = 0; id < space.size(); id++) {
+      StatePreserve sp = savedState(space, id);
+      if (sp == null) {
+        _states.put(stateKey(space, id, _continuousKnobs), new StatePreserve(stats.qvalue(id), stats.numOn(id), stats.m2(id)));
+      } else {
+        sp._q = stats.qvalue(id);
+        sp._numOn = stats.numOn(id);
+        sp._m2 = stats.m2(id);
+      }
     }
 
     if (winId != -1) {
-      _lastRoundQStack.add(_miniMachine._leftRewards.get(winId));
-      _lastRoundPickStack.add(KnobValT.needInteger(_miniMachine._configurations[winId].getSettingForKnob(_continuousKnob)));
+      _lastRoundQStack.add(_miniMachine.stats().qvalue(winId));
+      _lastRoundPickStack.add(stateKey(_miniMachine._space, winId, _continuousKnobs));
     }
 
     LogUtil.writeLogger("==ROUND-END==\n");
+    EventJournal.roundEnd(_continuousRoundTick, winId);
+    KnobVal[][] before = continuousSettings();
     if (settings == null) {
       populateKnobFromEdges(shouldTighten, winId);
     } else {
-      _seedStack.add(new SeedRange(Arrays.copyOf(_continuousKnob.getSettings(), _continuousKnob.getSettings().length)));
-      _continuousKnob.changeSettings(settings);
+      _seedStack.add(new SeedRange(continuousSettings()));
+      for (int k = 0; k < _continuousKnobs.length; k++) {
+        _continuousKnobs[k].changeSettings(settings[k]);
+      }
     }
 
     if (winId == -1) {
@@ -254,65 +408,102 @@ public class AeneasMachine implements Runnable {
     _continuousStepTick = 0;
     _continuousRoundTick++;
 
-    // Reset the configurations / mini bandit
-    Configuration.resetIdGen();
-    Knob[] inputKnobs = (Knob[]) _inputKnobs.values().toArray(new Knob[]{});
-    Recording[] constraints = (Recording[]) _recordings.values().toArray(new Recording[]{});
-    _configurations = createConfigsFromKnobs(inputKnobs, constraints);
+    if (sameShape(before)) {
+      regenerateConfigurations(before);
+    } else {
+      // Reset the configurations / mini bandit
+      _space = spaceFromKnobs();
 
-    /*
-    StochasticPolicyType type = _stochasticPolicyType;
-    if (_continuousRounds != 0 && _continuousRoundTick == _continuousRounds) {
-      type = _originalPolicyType;
-    }
-    */
+      /*
+      StochasticPolicyType type = _stochasticPolicyType;
+      if (_continuousRounds != 0 && _continuousRoundTick == _continuousRounds) {
+        type = _originalPolicyType;
+      }
+      */
 
-    _miniMachine = new MiniMachine(this, _inputKnobs, _configurations, _samplingPolicy, _stochasticPolicyType, _rewardType);
-    _miniMachine.setNumTaskSamples(_numTaskSamples);
-    _miniMachine.setTaskDelay(_taskDelay);
+      _miniMachine = new MiniMachine(this, _inputKnobs, _space, _samplingPolicy, _stochasticPolicyType, _rewardType);
+      _miniMachine.setNumTaskSamples(_numTaskSamples);
+      _miniMachine.setTaskDelay(_taskDelay);
 
-    _miniMachine.restoreState(_states, _continuousKnob);
+      _miniMachine.restoreState(_states, _continuousKnobs);
+    }
 
-    _miniMachine.dumpConfigurations(_miniMachine._configurations, false);
-    _miniMachine.dumpConfigurations(_miniMachine._configurations, true);
+    _miniMachine.dumpConfigurations(false);
+    _miniMachine.dumpConfigurations(true);
 
     LogUtil.writeLogger("==ROUND-START==\n");
+    EventJournal.roundStart(_continuousRoundTick);
 
+    configurationsChanged();
     return true;
   }
 
-  protected Configuration[] createConfigsFromKnobs(Knob[] knobs, Recording[] recordings) {
-    int numConfigs = 1;
-    for (int i = 0; i < knobs.length; i++) {
-      numConfigs *= knobs[i].numPos();
+  /* Whether every inferred knob still has as many settings as before, so
+   * the round can go on over the same space */
+  protected boolean sameShape(KnobVal[][] before) {
+    if (_space != _miniMachine._space) {
+      return false;
     }
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      if (_continuousKnobs[k].numPos() != before[k].length) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-    int[] positions = new int[knobs.length];
-    Configuration[] configurations = new Configuration[numConfigs];
-
-    for (int i = 0; i < numConfigs; i++) {
-      /*
-      Knob[] inputKnobs =
-        (Knob[]) knobs.values().toArray(new Knob[]{});
-      Recording[] constraints =
-        (Recording[]) recordings.values().toArray(new Recording[]{});
-        */
-
-      Configuration config =
-          new Configuration(Arrays.copyOf(positions, positions.length), knobs, recordings);
+  /* The next round over the configurations of the last one: only the ids
+   * on a replaced setting are retired (and picked up from _states if that
+   * point has been run before), everything else, including the mini bandit,
+   * is kept. See ConfigurationSpace.replaceSettings(). */
+  protected void regenerateConfigurations(KnobVal[][] before) {
+    ConfigurationSpace space = _miniMachine._space;
+    int[] knobIndex = new int[_continuousKnobs.length];
+    int[][] freed = new int[_continuousKnobs.length][];
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      for (int i = 0; i < space.numKnobs(); i++) {
+        if (space.getKnob(i) == _continuousKnobs[k]) {
+          knobIndex[k] = i;
+        }
+      }
+      freed[k] = space.replaceSettings(knobIndex[k], before[k]);
+    }
+
+    _miniMachine.stats().newRound();
+    int retired = 0;
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      for (int f = 0; f < freed[k].length; f++) {
+        for (int j = 0; j < space.numWithSlot(knobIndex[k]); j++) {
+          int id = space.idWithSlot(knobIndex[k], freed[k][f], j);
+          if (!retiredBefore(space, id, knobIndex, freed, k)) {
+            _miniMachine.retire(id, savedState(space, id));
+            retired++;
+          }
+        }
+      }
+    }
+    _miniMachine.beginRound();
 
-      configurations[i] = config;
+    LogUtil.writeLogger(String.format("STOKE: Regenerated %d of %d configurations\n", retired, space.size()));
+  }
 
-      for (int j = 0; j < knobs.length; j++) {
-        positions[j]++;
-        if (positions[j] < knobs[j].numPos()) {
-          break;
+  /* Whether id is on a freed slot of one of the first k knobs as well */
+  private static boolean retiredBefore(ConfigurationSpace space, int id, int[] knobIndex, int[][] freed, int k) {
+    for (int k2 = 0; k2 < k; k2++) {
+      int slot = space.slot(id, knobIndex[k2]);
+      for (int f = 0; f < freed[k2].length; f++) {
+        if (freed[k2][f] == slot) {
+          return true;
         }
-        positions[j] = 0;
       }
     }
+    return false;
+  }
 
-    return configurations;
+  /* Configurations are not built up front: the space decodes them from their
+   * index and only creates the ones that get visited. */
+  protected ConfigurationSpace createConfigsFromKnobs(Knob[] knobs, Recording[] recordings) {
+    return new ConfigurationSpace(knobs, recordings);
   }
 
   protected void initConfigurations() {
@@ -327,21 +518,27 @@ public class AeneasMachine implements Runnable {
     Knob[] inputKnobs = (Knob[]) _inputKnobs.values().toArray(new Knob[]{});
     Recording[] constraints = (Recording[]) _recordings.values().toArray(new Recording[]{});
 
-    _configurations = createConfigsFromKnobs(inputKnobs, constraints);
-    
-    for (int i = 0; i < _configurations.length; i++) {
-      _configurations[i].updateRecording(FEEDBACK_KNOB, KnobValT.haveDouble(0.5));
-    } 
+    _space = createConfigsFromKnobs(inputKnobs, constraints);
+    _space.setInitialRecording(FEEDBACK_KNOB, KnobValT.haveDouble(0.5));
 
     LogUtil.writeLogger(String.format("==RUN %d==\n", _runCount));
+    EventJournal.runStart(_runCount);
 
     if (_performContinousLogic) {
       LogUtil.writeLogger("==ROUND-START==\n");
+      EventJournal.roundStart(_continuousRoundTick);
     }
 
     resetKnobRead();
   }
 
+  /* A fresh space over the knobs' current settings, for when inferred knobs
+   * have been given new ones outside of initConfigurations() */
+  protected ConfigurationSpace spaceFromKnobs() {
+    return createConfigsFromKnobs(_inputKnobs.values().toArray(new Knob[]{}),
+        _recordings.values().toArray(new Recording[]{}));
+  }
+
   Knob findHighestPriorityKnob() {
     int mp = -1;
     Knob highest = null;
@@ -385,7 +582,7 @@ public class AeneasMachine implements Runnable {
       mappedKnobs.put(knobs[i].name(), knobs[i]);
     }
 
-    Configuration[] selfOptimizingConfigs = createConfigsFromKnobs(knobs, constraints);
+    ConfigurationSpace selfOptimizingConfigs = createConfigsFromKnobs(knobs, constraints);
 
     /*
     for (int i = 0; i < selfOptimizingConfigs.length; i++) {
@@ -396,6 +593,7 @@ public class AeneasMachine implements Runnable {
     _miniMachine = new MiniMachine(this, mappedKnobs, selfOptimizingConfigs, SamplingPolicy.SAMPLE_ALL, _stochasticPolicyType, RewardType.OPTIMIZER);
     _miniMachine.setNumTaskSamples(_numTaskSamples);
     _miniMachine.setTaskDelay(_taskDelay);
+    configurationsChanged();
    
     _lowest.select();
 
@@ -414,8 +612,8 @@ public class AeneasMachine implements Runnable {
       _taskInterval = new DiscreteKnob("task-interval", KnobValT.haveIntegers(40000, 30000, 20000), 0);
     }
 
-    _lowest = _configurations[0];
-    _highest = _configurations[_configurations.length-1];
+    _lowest = _space.get(0);
+    _highest = _space.get(_space.size()-1);
 
     resetSelfOptimizer();
   }
@@ -524,26 +722,69 @@ public class AeneasMachine implements Runnable {
 
   /* Public API discussed in paper */
   private Thread _aeneasThread = null;
-  private boolean _running = false;
+  private volatile boolean _running = false;
+
+  /* When attached, steps run as tasks on the runtime's shared workers instead
+   * of on _aeneasThread. */
+  private AeneasRuntime _runtime = null;
+
+  void attachRuntime(AeneasRuntime runtime) {
+    if (_running) {
+      throw new RuntimeException("Error: Machine must be registered before start()");
+    }
+    _runtime = runtime;
+  }
 
   public void start() {
     if (!_running) {
       _running = true;
+      _interactStep = _banditStep;
       preStep();
+      _taskSelection = null;
+      _taskConfig = publishedConfig();
       System.err.format("STOKE: We have kicked off the first preStep!\n");
-      _aeneasThread = new Thread(this);
-      _aeneasThread.start();
+      if (_runtime == null) {
+        _aeneasThread = new Thread(this);
+        _aeneasThread.start();
+      }
     }
   }
 
   public void stop() {
     if (_running) {
-      _aeneasThread.interrupt();
+      _running = false;
+      if (_aeneasThread != null) {
+        Thread thread = _aeneasThread;
+        _aeneasThread = null;
+        thread.interrupt();
+        // Let a step in progress finish before snapshotting and resetting
+        if (thread != Thread.currentThread()) {
+          try {
+            thread.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+      if (_runtime != null) {
+        // A drain already running on a worker finishes its current step
+        // (it re-checks _running between steps) before we reset under it;
+        // blocking interacts still queued are let go without a step.
+        synchronized (_drainLock) {
+          StepRequest req;
+          while ((req = _stepRequests.poll()) != null) {
+            req._done.countDown();
+          }
+        }
+      }
+      finalCheckpoint();
       resetKnobRead();
       resetTaskInternals();
-      _running = false;
       _didInteract = false;
       _didRun = false;
+      if (_observationSlot.getAndSet(null) != null) {
+        _droppedObservations.incrementAndGet();
+      }
     }
   }
 
@@ -566,6 +807,18 @@ public class AeneasMachine implements Runnable {
   }
 
   public KnobVal read(String name) {
+    if (_asyncInteract) {
+      if (_taskSelection == null) {
+        _taskSelection = _published;
+        if (_taskSelection != null) {
+          _taskConfig = _taskSelection._config;
+        }
+      }
+      Integer k = (_knobIndex != null) ? _knobIndex.get(name) : null;
+      if (_taskSelection != null && k != null) {
+        return _taskSelection._settings[k];
+      }
+    }
     return internalRead(name);
   }
 
@@ -625,9 +878,157 @@ public class AeneasMachine implements Runnable {
     }
   }
 
+  /* Non-blocking interaction: instead of parking the app on _waitOnRun until
+   * postStep/preStep are done, the app measures its task, publishes the
+   * observation into a single slot and keeps running on the configuration that
+   * is already selected. The machine thread learns from the slot on its own
+   * time. Single producer (the interacting app thread), single consumer (the
+   * machine thread); if the app interacts again before the machine has taken
+   * the slot, the older observation is dropped and counted. */
+  static final class Observation {
+    boolean _skipped;
+    long    _config;
+    long    _ms;
+    double  _rawReward;
+    double  _rawJoules;
+    boolean  _hasContext;
+    double[] _context;
+  }
+
+  private boolean _asyncInteract = false;
+  private int     _interactStep = 0;
+
+  private final AtomicReference<Observation> _observationSlot = new AtomicReference<>();
+  private final AtomicReference<Observation> _spareObservation = new AtomicReference<>();
+  private final AtomicLong _droppedObservations = new AtomicLong();
+
+  /* One selection as the app sees it in async mode: every knob's setting
+   * (in _inputKnobs order, see _knobIndex) and the configuration they make
+   * up, as (epoch << 32) | id. The machine thread publishes a new one on
+   * every selection, after all knobs are set, so the app never sees half of
+   * a selection. The first read() of a task latches the published one and
+   * serves every knob of that task from it, and the observation is credited
+   * to it; a task that reads no knob is credited to what was published when
+   * the previous task ended. The epoch counts changes to the configurations
+   * themselves (rounds, GP moves, restores): a task that ran under ones
+   * since replaced is dropped rather than credited to whatever took their
+   * id. */
+  static final class Selection {
+    final long      _config;
+    final KnobVal[] _settings;
+
+    Selection(long config, KnobVal[] settings) {
+      _config = config;
+      _settings = settings;
+    }
+  }
+
+  private volatile Selection _published = null;
+  private Map<String,Integer> _knobIndex = null;
+  private Selection _taskSelection = null;
+  private long _taskConfig = -1;
+  private int  _configEpoch = 0;
+  private int  _creditId = -1;
+
+  protected void configurationsChanged() {
+    _configEpoch++;
+  }
+
+  protected void publishConfiguration() {
+    if (_miniMachine == null || !_asyncInteract) {
+      return;
+    }
+    if (_knobIndex == null) {
+      Map<String,Integer> index = new HashMap<>();
+      for (String name : _inputKnobs.keySet()) {
+        index.put(name, index.size());
+      }
+      _knobIndex = index;
+    }
+    KnobVal[] settings = new KnobVal[_knobIndex.size()];
+    int k = 0;
+    for (Knob knob : _inputKnobs.values()) {
+      settings[k++] = knob.getSetting();
+    }
+    _published = new Selection(((long) _configEpoch << 32) | _miniMachine.currentConfiguration(), settings);
+  }
+
+  private long publishedConfig() {
+    Selection published = _published;
+    return (published != null) ? published._config : -1;
+  }
+
+  public void setAsyncInteract(boolean asyncInteract) {
+    if (_running) {
+      throw new RuntimeException("Error: Interact mode must be set before start()");
+    }
+    _asyncInteract = asyncInteract;
+    publishConfiguration();
+  }
+
+  /* Context for contextual policies (LINUCB): a small vector of device
+   * features (e.g., battery level, on Wi-Fi) passed with each
+   * interact(double[]). It applies from the next configuration selected on,
+   * so a finished task is still learned under the context it was selected
+   * for. Contexts are copied into buffers allocated here, and read as zeros
+   * until the first one arrives. */
+  protected int      _contextDimension = 0;
+  protected double[] _nextContext = new double[0];
+  protected double[] _taskContext = new double[0];
+
+  public void setContextDimension(int dimension) {
+    if (_running) {
+      throw new RuntimeException("Error: Context dimension must be set before start()");
+    }
+    _contextDimension = dimension;
+    _nextContext = new double[dimension];
+    _taskContext = new double[dimension];
+  }
+
+  public int contextDimension() {
+    return _contextDimension;
+  }
+
+  /* The context of the task in flight; owned by the machine thread */
+  public double[] taskContext() {
+    return _taskContext;
+  }
+
+  public boolean isAsyncInteract() {
+    return _asyncInteract;
+  }
+
+  public long droppedObservations() {
+    return _droppedObservations.get();
+  }
+
   public void interact() {
+    interactWith(null);
+  }
+
+  /* Same as interact(), handing over the device context (see
+   * setContextDimension) the next configuration should be selected for */
+  public void interact(double[] context) {
+    if (context.length != _contextDimension) {
+      throw new RuntimeException(String.format("Error: Context of dimension %d, the machine expects %d", context.length, _contextDimension));
+    }
+    interactWith(context);
+  }
+
+  private void interactWith(double[] context) {
+    if (_asyncInteract) {
+      publishObservation(context);
+      return;
+    }
+    if (_runtime != null) {
+      interactOnRuntime(context);
+      return;
+    }
     try {
       _lock.lock();
+      if (context != null) {
+        System.arraycopy(context, 0, _nextContext, 0, _contextDimension);
+      }
       _didInteract = true;
       _waitOnInteract.signal();
       while (!_didRun) {
@@ -644,7 +1045,192 @@ public class AeneasMachine implements Runnable {
     }
   }
 
+  /* App thread: the task watches move with the app in async mode, since the
+   * machine thread no longer brackets the task with preStep/postStep. */
+  private void publishObservation(double[] context) {
+    Observation obs = _spareObservation.getAndSet(null);
+    if (obs == null) {
+      obs = new Observation();
+    }
+    obs._hasContext = (context != null);
+    if (context != null) {
+      if (obs._context == null) {
+        obs._context = new double[_contextDimension];
+      }
+      System.arraycopy(context, 0, obs._context, 0, _contextDimension);
+    }
+
+    obs._config = _taskConfig;
+    _taskSelection = null;
+    _taskConfig = publishedConfig();
+
+    int step = _interactStep++;
+    obs._skipped = step < _taskSkip;
+    if (obs._skipped) {
+      if (step + 1 == _taskSkip) {
+        _reward._taskWatch.start();
+        _taskWatch.start();
+      }
+    } else {
+      _taskWatch.stop();
+      obs._ms = _taskWatch.elapsed(TimeUnit.MILLISECONDS);
+      _taskWatch.reset();
+      _taskWatch.start();
+      obs._rawReward = _reward.valuate();
+      obs._rawJoules = _reward.cached();
+    }
+
+    Observation stale = _observationSlot.getAndSet(obs);
+    if (stale != null) {
+      _droppedObservations.incrementAndGet();
+      _spareObservation.lazySet(stale);
+    }
+    if (_runtime != null) {
+      scheduleDrain();
+    } else {
+      LockSupport.unpark(_aeneasThread);
+    }
+  }
+
+  /* Shared runtime: at most one drain task per machine is queued or running,
+   * which is what keeps this machine's steps ordered across workers. It
+   * takes both async observations and blocking interacts (StepRequest). */
+  private final AtomicBoolean _drainScheduled = new AtomicBoolean(false);
+
+  private final Runnable _drainTask = new Runnable() {
+    @Override
+    public void run() {
+      drainObservations();
+    }
+  };
+
+  /* A blocking interact on a shared runtime, waiting for its step. The
+   * context is copied in for the drain task, which alone writes
+   * _nextContext. */
+  static final class StepRequest {
+    final double[] _context;
+    final CountDownLatch _done = new CountDownLatch(1);
+    StepRequest(double[] context) {
+      _context = context;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<StepRequest> _stepRequests = new ConcurrentLinkedQueue<>();
+
+  private void scheduleDrain() {
+    if (_drainScheduled.compareAndSet(false, true)) {
+      _runtime.dispatch(_drainTask);
+    }
+  }
+
+  /* Held by a drain for as long as it runs; stop() takes it to wait out a
+   * drain in flight before resetting the task state under it. */
+  private final Object _drainLock = new Object();
+
+  private void drainObservations() {
+    synchronized (_drainLock) {
+      Observation obs;
+      while (_running && (obs = _observationSlot.getAndSet(null)) != null) {
+        try {
+          consumeObservation(obs);
+        } catch (Exception e) {
+          System.err.format("STOKE: Got exception: %s\n", e);
+          System.exit(1);
+        }
+        _spareObservation.lazySet(obs);
+      }
+      StepRequest req;
+      while ((req = _stepRequests.poll()) != null) {
+        try {
+          if (_running) {
+            if (req._context != null) {
+              System.arraycopy(req._context, 0, _nextContext, 0, _contextDimension);
+            }
+            postStep();
+            resetKnobRead();
+            preStep();
+          }
+        } catch (Exception e) {
+          System.err.format("STOKE: Got exception: %s\n", e);
+          System.exit(1);
+        } finally {
+          req._done.countDown();
+        }
+      }
+    }
+    _drainScheduled.set(false);
+    // Work handed over after our last poll but before the flag was cleared
+    // would otherwise wait for the next interaction.
+    if ((_running && _observationSlot.get() != null) || !_stepRequests.isEmpty()) {
+      scheduleDrain();
+    }
+  }
+
+  /* Blocking interact on a shared runtime: the app still waits for the step,
+   * but no thread is parked on behalf of this machine in between. */
+  private void interactOnRuntime(double[] context) {
+    StepRequest req = new StepRequest((context != null) ? Arrays.copyOf(context, _contextDimension) : null);
+    _stepRequests.add(req);
+    scheduleDrain();
+    try {
+      req._done.await();
+    } catch (InterruptedException e) {
+      System.err.format("STOKE: Thead %d interupted\n", Thread.currentThread().getId());
+    }
+  }
+
+  /* Machine thread: the async counterpart of one postStep/preStep round. */
+  protected void consumeObservation(Observation obs) {
+    if (obs._hasContext) {
+      System.arraycopy(obs._context, 0, _nextContext, 0, _contextDimension);
+    }
+    if (obs._skipped) {
+      _banditStep++;
+    } else if (obs._config < 0 || (int) (obs._config >>> 32) != _configEpoch) {
+      _droppedObservations.incrementAndGet();
+      _banditStep++;
+    } else {
+      _creditId = (int) obs._config;
+      try {
+        postStep(obs._ms, obs._rawReward, obs._rawJoules);
+      } finally {
+        _creditId = -1;
+      }
+    }
+    resetKnobRead();
+
+    if (_banditStep >= _taskSkip) {
+      if (!_totalWatch.isRunning()) {
+        _totalWatch.start();
+      }
+      selectNextConfiguration();
+    }
+  }
+
+  private void runAsync() {
+    System.err.format("STOKE: Thead %d started (async)\n", Thread.currentThread().getId());
+    while (!Thread.currentThread().isInterrupted()) {
+      Observation obs = _observationSlot.getAndSet(null);
+      if (obs == null) {
+        LockSupport.park(this);
+        continue;
+      }
+      try {
+        consumeObservation(obs);
+      } catch (Exception e) {
+        System.err.format("STOKE: Got exception: %s\n", e);
+        System.exit(1);
+      }
+      _spareObservation.lazySet(obs);
+    }
+    System.err.format("STOKE: Thead %d exited\n", Thread.currentThread().getId());
+  }
+
   public void run() {
+    if (_asyncInteract) {
+      runAsync();
+      return;
+    }
     System.err.format("STOKE: Thead %d started\n", Thread.currentThread().getId());
     boolean keepRunning = true;
     while (keepRunning) {
@@ -719,7 +1305,8 @@ public class AeneasMachine implements Runnable {
   public void preStep() {
     if (_banditStep < _taskSkip) {
       return;
-    } else if (_banditStep == _taskSkip) {
+    } else if (!_reward._taskWatch.isRunning()) {
+      // First task past the skip, or the first one after a restart/restore
       _reward._taskWatch.start();
     }
 
@@ -728,8 +1315,15 @@ public class AeneasMachine implements Runnable {
       _totalWatch.start();
     }
 
+    selectNextConfiguration();
+  }
+
+  protected void selectNextConfiguration() {
     //_startReading = _meter.readMeter();
 
+    // The task about to start runs under the context handed over last
+    System.arraycopy(_nextContext, 0, _taskContext, 0, _contextDimension);
+
     if (_runningOptimizer) {
       if ((_banditStep - _taskSkip) % 2 == 0) {
         _lowest.select();
@@ -742,6 +1336,7 @@ public class AeneasMachine implements Runnable {
 
     //_miniMachine.preStep(_inFinalSelfOptimizeTicks || _continuousFreeze);
     _miniMachine.preStep(_inFinalSelfOptimizeTicks);
+    publishConfiguration();
 
     //System.out.format("STOKE: Selected configuration %d\n", _miniMachine._selected.getId());
 
@@ -753,6 +1348,8 @@ public class AeneasMachine implements Runnable {
       _hackFreeze = false;
       _continuousFreeze = !_continuousFreeze;
     }
+
+    maybeCheckpoint();
   }
 
   /* Programmer API */
@@ -774,6 +1371,12 @@ public class AeneasMachine implements Runnable {
 
     // _diffReading = _meter.diffMeter(_startReading);
 
+    double rawReward = _reward.valuate();
+    double rawJoules = _reward.cached();
+    postStep(ms, rawReward, rawJoules);
+  }
+
+  protected void postStep(long ms, double rawReward, double rawJoules) {
     _banditStep++;
 
     /*
@@ -844,7 +1447,7 @@ public class AeneasMachine implements Runnable {
           System.err.format("STOKE: Performing a round of self optimizer division\n");
           performSelfOptimizerDivision();
           LogUtil.writeLogger("Performing self optimizer division");
-          _miniMachine.dumpConfigurations(_miniMachine._configurations, true);
+          _miniMachine.dumpConfigurations(true);
         } else {
           _miniMachine.finalize();
           System.err.format("STOKE: Selected %d as optimal task-interval\n", KnobValT.needInteger(_taskInterval.getSetting()));
@@ -853,7 +1456,7 @@ public class AeneasMachine implements Runnable {
             _inFinalSelfOptimizeTicks = true;
           } else {
             _runningOptimizer = false;
-            _miniMachine = new MiniMachine(this, _inputKnobs, _configurations, _samplingPolicy, 
+            _miniMachine = new MiniMachine(this, _inputKnobs, _space, _samplingPolicy, 
                 _latticePolicyType, _stochasticPolicyType, _rewardType);
             _miniMachine.setNumTaskSamples(_numTaskSamples);
             _miniMachine.setTaskDelay(_taskDelay);
@@ -866,17 +1469,23 @@ public class AeneasMachine implements Runnable {
     }
     */
 
-    double rawReward = _reward.valuate();
-    double rawJoules = _reward.cached();
-
     double r = _reward.SLA() - rawReward;
-    _miniMachine.postStep(r, 0.0, ms, rawReward, rawJoules);
+    if (_creditId >= 0) {
+      _miniMachine.postStep(_creditId, r, 0.0, ms, rawReward, rawJoules);
+    } else {
+      _miniMachine.postStep(r, 0.0, ms, rawReward, rawJoules);
+    }
     
     // Offline collect
     if (!_miniMachine.inSampling() && _experiment == Experiment.OFFLINE_COLLECT) {
       done();
     }
 
+    if (_performContinousLogic && _gpSearch != null) {
+      gaussianProcessStep(r);
+      return;
+    }
+
     // Continuous knob logic
     if (_performContinousLogic) {
       if (_banditStep > FALLBACK_STEPS) {
@@ -889,43 +1498,40 @@ public class AeneasMachine implements Runnable {
 
       // Continuous Interval Logic
       if (_continuousStepTick >= MIN_STEPS) {
-        double minQ = Double.MAX_VALUE;
-        int minRewardIndex = -1;
-
-        int maxConvergeIndex = -1;
-        double maxConverge = 0;
-        double[] convergenceRates = new double[_miniMachine._configurations.length];
-        for (int i = 0; i < _miniMachine._configurations.length; i++) {
-          Configuration c = _miniMachine._configurations[i];
-          double c_reward = Math.abs(_miniMachine.qvalue(c));
-
-          if (Double.compare(c_reward,minQ) < 0) {
-            minQ = c_reward;
-            minRewardIndex = i;
-          } 
-
-          int stateNumOns = _miniMachine._numOns.get(c.getId()) - _miniMachine._restoredNumOns.get(c.getId());
-          convergenceRates[i] = (double) stateNumOns / (double) _miniMachine.step() ;
-          if (convergenceRates[i] > maxConverge) {
-            maxConverge = convergenceRates[i];
-            maxConvergeIndex = i;
+        ConfigurationSpace space = _miniMachine._space;
+        ConfigurationStats stats = _miniMachine.stats();
+        int minRewardIndex = stats.bestId();
+        double minQ = Math.abs(stats.qvalue(minRewardIndex));
+        double maxConverge = (double) stats.maxFreshNumOn() / (double) _miniMachine.step();
+
+        if (_convergenceDump) {
+          boolean trace = LogUtil.isLoggable(LogUtil.Level.TRACE);
+          for (int i = 0; i < space.size(); i++) {
+            double convergenceRate = (double) stats.freshNumOn(i) / (double) _miniMachine.step();
+            if (trace) {
+              System.err.format("STOKE: %d convergence rate %.2f\n", i, convergenceRate);
+            }
+            LogUtil.writeLogger(String.format("STOKE: %d convergence rate %.2f\n", i, convergenceRate));
           }
-          System.err.format("STOKE: %d convergence rate %.2f\n", c.getId(), convergenceRates[i]);
-          LogUtil.writeLogger(String.format("STOKE: %d convergence rate %.2f\n", c.getId(), convergenceRates[i]));
         }
 
-        System.err.format("STOKE: minQ:%.2f minInd:%d\n", minQ, minRewardIndex);
+        if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+          System.err.format("STOKE: minQ:%.2f minInd:%d\n", minQ, minRewardIndex);
+        }
         LogUtil.writeLogger(String.format("STOKE: minQ:%.2f minInd:%d\n", minQ, minRewardIndex));
 
-        int minId = _miniMachine._configurations[minRewardIndex].getId();
+        int minId = minRewardIndex;
         LogUtil.writeLogger(String.format("STOKE: minId:%d\n", minId));
 
-        int pick = KnobValT.needInteger(_miniMachine._configurations[minRewardIndex].getSettingForKnob(_continuousKnob));
+        StateKey pick = stateKey(space, minRewardIndex, _continuousKnobs);
 
-        int slowpick = KnobValT.needInteger(_miniMachine._configurations[0].getSettingForKnob(_continuousKnob));
-        int fastpick = KnobValT.needInteger(_miniMachine._configurations[_miniMachine._configurations.length-1].getSettingForKnob(_continuousKnob));
+        StateKey slowpick = stateKey(space, space.idAt(0), _continuousKnobs);
+        StateKey fastpick = stateKey(space, space.idAt(space.size()-1), _continuousKnobs);
+        boolean tooClose = tooClose(slowpick, fastpick);
 
-        boolean shouldConverge = Double.compare(maxConverge , CONVERGE_THRESHOLD) > 0;
+        boolean shouldConverge = _roundTest
+          ? leaderSeparated(space, stats, minRewardIndex)
+          : Double.compare(maxConverge , CONVERGE_THRESHOLD) > 0;
         boolean tickUp = _continuousStepTick >= MAX_STEPS;
 
         if (shouldConverge || tickUp) { 
@@ -938,7 +1544,7 @@ public class AeneasMachine implements Runnable {
           } 
 
           boolean emptyRound = _lastRoundQStack.size() == 0;
-          int lastPick = 0;
+          StateKey lastPick = null;
           double lastQ = 0.0;
           if (!emptyRound) {
             lastQ = _lastRoundQStack.get(_lastRoundQStack.size()-1);
@@ -954,33 +1560,46 @@ public class AeneasMachine implements Runnable {
             return;
           }
 
-          if (lastPick == pick) {
-            if (slowpick - fastpick < 50) {
-              System.err.format("STOKE: Too close, staying! slow %d = fast %d)\n", slowpick, fastpick);
-              LogUtil.writeLogger(String.format("STOKE: Too close, staying! slow %d = fast %d)\n", slowpick, fastpick));
+          if (lastPick.equals(pick)) {
+            if (tooClose) {
+              System.err.format("STOKE: Too close, staying! slow %s = fast %s)\n", slowpick, fastpick);
+              LogUtil.writeLogger(String.format("STOKE: Too close, staying! slow %s = fast %s)\n", slowpick, fastpick));
             }
             
 
-            System.err.format("STOKE: Tightening intervals (last pick %d = pick %d)\n", lastPick, pick);
-            LogUtil.writeLogger(String.format("STOKE: Tightening intervals (last pick %d = pick %d)\n", lastPick, pick));
+            System.err.format("STOKE: Tightening intervals (last pick %s = pick %s)\n", lastPick, pick);
+            LogUtil.writeLogger(String.format("STOKE: Tightening intervals (last pick %s = pick %s)\n", lastPick, pick));
             performContinuousKnobDivision(true, null, minId);
             return;
           }
 
           if (Double.compare(lastQ * minQ, 0) < 0) {
-            if (slowpick - fastpick < 50) {
-              System.err.format("STOKE: Too close, staying! slow %d = fast %d)\n", slowpick, fastpick);
-              LogUtil.writeLogger(String.format("STOKE: Too close, staying! slow %d = fast %d)\n", slowpick, fastpick));
+            if (tooClose) {
+              System.err.format("STOKE: Too close, staying! slow %s = fast %s)\n", slowpick, fastpick);
+              LogUtil.writeLogger(String.format("STOKE: Too close, staying! slow %s = fast %s)\n", slowpick, fastpick));
               return;
             }
 
-            int slowInterval = (lastPick > pick) ? lastPick : pick;
-            int fastInterval = (lastPick < pick) ? lastPick : pick;
-
-            System.err.format("STOKE: Crossing boundary Last:%d This:%d\n", lastPick, pick);
-            LogUtil.writeLogger(String.format("STOKE: Crossing boundary Last:%d This:%d\n", lastPick, pick));
-
-            performContinuousKnobDivision(true, AeneasMachine.seedMinMax(slowInterval, fastInterval, _slots), minId);
+            System.err.format("STOKE: Crossing boundary Last:%s This:%s\n", lastPick, pick);
+            LogUtil.writeLogger(String.format("STOKE: Crossing boundary Last:%s This:%s\n", lastPick, pick));
+
+            // Knobs whose pick did not move are tightened around it instead
+            KnobVal[][] settings = new KnobVal[_continuousKnobs.length][];
+            for (int k = 0; k < _continuousKnobs.length; k++) {
+              InferredKnob knob = _continuousKnobs[k];
+              double last = lastPick._coords[k];
+              double now = pick._coords[k];
+              if (last == now) {
+                settings[k] = tightenedSettings(knob, minId);
+              } else if (knob.isIntegerLinear()) {
+                settings[k] = AeneasMachine.seedMinMax((int) Math.max(last, now), (int) Math.min(last, now), _slots);
+              } else {
+                double slow = knob.toCoordinate(Math.max(last, now));
+                double fast = knob.toCoordinate(Math.min(last, now));
+                settings[k] = knob.settingsFor(AeneasMachine.seedMinMaxCoordinates(slow, fast, _slots));
+              }
+            }
+            performContinuousKnobDivision(true, settings, minId);
             return;
           }
 
@@ -989,9 +1608,9 @@ public class AeneasMachine implements Runnable {
           LogUtil.writeLogger(String.format("STOKE: Round diff: %.4f\n", diff));
 
           if (_reward.equate(diff, 0) && Double.compare(lastQ,minQ) > 0) {
-            if (slowpick - fastpick < 50) {
-              System.err.format("STOKE: Too close, staying! slow %d = fast %d)\n", slowpick, fastpick);
-              LogUtil.writeLogger(String.format("STOKE: Too close, staying! slow %d = fast %d)\n", slowpick, fastpick));
+            if (tooClose) {
+              System.err.format("STOKE: Too close, staying! slow %s = fast %s)\n", slowpick, fastpick);
+              LogUtil.writeLogger(String.format("STOKE: Too close, staying! slow %s = fast %s)\n", slowpick, fastpick));
               return;
             }
 
@@ -1037,6 +1656,8 @@ public class AeneasMachine implements Runnable {
       LogUtil.writeLogger(String.format("ERun: Time:%d\n", _totalWatch.elapsed(TimeUnit.MILLISECONDS)));
       LogUtil.writeLogger(String.format("==END-RUN %d==\n", _runCount));
       LogUtil.writeLogger(String.format("==ROUND-END==\n", _runCount));
+      EventJournal.runEnd(_runCount, _totalWatch.elapsed(TimeUnit.MILLISECONDS));
+      EventJournal.roundEnd(_continuousRoundTick, -1);
     }
     if (_reward._taskWatch.isRunning()) {
       _reward._taskWatch.stop();
@@ -1045,14 +1666,16 @@ public class AeneasMachine implements Runnable {
       _taskWatch.stop();
     }
 
-    _miniMachine.dumpConfigurations(_miniMachine._configurations, false);
-    _miniMachine.dumpConfigurations(_miniMachine._configurations, true);
+    _miniMachine.dumpConfigurations(false);
+    _miniMachine.dumpConfigurations(true);
   }
 
 
   /* Programmer API */
   public void done() {
+    finalCheckpoint();
     LogUtil.closeLogger();
+    EventJournal.close();
     System.out.format("\n");
     System.exit(0);
   } 
@@ -1138,11 +1761,231 @@ public class AeneasMachine implements Runnable {
 
   protected int       _numSplits = 5;
 
+  /* The per-configuration convergence rates written to the log on every
+   * step past MIN_STEPS; O(configurations) per step, so it can be switched
+   * off at runtime (setConvergenceDump, STOKE_CONVERGENCE_DUMP). */
+  protected volatile boolean _convergenceDump = true;
+
+  public void setConvergenceDump(boolean convergenceDump) {
+    _convergenceDump = convergenceDump;
+  }
+
+  /* The inferred knob is searched in rounds (postStep) by default. With
+   * GAUSSIAN_PROCESS (setContinuousSearch, STOKE_CONTINUOUS_SEARCH) it
+   * holds a single setting, the one under test, so the mini bandit is never
+   * rebuilt: every numTaskSamples tasks per discrete configuration
+   * GaussianProcessSearch proposes the next setting from all of _states,
+   * which is kept up to date task by task. Must be chosen before
+   * restoreCheckpoint and start. */
+  protected ContinuousSearch _continuousSearch = ContinuousSearch.ROUNDS;
+  protected GaussianProcessSearch _gpSearch = null;
+  protected KnobVal[][] _roundSettings = null;
+
+  public void setContinuousSearch(ContinuousSearch search) {
+    if (_running) {
+      throw new RuntimeException("Error: Continuous search must be set before start()");
+    }
+    if (_continuousKnobs == null || search == _continuousSearch) {
+      _continuousSearch = search;
+      return;
+    }
+    _continuousSearch = search;
+    if (search == ContinuousSearch.GAUSSIAN_PROCESS) {
+      // Design: each knob's seeds in turn, the others at their middle seed
+      _roundSettings = continuousSettings();
+      int dims = _continuousKnobs.length;
+      double[] center = new double[dims];
+      List<double[]> design = new ArrayList<>();
+      for (int k = 0; k < dims; k++) {
+        center[k] = KnobValT.forceDouble(_roundSettings[k][_roundSettings[k].length / 2]);
+      }
+      for (int k = 0; k < dims; k++) {
+        for (int i = 0; i < _roundSettings[k].length; i++) {
+          double[] point = Arrays.copyOf(center, dims);
+          point[k] = KnobValT.forceDouble(_roundSettings[k][i]);
+          design.add(point);
+        }
+      }
+      _gpSearch = new GaussianProcessSearch(_continuousKnobs, design.toArray(new double[][]{}));
+      moveContinuousKnobs(design.get(0));
+    } else {
+      _gpSearch = null;
+      for (int k = 0; k < _continuousKnobs.length; k++) {
+        _continuousKnobs[k].changeSettings(_roundSettings[k]);
+      }
+    }
+    _space = spaceFromKnobs();
+    int samples = _miniMachine._numTaskSamples;
+    _miniMachine = new MiniMachine(this, _inputKnobs, _space, _samplingPolicy, _stochasticPolicyType, _rewardType);
+    _miniMachine.setNumTaskSamples(samples);
+    _miniMachine.setTaskDelay(_taskDelay);
+    configurationsChanged();
+    publishConfiguration();
+  }
+
+  public ContinuousSearch getContinuousSearch() {
+    return _continuousSearch;
+  }
+
+  /* Pins every inferred knob to its coordinate of point; true if any moved */
+  protected boolean moveContinuousKnobs(double[] point) {
+    boolean moved = false;
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      KnobVal setting = _continuousKnobs[k].settingFor(point[k]);
+      KnobVal[] current = _continuousKnobs[k].getSettings();
+      if (current.length != 1 || KnobValT.forceDouble(current[0]) != KnobValT.forceDouble(setting)) {
+        _continuousKnobs[k].changeSettings(new KnobVal[]{ setting });
+        moved = true;
+      }
+    }
+    if (moved) {
+      configurationsChanged();
+    }
+    return moved;
+  }
+
+  /* The point the pinned inferred knobs are at */
+  protected StateKey pinnedPoint() {
+    double[] coords = new double[_continuousKnobs.length];
+    for (int k = 0; k < coords.length; k++) {
+      coords[k] = KnobValT.forceDouble(_continuousKnobs[k].getSettingAtPos(0));
+    }
+    return new StateKey(coords);
+  }
+
+  /* Learns the reward of the point under test into _states (Welford) and,
+   * once it has had its tasks, moves the knobs to the next proposal. A point
+   * gets numTaskSamples tasks per configuration of the discrete knobs, and
+   * everything the mini bandit learned at the old point is retired when the
+   * knobs move, so it samples the discrete configurations again: the point's
+   * Q is the mean over them (see GaussianProcessSearch). */
+  protected void gaussianProcessStep(double r) {
+    StateKey point = pinnedPoint();
+    StatePreserve sp = _states.get(point);
+    if (sp == null) {
+      sp = new StatePreserve(0.0, 0, 0.0);
+      _states.put(point, sp);
+    }
+    sp._numOn++;
+    double d = r - sp._q;
+    sp._q += d / sp._numOn;
+    sp._m2 += d * (r - sp._q);
+
+    _continuousStepTick++;
+    if (_continuousStepTick < Math.max(1, _miniMachine._numTaskSamples) * _space.size()) {
+      return;
+    }
+    _continuousStepTick = 0;
+
+    if (moveContinuousKnobs(_gpSearch.propose(_states))) {
+      _miniMachine.stats().newRound();
+      for (int id = 0; id < _space.size(); id++) {
+        _miniMachine.retire(id, null);
+      }
+      _miniMachine.beginRound();
+    }
+    String msg = String.format("STOKE: GP: point %s Q:%.4f -> %s (EI %.4f, best %s)\n",
+        point, sp._q, pinnedPoint(), _gpSearch.lastEI(), _gpSearch.best());
+    if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+      System.err.print(msg);
+    }
+    LogUtil.writeLogger(msg);
+  }
+
+  /* Ending rounds on a test instead of CONVERGE_THRESHOLD: a round ends
+   * (after MIN_STEPS, and by MAX_STEPS regardless) once a Welch t-test finds
+   * the leader's |Q| lower than each of its neighbors' with _roundConfidence,
+   * the neighbors being the configurations one setting up or down on an
+   * inferred knob. Off by default (setRoundTest, STOKE_ROUND_TEST;
+   * STOKE_ROUND_CONFIDENCE). */
+  public static final double ROUND_CONFIDENCE = 0.95;
+
+  protected boolean _roundTest = false;
+  protected double  _roundConfidence = ROUND_CONFIDENCE;
+
+  public void setRoundTest(boolean roundTest) {
+    if (_running) {
+      throw new RuntimeException("Error: Round test must be set before start()");
+    }
+    _roundTest = roundTest;
+  }
+
+  public void setRoundConfidence(double confidence) {
+    if (!(confidence > 0.0 && confidence < 1.0)) {
+      throw new RuntimeException("Error: Round confidence must be in (0, 1), got " + confidence);
+    }
+    _roundConfidence = confidence;
+  }
+
+  protected boolean leaderSeparated(ConfigurationSpace space, ConfigurationStats stats, int leader) {
+    int[] positions = new int[space.numKnobs()];
+    space.positions(leader, positions);
+    double maxP = 0.0;
+    int neighbors = 0;
+    for (int i = 0; i < positions.length && maxP < 1.0; i++) {
+      if (!(space.getKnob(i) instanceof InferredKnob)) {
+        continue;
+      }
+      int home = positions[i];
+      for (int step = -1; step <= 1; step += 2) {
+        positions[i] = home + step;
+        if (positions[i] < 0 || positions[i] >= space.getKnob(i).numPos()) {
+          continue;
+        }
+        int id = space.encode(positions);
+        if (!stats.isCandidate(id)) {
+          continue;
+        }
+        neighbors++;
+        maxP = Math.max(maxP, WelchTest.pValue(stats.qvalue(leader), stats.variance(leader), stats.m2Count(leader),
+              stats.qvalue(id), stats.variance(id), stats.m2Count(id)));
+      }
+      positions[i] = home;
+    }
+    if (neighbors == 0) {
+      return false;
+    }
+    boolean separated = maxP < 1.0 - _roundConfidence;
+    String msg = String.format("STOKE: Round test: leader %d, %d neighbors, p %.4f%s\n",
+        leader, neighbors, maxP, separated ? ", separated" : "");
+    if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+      System.err.print(msg);
+    }
+    LogUtil.writeLogger(msg);
+    return separated;
+  }
+
+  /* Re-explore single configurations whose rewards shift (see
+   * ChangeDetector) instead of relying on resetConfigurations(). Off by
+   * default (setChangeDetection, STOKE_CHANGE_DETECTION). */
+  protected boolean _changeDetection = false;
+
+  public void setChangeDetection(boolean changeDetection) {
+    if (_running) {
+      throw new RuntimeException("Error: Change detection must be set before start()");
+    }
+    _changeDetection = changeDetection;
+    if (_miniMachine != null) {
+      _miniMachine.setChangeDetection(changeDetection);
+    }
+  }
+
+  /* Seed for the policies' random draws (epsilon-greedy, VBDE, SOFTMAX,
+   * THOMPSON, FACTORED); every mini bandit this machine builds starts from
+   * it. Unseeded by default. */
+  protected Long _policySeed = null;
+
+  public void setPolicySeed(long seed) {
+    _policySeed = seed;
+    if (_miniMachine != null) {
+      _miniMachine._stochasticPolicy.setSeed(seed);
+    }
+  }
+
   // This is done specifically for the self optimizing mini bandit
   private Configuration[] orderByReward(final boolean increasing) {
     System.out.println("STOKE: orderByReward  " + increasing);
-    Configuration[] ordered = 
-      Arrays.copyOf(_miniMachine._configurations, _miniMachine._configurations.length);
+    Configuration[] ordered = _miniMachine._space.materializeAll();
     Arrays.sort(ordered, new Comparator<Configuration>() {
       public int compare(Configuration c1, Configuration c2) {
         double e1 = _miniMachine.qvalue(c1);
@@ -1158,7 +2001,7 @@ public class AeneasMachine implements Runnable {
   }
 
   public Configuration[] orderByRecording(final Recording recording, final boolean increasing) {
-    Configuration[] ordered = Arrays.copyOf(_configurations, _configurations.length);
+    Configuration[] ordered = _space.materializeAll();
     Arrays.sort(ordered, new Comparator<Configuration>() {
       public int compare(Configuration c1, Configuration c2) {
         double e1 = KnobValT.needDouble(c1.getRecordingDivd(recording.name()));
@@ -1202,24 +2045,24 @@ public class AeneasMachine implements Runnable {
   private List<ConfigurationPair> isolateSelfOptimizeCases() { 
     double maxReward = 0.0;
     int maxi = -1;
-    for (int i = 0; i < _miniMachine._configurations.length; i++) {
-      Configuration c = _miniMachine._configurations[i];
-      double e = _miniMachine.qvalue(c);
+    ConfigurationSpace space = _miniMachine._space;
+    for (int i = 0; i < space.size(); i++) {
+      double e = _miniMachine.qvalue(i);
       if (e > maxReward) {
         maxReward = e;
         maxi = i;
       }
     }
-    System.out.println("STOKE: Select maxi : " + maxi + " length " + _miniMachine._configurations.length);
+    System.out.println("STOKE: Select maxi : " + maxi + " length " + space.size());
 
     List<ConfigurationPair> edges = new ArrayList<>();
     if (maxi == 0) {
-      edges.add(new ConfigurationPair(_miniMachine._configurations[0],_miniMachine._configurations[1] ));
-    } else if (maxi == _miniMachine._configurations.length-1) {
-      edges.add(new ConfigurationPair(_miniMachine._configurations[_miniMachine._configurations.length-2],_miniMachine._configurations[_miniMachine._configurations.length-1] ));
+      edges.add(new ConfigurationPair(space.get(0), space.get(1)));
+    } else if (maxi == space.size()-1) {
+      edges.add(new ConfigurationPair(space.get(space.size()-2), space.get(space.size()-1)));
     } else {
-      edges.add(new ConfigurationPair(_miniMachine._configurations[maxi-1],_miniMachine._configurations[maxi] ));
-      edges.add(new ConfigurationPair(_miniMachine._configurations[maxi],_miniMachine._configurations[maxi+1] ));
+      edges.add(new ConfigurationPair(space.get(maxi-1), space.get(maxi)));
+      edges.add(new ConfigurationPair(space.get(maxi), space.get(maxi+1)));
     }
 
     return edges;
@@ -1493,6 +2336,76 @@ public class AeneasMachine implements Runnable {
     return seeds;
   }
 
+  /* seedMinMax and seed over real coordinates, for inferred knobs that are
+   * not linear integers; the partitions are the same, without rounding */
+  public static List<Double> seedMinMaxCoordinates(double slow, double fast, int slots) {
+    double parts = (slow - fast) / (slots - 1);
+    List<Double> seeds = new ArrayList<>();
+    for (int i = 0; i < slots - 1; i++) {
+      seeds.add(slow - (i * parts));
+    }
+    seeds.add(fast);
+    return seeds;
+  }
+
+  public static List<Double> seedCoordinates(double slow, double middle, double fast, double range, int slots) { 
+    double partition = range / (slots - 1);
+
+    String fmt = String.format("STOKE: Range:%.4f Partition:%.4f Middle:%.4f\n", range, partition, middle);
+    System.err.print(fmt);
+    LogUtil.writeLogger(fmt);
+
+    List<Double> seeds = new ArrayList<>();
+
+    int distributed = 1;
+
+    boolean hitSlowBoundary = false;
+    for (int i = 0; i < slots / 2; i++) {
+      int off = (slots / 2) - i;
+      if (middle + (partition * off) <= slow) {
+        seeds.add(middle + (partition * off));
+        distributed++;
+      } else {
+        hitSlowBoundary = true;
+      }
+    }
+    if (hitSlowBoundary && middle != slow) {
+      distributed++;
+      seeds.add(slow);
+    }
+
+    seeds.add(middle);
+
+    boolean hitFastBoundary = false;
+    for (int i = 0; i < slots / 2; i++) {
+      int off = i + 1;
+      if (middle - (partition * off) >= fast) {
+        seeds.add(middle - (partition * off));
+        distributed++;
+      } else {
+        hitFastBoundary = true; 
+      }
+    }
+    if (hitFastBoundary && middle != fast) {
+      distributed++;
+      seeds.add(fast);
+    }
+
+    Collections.sort(seeds, Collections.reverseOrder());
+
+    int remaining = slots - distributed;
+    if (remaining > 0) {
+      double smallerPartition = partition / (remaining + 1);
+      double edge = hitSlowBoundary ? seeds.get(0) : seeds.get(seeds.size()-1);
+      for (int i = 0; i < remaining; i++) {
+        seeds.add(hitSlowBoundary ? edge - (smallerPartition * (i+1)) : edge + (smallerPartition * (i+1)));
+      }
+      Collections.sort(seeds, Collections.reverseOrder());
+    }
+
+    return seeds;
+  }
+
   public boolean populateKnobFromEdges(boolean shouldTighten, int minId) {
     if (!shouldTighten) {
       SeedRange sr = _seedStack.get(_seedStack.size()-1);
@@ -1504,30 +2417,72 @@ public class AeneasMachine implements Runnable {
         newSettings.add(KnobValT.haveInteger(seeds.get(i)));
       }
       */
-      _continuousKnob.changeSettings(sr._settings);
+      for (int k = 0; k < _continuousKnobs.length; k++) {
+        _continuousKnobs[k].changeSettings(sr._settings[k]);
+      }
       return true;
     }
 
-    Configuration slowc = _configurations[0];
-    Configuration fastc = _configurations[_configurations.length-1];
+    KnobVal[][] settings = new KnobVal[_continuousKnobs.length][];
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      settings[k] = tightenedSettings(_continuousKnobs[k], minId);
+    }
+
+    _seedStack.add(new SeedRange(continuousSettings()));
+
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      _continuousKnobs[k].changeSettings(settings[k]); 
+    }
+    return true;
+  }
+
+  /* Half the knob's current range, centered on its setting in minId */
+  protected KnobVal[] tightenedSettings(InferredKnob knob, int minId) {
+    if (!knob.isIntegerLinear()) {
+      double slow = knob.toCoordinate(KnobValT.forceDouble(knob.getSettingAtPos(0)));
+      double middle = knob.toCoordinate(KnobValT.forceDouble(_space.getSetting(minId, knob)));
+      double fast = knob.toCoordinate(KnobValT.forceDouble(knob.getSettingAtPos(knob.numPos()-1)));
+      List<Double> seeds = AeneasMachine.seedCoordinates(knob.toCoordinate(knob._highLimit), middle,
+          knob.toCoordinate(knob._lowLimit), (slow - fast) / 2, _slots);
+      KnobVal[] settings = knob.settingsFor(seeds);
+      LogUtil.writeLogger(String.format("STOKE: Generated seeds: %s\n", Arrays.toString(settings)));
+      return settings;
+    }
 
-    int slow = KnobValT.needInteger(slowc.getSettingForKnob(_continuousKnob));
-    int middle = KnobValT.needInteger(_configurations[minId].getSettingForKnob(_continuousKnob));
-    int fast = KnobValT.needInteger(fastc.getSettingForKnob(_continuousKnob));
+    int slow = KnobValT.needInteger(knob.getSettingAtPos(0));
+    int middle = KnobValT.needInteger(_space.getSetting(minId, knob));
+    int fast = KnobValT.needInteger(knob.getSettingAtPos(knob.numPos()-1));
 
     int originalRange = slow - fast;
     int newRange = originalRange / 2;
 
-    List<Integer> seeds = AeneasMachine.seed(_continuousKnob._highLimit,middle,_continuousKnob._lowLimit,newRange, _slots);
-
-    _seedStack.add(new SeedRange(Arrays.copyOf(_continuousKnob.getSettings(), _continuousKnob.getSettings().length)));
+    List<Integer> seeds = AeneasMachine.seed((int) knob._highLimit,middle,(int) knob._lowLimit,newRange, _slots);
 
     List<KnobVal> newSettings = new ArrayList<>(); 
     for (int i = 0; i < seeds.size(); i++) {
       newSettings.add(KnobValT.haveInteger(seeds.get(i)));
     }
+    return newSettings.toArray(new KnobVal[]{});
+  }
 
-    _continuousKnob.changeSettings(newSettings.toArray(new KnobVal[]{})); 
+  /* A copy of every inferred knob's current settings */
+  protected KnobVal[][] continuousSettings() {
+    KnobVal[][] settings = new KnobVal[_continuousKnobs.length][];
+    for (int k = 0; k < _continuousKnobs.length; k++) {
+      KnobVal[] current = _continuousKnobs[k].getSettings();
+      settings[k] = Arrays.copyOf(current, current.length);
+    }
+    return settings;
+  }
+
+  /* A round whose slowest and fastest settings are this close on every
+   * inferred knob cannot be divided any further */
+  protected boolean tooClose(StateKey slow, StateKey fast) {
+    for (int k = 0; k < slow._coords.length; k++) {
+      if (!_continuousKnobs[k].indivisible(slow._coords[k], fast._coords[k])) {
+        return false;
+      }
+    }
     return true;
   }
 
@@ -1635,4 +2590,305 @@ public class AeneasMachine implements Runnable {
     return _continuousFreeze || _hackFreeze;
   }
 
+
+  /* Cross-process learning: see SharedConfigurationStats. Mini bandits built
+   * over discrete knobs publish to and learn from this file. */
+  protected String _sharedStatsPath = null;
+
+  public void setSharedStats(String path) {
+    if (_running) {
+      throw new RuntimeException("Error: Shared stats must be set before start()");
+    }
+    _sharedStatsPath = path;
+    if (!_runningOptimizer) {
+      int samples = _miniMachine._numTaskSamples;
+      _miniMachine = new MiniMachine(this, _inputKnobs, _space, _samplingPolicy, _stochasticPolicyType, _rewardType);
+      _miniMachine.setNumTaskSamples(samples);
+      _miniMachine.setTaskDelay(_taskDelay);
+    }
+  }
+
+  /* Checkpointing: see Checkpoint. Snapshots are taken on the machine thread
+   * between steps (after the next configuration has been selected), every
+   * _checkpointInterval bandit steps. The self-optimizer's temporary mini
+   * bandit is never checkpointed. */
+  public static final int CHECKPOINT_INTERVAL = 25;
+
+  protected Checkpoint _checkpoint = null;
+  protected int _checkpointInterval = CHECKPOINT_INTERVAL;
+  protected int _lastCheckpointStep = 0;
+
+  public void setCheckpoint(String path) {
+    if (_checkpoint != null) {
+      _checkpoint.close();
+    }
+    _checkpoint = (path != null) ? new Checkpoint(path) : null;
+  }
+
+  public Checkpoint getCheckpoint() {
+    return _checkpoint;
+  }
+
+  public void setCheckpointInterval(int steps) {
+    _checkpointInterval = steps;
+  }
+
+  /* Checkpoints only apply to a machine with the same knobs and policies.
+   * Inferred knobs are identified by their limits, since their settings move
+   * from round to round and are part of the checkpoint itself. */
+  protected long checkpointFingerprint() {
+    long fp = Checkpoint.fingerprint(0, _stochasticPolicyType.name());
+    fp = Checkpoint.fingerprint(fp, _samplingPolicy.name());
+    if (_continuousSearch != ContinuousSearch.ROUNDS) {
+      fp = Checkpoint.fingerprint(fp, _continuousSearch.name());
+    }
+    for (Knob k : _inputKnobs.values()) {
+      fp = Checkpoint.fingerprint(fp, k.name());
+      if (k instanceof InferredKnob) {
+        InferredKnob ik = (InferredKnob) k;
+        if (ik.isIntegerLinear()) {
+          fp = Checkpoint.fingerprint(fp, String.format("inferred:%d:%d", (int) ik._highLimit, (int) ik._lowLimit));
+        } else {
+          fp = Checkpoint.fingerprint(fp, String.format("inferred:%s:%s:%b:%b", ik._highLimit, ik._lowLimit, ik._integer, ik._logScale));
+        }
+      } else {
+        KnobVal[] settings = k.getSettings();
+        for (int i = 0; i < settings.length; i++) {
+          fp = Checkpoint.fingerprint(fp, settings[i].toString());
+        }
+      }
+    }
+    return fp;
+  }
+
+  protected void maybeCheckpoint() {
+    if (_checkpoint == null || _runningOptimizer) {
+      return;
+    }
+    if (_banditStep - _lastCheckpointStep < _checkpointInterval) {
+      return;
+    }
+    _lastCheckpointStep = _banditStep;
+    snapshotCheckpoint();
+  }
+
+  /* A last snapshot off the interval, so the steps since the previous one
+   * survive a stop() or done(), then waits for it to reach disk. */
+  protected void finalCheckpoint() {
+    if (_checkpoint == null) {
+      return;
+    }
+    if (!_runningOptimizer) {
+      _lastCheckpointStep = _banditStep;
+      snapshotCheckpoint();
+    }
+    _checkpoint.close();
+  }
+
+  private void snapshotCheckpoint() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = Checkpoint.header(bytes, checkpointFingerprint());
+      writeCheckpoint(out);
+      out.flush();
+      _checkpoint.save(bytes.toByteArray());
+    } catch (IOException e) {
+      System.err.format("STOKE: Unable to snapshot checkpoint: %s\n", e);
+    }
+  }
+
+  protected void writeCheckpoint(DataOutputStream out) throws IOException {
+    out.writeInt(_banditStep);
+    out.writeInt(_runCount);
+    out.writeInt(_repeatTick);
+    out.writeInt(_continuousStepTick);
+    out.writeInt(_continuousRoundTick);
+    out.writeBoolean(_continuousFreeze);
+    out.writeBoolean(_hackFreeze);
+
+    out.writeInt((_continuousKnobs != null) ? _continuousKnobs.length : 0);
+    if (_continuousKnobs != null) {
+      for (int k = 0; k < _continuousKnobs.length; k++) {
+        Checkpoint.writeKnobVals(out, _continuousKnobs[k].getSettings());
+      }
+    }
+
+    out.writeInt(_states.size());
+    for (Map.Entry<StateKey, StatePreserve> e : _states.entrySet()) {
+      writeStateKey(out, e.getKey());
+      out.writeDouble(e.getValue()._q);
+      out.writeInt(e.getValue()._numOn);
+      out.writeDouble(e.getValue()._m2);
+    }
+
+    out.writeInt(_seedStack.size());
+    for (SeedRange sr : _seedStack) {
+      out.writeBoolean(sr._settings != null);
+      if (sr._settings != null) {
+        for (int k = 0; k < sr._settings.length; k++) {
+          Checkpoint.writeKnobVals(out, sr._settings[k]);
+        }
+      } else {
+        out.writeInt(sr._slow);
+        out.writeInt(sr._fast);
+        out.writeInt(sr._mid);
+      }
+    }
+
+    out.writeInt(_lastRoundQStack.size());
+    for (int i = 0; i < _lastRoundQStack.size(); i++) {
+      out.writeDouble(_lastRoundQStack.get(i));
+    }
+    out.writeInt(_lastRoundPickStack.size());
+    for (int i = 0; i < _lastRoundPickStack.size(); i++) {
+      writeStateKey(out, _lastRoundPickStack.get(i));
+    }
+
+    if (_continuousKnobs != null && _continuousKnobs.length > 0) {
+      _space.writeLayout(out);
+    }
+    _miniMachine.writeState(out);
+  }
+
+  /* Loads the checkpoint, if there is a compatible one, in place of the
+   * sampling phase. Nothing is changed unless the whole checkpoint reads
+   * back cleanly. */
+  public boolean restoreCheckpoint() {
+    if (_running) {
+      throw new RuntimeException("Error: Checkpoint must be restored before start()");
+    }
+    if (_checkpoint == null) {
+      return false;
+    }
+    DataInputStream in = _checkpoint.open(checkpointFingerprint());
+    if (in == null) {
+      return false;
+    }
+
+    KnobVal[][] oldSettings = (_continuousKnobs != null) ? continuousSettings() : null;
+    try {
+      readCheckpoint(in);
+    } catch (IOException e) {
+      System.err.format("STOKE: Ignoring checkpoint %s: %s\n", _checkpoint.path(), e);
+      if (oldSettings != null) {
+        for (int k = 0; k < _continuousKnobs.length; k++) {
+          _continuousKnobs[k].changeSettings(oldSettings[k]);
+        }
+      }
+      _miniMachine.selectConfigurationById(_miniMachine.currentConfiguration());
+      return false;
+    }
+
+    _lastCheckpointStep = _banditStep;
+    configurationsChanged();
+    publishConfiguration();
+    System.err.format("STOKE: Restored checkpoint %s at step %d\n", _checkpoint.path(), _banditStep);
+    LogUtil.writeLogger(String.format("STOKE: Restored checkpoint at step %d\n", _banditStep));
+    return true;
+  }
+
+  protected void readCheckpoint(DataInputStream in) throws IOException {
+    int banditStep = in.readInt();
+    int runCount = in.readInt();
+    int repeatTick = in.readInt();
+    int continuousStepTick = in.readInt();
+    int continuousRoundTick = in.readInt();
+    boolean continuousFreeze = in.readBoolean();
+    boolean hackFreeze = in.readBoolean();
+
+    int dims = (_continuousKnobs != null) ? _continuousKnobs.length : 0;
+    if (in.readInt() != dims) {
+      throw new IOException("continuous knob mismatch");
+    }
+    KnobVal[][] continuousSettings = null;
+    if (dims > 0) {
+      continuousSettings = new KnobVal[dims][];
+      for (int k = 0; k < dims; k++) {
+        continuousSettings[k] = Checkpoint.readKnobVals(in);
+      }
+    }
+
+    Map<StateKey, StatePreserve> states = new HashMap<>();
+    int numStates = in.readInt();
+    for (int i = 0; i < numStates; i++) {
+      StateKey key = readStateKey(in, dims);
+      double q = in.readDouble();
+      int numOn = in.readInt();
+      double m2 = in.readDouble();
+      states.put(key, new StatePreserve(q, numOn, m2));
+    }
+
+    List<SeedRange> seedStack = new ArrayList<SeedRange>();
+    int numSeeds = in.readInt();
+    for (int i = 0; i < numSeeds; i++) {
+      if (in.readBoolean()) {
+        KnobVal[][] settings = new KnobVal[dims][];
+        for (int k = 0; k < dims; k++) {
+          settings[k] = Checkpoint.readKnobVals(in);
+        }
+        seedStack.add(new SeedRange(settings));
+      } else {
+        int slow = in.readInt();
+        int fast = in.readInt();
+        int mid = in.readInt();
+        seedStack.add(new SeedRange(slow, fast, mid));
+      }
+    }
+
+    List<Double> qStack = new ArrayList<Double>();
+    int numQ = in.readInt();
+    for (int i = 0; i < numQ; i++) {
+      qStack.add(in.readDouble());
+    }
+    List<StateKey> pickStack = new ArrayList<StateKey>();
+    int numPicks = in.readInt();
+    for (int i = 0; i < numPicks; i++) {
+      pickStack.add(readStateKey(in, dims));
+    }
+
+    // The inferred knobs' settings decide the configuration space, so it has
+    // to be rebuilt over them before the mini bandit's state can be read. The
+    // mini bandit is always a fresh one, so a bad read leaves ours untouched.
+    ConfigurationSpace space = _space;
+    if (continuousSettings != null) {
+      for (int k = 0; k < dims; k++) {
+        _continuousKnobs[k].changeSettings(continuousSettings[k]);
+      }
+      space = spaceFromKnobs();
+      space.readLayout(in);
+    }
+    MiniMachine miniMachine = new MiniMachine(this, _inputKnobs, space, _samplingPolicy, _stochasticPolicyType, _rewardType);
+    miniMachine.setNumTaskSamples(_miniMachine._numTaskSamples);
+    miniMachine.setTaskDelay(_taskDelay);
+    miniMachine.readState(in);
+
+    _space = space;
+    _miniMachine = miniMachine;
+    _banditStep = banditStep;
+    _runCount = runCount;
+    _repeatTick = repeatTick;
+    _continuousStepTick = continuousStepTick;
+    _continuousRoundTick = continuousRoundTick;
+    _continuousFreeze = continuousFreeze;
+    _hackFreeze = hackFreeze;
+    _states = states;
+    _seedStack = seedStack;
+    _lastRoundQStack = qStack;
+    _lastRoundPickStack = pickStack;
+  }
+
+  protected static void writeStateKey(DataOutputStream out, StateKey key) throws IOException {
+    for (int k = 0; k < key._coords.length; k++) {
+      out.writeDouble(key._coords[k]);
+    }
+  }
+
+  protected static StateKey readStateKey(DataInputStream in, int dims) throws IOException {
+    double[] coords = new double[dims];
+    for (int k = 0; k < dims; k++) {
+      coords[k] = in.readDouble();
+    }
+    return new StateKey(coords);
+  }
+
 }
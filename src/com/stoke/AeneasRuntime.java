@@ -0,0 +1,86 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/* A scheduler shared by many AeneasMachines. Without one, every machine owns
+ * a parked thread and a lock/condition pair; registered machines instead hand
+ * their postStep/preStep work to a small worker pool as tasks. A machine never
+ * has more than one task in flight, so its own steps stay ordered even though
+ * consecutive steps may run on different workers. */
+public class AeneasRuntime {
+  public static final int WORKERS = 2;
+
+  private final ExecutorService _pool;
+  private final List<AeneasMachine> _machines = new CopyOnWriteArrayList<>();
+
+  public AeneasRuntime() {
+    this(defaultWorkers());
+  }
+
+  public AeneasRuntime(int workers) {
+    final AtomicInteger workerId = new AtomicInteger();
+    _pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "aeneas-worker-" + workerId.getAndIncrement());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  private static int defaultWorkers() {
+    Integer workers = (Integer) AndroidUtil.getProperty("STOKE_RUNTIME_WORKERS");
+    return (workers != null) ? workers : WORKERS;
+  }
+
+  /* Must be called before machine.start() */
+  public void register(AeneasMachine machine) {
+    machine.attachRuntime(this);
+    _machines.add(machine);
+  }
+
+  public void unregister(AeneasMachine machine) {
+    machine.stop();
+    machine.attachRuntime(null);
+    _machines.remove(machine);
+  }
+
+  public List<AeneasMachine> machines() {
+    return Collections.unmodifiableList(_machines);
+  }
+
+  void dispatch(Runnable task) {
+    _pool.execute(task);
+  }
+
+  public void shutdown() {
+    for (AeneasMachine machine : _machines) {
+      machine.stop();
+    }
+    _pool.shutdown();
+  }
+}
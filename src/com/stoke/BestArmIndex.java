@@ -0,0 +1,89 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+/* A tournament tree over per-configuration scores. Leaves hold the scores,
+ * every internal node holds the index of the better of its two children, so
+ * the overall best sits at the root: best() is O(1) and update() replays the
+ * O(log n) matches on the path from one leaf to the root.
+ *
+ * "Better" follows StochasticPolicy.argMaxSelect: the lowest score wins and
+ * ties go to the lower index. */
+public class BestArmIndex {
+
+  private final int      _size;
+  private final int      _leaves;
+  private final double[] _scores;
+  private final int[]    _winners;
+
+  public BestArmIndex(int size) {
+    _size = size;
+    int leaves = 1;
+    while (leaves < size) {
+      leaves <<= 1;
+    }
+    _leaves = leaves;
+    _scores = new double[size];
+    _winners = new int[2 * leaves];
+
+    for (int i = 0; i < leaves; i++) {
+      _winners[leaves + i] = (i < size) ? i : -1;
+    }
+    for (int node = leaves - 1; node > 0; node--) {
+      _winners[node] = match(_winners[2 * node], _winners[(2 * node) + 1]);
+    }
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  public int best() {
+    return _winners[1];
+  }
+
+  public double score(int i) {
+    return _scores[i];
+  }
+
+  public void update(int i, double score) {
+    _scores[i] = score;
+    int node = (_leaves + i) >> 1;
+    while (node > 0) {
+      int winner = match(_winners[2 * node], _winners[(2 * node) + 1]);
+      if (_winners[node] == winner && winner != i) {
+        // Nothing above can change: the same arm, with the same score, still wins here
+        break;
+      }
+      _winners[node] = winner;
+      node >>= 1;
+    }
+  }
+
+  private int match(int l, int r) {
+    if (l < 0) {
+      return r;
+    }
+    if (r < 0) {
+      return l;
+    }
+    return (Double.compare(_scores[r], _scores[l]) < 0) ? r : l;
+  }
+}
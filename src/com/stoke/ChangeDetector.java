@@ -0,0 +1,135 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.util.Arrays;
+
+/* Two-sided Page-Hinkley test on the reward stream of each configuration,
+ * for noticing that a configuration's energy has shifted (thermal state,
+ * signal, battery) without re-learning every configuration.
+ *
+ * Rewards are standardized with the configuration's own Welford statistics
+ * in ConfigurationStats as they were before the reward was learned,
+ * z = (r - Q(a)) / s(a), so the reward under test does not pull the mean
+ * and spread toward itself and the thresholds are in standard deviations
+ * whatever the reward's units. Per configuration,
+ *
+ *   up   <- up + z - DELTA,   alarm if up - min(up) > LAMBDA
+ *   down <- down - z - DELTA, alarm if down - min(down) > LAMBDA
+ *
+ * i.e., a sustained shift of more than DELTA deviations in either direction
+ * raises an alarm after about LAMBDA / (shift - DELTA) rewards. Nothing is
+ * tested until a configuration has MIN_SAMPLES rewards of its own. */
+public class ChangeDetector {
+  public static final double DELTA = 0.5;
+  public static final double LAMBDA = 8.0;
+  public static final int MIN_SAMPLES = 5;
+
+  protected double _delta = DELTA;
+  protected double _lambda = LAMBDA;
+
+  protected final double[] _up;
+  protected final double[] _upMin;
+  protected final double[] _down;
+  protected final double[] _downMin;
+
+  protected int _detections = 0;
+
+  public ChangeDetector(int size) {
+    _up = new double[size];
+    _upMin = new double[size];
+    _down = new double[size];
+    _downMin = new double[size];
+  }
+
+  public void setThresholds(double delta, double lambda) {
+    _delta = delta;
+    _lambda = lambda;
+  }
+
+  /* Feed a reward for id, with the configuration's Q, variance and number
+   * of rewards from before it was learned; true if it completes a change */
+  public boolean update(int id, double reward, double q, double var, int count) {
+    if (count < MIN_SAMPLES) {
+      return false;
+    }
+    if (!(var > 0.0)) {
+      return false;
+    }
+    double z = (reward - q) / Math.sqrt(var);
+
+    _up[id] += z - _delta;
+    _upMin[id] = Math.min(_upMin[id], _up[id]);
+    _down[id] += -z - _delta;
+    _downMin[id] = Math.min(_downMin[id], _down[id]);
+
+    if (_up[id] - _upMin[id] > _lambda || _down[id] - _downMin[id] > _lambda) {
+      _detections++;
+      reset(id);
+      return true;
+    }
+    return false;
+  }
+
+  public void reset(int id) {
+    _up[id] = 0.0;
+    _upMin[id] = 0.0;
+    _down[id] = 0.0;
+    _downMin[id] = 0.0;
+  }
+
+  public void resetAll() {
+    Arrays.fill(_up, 0.0);
+    Arrays.fill(_upMin, 0.0);
+    Arrays.fill(_down, 0.0);
+    Arrays.fill(_downMin, 0.0);
+  }
+
+  public int detections() {
+    return _detections;
+  }
+
+  /* Checkpoint section; see MiniMachine.writeState() */
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(_up.length);
+    out.writeInt(_detections);
+    for (int id = 0; id < _up.length; id++) {
+      out.writeDouble(_up[id]);
+      out.writeDouble(_upMin[id]);
+      out.writeDouble(_down[id]);
+      out.writeDouble(_downMin[id]);
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size != _up.length) {
+      throw new IOException(String.format("checkpoint has a detector over %d configurations, expected %d", size, _up.length));
+    }
+    _detections = in.readInt();
+    for (int id = 0; id < size; id++) {
+      _up[id] = in.readDouble();
+      _upMin[id] = in.readDouble();
+      _down[id] = in.readDouble();
+      _downMin[id] = in.readDouble();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/* Versioned binary checkpoints of a machine's learned state, so a restarted
+ * process can pick up where the last one died instead of paying for the
+ * sampling phase again.
+ *
+ * The machine serializes its state into a byte array on its own thread, in
+ * between steps, and hands it to save(). The file write happens on a
+ * background thread: the bytes go to <path>.tmp, are synced, and the temp file
+ * is renamed over <path>, so a crash mid-write leaves the previous checkpoint
+ * intact. If the writer falls behind, only the newest pending snapshot is
+ * written.
+ *
+ * Layout: MAGIC, VERSION, a fingerprint of the knob/policy setup, then the
+ * sections written by AeneasMachine.writeCheckpoint(). */
+public class Checkpoint {
+  public static final int MAGIC   = 0x53544b43; // "STKC"
+  public static final int VERSION = 7;
+
+  private final File _file;
+  private final File _tmpFile;
+
+  private final AtomicReference<byte[]> _pending = new AtomicReference<>();
+  private final AtomicLong _written = new AtomicLong();
+  private ExecutorService _writer = null;
+
+  private final Runnable _writeTask = new Runnable() {
+    @Override
+    public void run() {
+      byte[] snapshot = _pending.getAndSet(null);
+      if (snapshot == null) {
+        return;
+      }
+      try {
+        write(snapshot);
+        _written.incrementAndGet();
+      } catch (IOException e) {
+        System.err.format("STOKE: Unable to write checkpoint %s: %s\n", _file, e);
+      }
+    }
+  };
+
+  public Checkpoint(String path) {
+    _file = new File(path);
+    _tmpFile = new File(path + ".tmp");
+  }
+
+  /* Started on the first save, and again after a close() if the machine is
+   * restarted. */
+  private synchronized ExecutorService writer() {
+    if (_writer == null) {
+      _writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "aeneas-checkpoint");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return _writer;
+  }
+
+  public String path() {
+    return _file.getPath();
+  }
+
+  public boolean exists() {
+    return _file.exists();
+  }
+
+  /* Number of snapshots that made it to disk */
+  public long written() {
+    return _written.get();
+  }
+
+  /* Called on the machine thread; never blocks on I/O. */
+  public void save(byte[] snapshot) {
+    if (_pending.getAndSet(snapshot) == null) {
+      writer().execute(_writeTask);
+    }
+  }
+
+  /* Waits for any pending snapshot to reach disk */
+  public void flush() {
+    try {
+      writer().submit(_writeTask).get();
+    } catch (Exception e) {
+      System.err.format("STOKE: Unable to flush checkpoint %s: %s\n", _file, e);
+    }
+  }
+
+  /* Writes out the pending snapshot and stops the writer thread. The writer
+   * is a daemon, so anything still queued when the process exits is lost
+   * unless it is closed first. */
+  public synchronized void close() {
+    if (_writer == null) {
+      return;
+    }
+    flush();
+    _writer.shutdown();
+    _writer = null;
+  }
+
+  private void write(byte[] snapshot) throws IOException {
+    FileOutputStream fos = new FileOutputStream(_tmpFile);
+    try {
+      fos.write(snapshot);
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+    if (!_tmpFile.renameTo(_file)) {
+      throw new IOException("rename to " + _file + " failed");
+    }
+  }
+
+  /* Returns null if there is no checkpoint, or if it was written by an
+   * incompatible version or for a different knob/policy setup. */
+  public DataInputStream open(long fingerprint) {
+    if (!_file.exists()) {
+      return null;
+    }
+    try {
+      byte[] bytes = new byte[(int) _file.length()];
+      DataInputStream fin = new DataInputStream(new FileInputStream(_file));
+      try {
+        fin.readFully(bytes);
+      } finally {
+        fin.close();
+      }
+
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      int magic = in.readInt();
+      int version = in.readInt();
+      long saved = in.readLong();
+      if (magic != MAGIC || version != VERSION) {
+        System.err.format("STOKE: Ignoring checkpoint %s: bad magic/version %x/%d\n", _file, magic, version);
+        return null;
+      }
+      if (saved != fingerprint) {
+        System.err.format("STOKE: Ignoring checkpoint %s: written for different knobs\n", _file);
+        return null;
+      }
+      return in;
+    } catch (IOException e) {
+      System.err.format("STOKE: Ignoring checkpoint %s: %s\n", _file, e);
+      return null;
+    }
+  }
+
+  public static DataOutputStream header(ByteArrayOutputStream bytes, long fingerprint) throws IOException {
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(fingerprint);
+    return out;
+  }
+
+  /* 64-bit FNV-1a, used to fingerprint the machine setup */
+  public static long fingerprint(long hash, String s) {
+    if (hash == 0) {
+      hash = 0xcbf29ce484222325L;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      hash ^= s.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  public static void writeKnobVal(DataOutputStream out, KnobVal kv) throws IOException {
+    out.writeByte(kv.type().ordinal());
+    switch (kv.type()) {
+      case INTEGER:
+        out.writeInt(KnobValT.needInteger(kv));
+        break;
+      case DOUBLE:
+        out.writeDouble(KnobValT.needDouble(kv));
+        break;
+      case BOOLEAN:
+        out.writeBoolean(KnobValT.needBoolean(kv));
+        break;
+      case STRING:
+        out.writeUTF(KnobValT.needString(kv));
+        break;
+    }
+  }
+
+  public static KnobVal readKnobVal(DataInputStream in) throws IOException {
+    int type = in.readByte();
+    if (type < 0 || type >= KnobValType.values().length) {
+      throw new IOException("bad knob value type " + type);
+    }
+    switch (KnobValType.values()[type]) {
+      case INTEGER:
+        return KnobValT.haveInteger(in.readInt());
+      case DOUBLE:
+        return KnobValT.haveDouble(in.readDouble());
+      case BOOLEAN:
+        return KnobValT.haveBoolean(in.readBoolean());
+      default:
+        return KnobValT.haveString(in.readUTF());
+    }
+  }
+
+  public static void writeKnobVals(DataOutputStream out, KnobVal[] kvs) throws IOException {
+    out.writeInt(kvs.length);
+    for (int i = 0; i < kvs.length; i++) {
+      writeKnobVal(out, kvs[i]);
+    }
+  }
+
+  public static KnobVal[] readKnobVals(DataInputStream in) throws IOException {
+    KnobVal[] kvs = new KnobVal[in.readInt()];
+    for (int i = 0; i < kvs.length; i++) {
+      kvs[i] = readKnobVal(in);
+    }
+    return kvs;
+  }
+}
@@ -34,8 +34,6 @@ public class Configuration {
     UNORDERED,
   }; 
 
-  private static int idGen = 0;
-
   private int[] _positions;
   private Knob[] _knobs;
 
@@ -51,7 +49,8 @@ public class Configuration {
   private double rewardVariance = 0;
   private int k = 0;
 
-  public Configuration(int[] positions, Knob[] knobs, Recording[] recordings) {
+  public Configuration(int id, int[] positions, Knob[] knobs, Recording[] recordings) {
+    _id = id;
     _positions = positions;
     _knobs = knobs;
     _recordings = recordings;
@@ -64,17 +63,10 @@ public class Configuration {
           _recordings[i].defaultKnobVal());
       _numOns.put(_recordings[i].name(), 0);
     }
-
-    _id = Configuration.idGen;
-    Configuration.idGen++;
   }
 
   public int getId() { return _id; }
 
-  public static void resetIdGen() {
-    Configuration.idGen = 0;
-  }
-
   public void select() {
     for (int i = 0; i < _positions.length; i++) {
       _knobs[i].setPos(_positions[i]);
@@ -87,6 +79,10 @@ public class Configuration {
 
   public int getPosition(int i) { return _positions[i]; }
 
+  /* The knob's settings were replaced around this configuration's own; see
+   * ConfigurationSpace.replaceSettings() */
+  void setPosition(int i, int pos) { _positions[i] = pos; }
+
   public Knob getKnob(int i) { return _knobs[i]; }
 
   public int getNumPositions() { return _positions.length; }
@@ -178,12 +174,23 @@ public class Configuration {
 
   public static Relation compareConfigurations(Configuration c1, Configuration c2) {
     if (c1 == c2) return Relation.EQUAL;
+    return comparePositions(c1._positions, c2._positions, null);
+  }
+
+  /* The same order over raw knob positions, so configurations need not be
+   * materialized; knob i counts downwards where reversed[i] is set (null
+   * for none) */
+  public static Relation comparePositions(int[] p1, int[] p2, boolean[] reversed) {
     boolean allAbove = true;
     boolean allBelow = true;
-    for (int i = 0; i < c1._knobs.length; i++) {
-      if (c1._positions[i] < c2._positions[i]) {
+    for (int i = 0; i < p1.length; i++) {
+      int d = p1[i] - p2[i];
+      if (reversed != null && reversed[i]) {
+        d = -d;
+      }
+      if (d < 0) {
         allAbove = false;
-      } else if (c1._positions[i] > c2._positions[i]) {
+      } else if (d > 0) {
         allBelow = false;
       }
     }
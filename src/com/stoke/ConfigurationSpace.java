@@ -0,0 +1,434 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+
+/* The cartesian product of a set of Knobs, kept virtual: a configuration is
+ * its mixed-radix index (knob 0 is the least significant digit, matching the
+ * order createConfigsFromKnobs always enumerated in) and its positions are
+ * decoded on demand. Configuration objects, with their records, are only
+ * created for configurations that actually get visited.
+ *
+ * The digits of an id are slots rather than positions. A knob's slots are
+ * its positions until replaceSettings() swaps some of its settings in place:
+ * the settings that stay keep their slots, wherever they sort to, and the new
+ * ones take over the freed slots, so every id whose settings did not change
+ * still names the same configuration. idAt() walks the space in position
+ * order whatever the slots are. */
+public class ConfigurationSpace {
+
+  protected final Knob[]      _knobs;
+  protected final Recording[] _recordings;
+
+  protected final int[] _radix;
+  protected final int[] _stride;
+  protected final int   _size;
+
+  /* Per knob, slot -> position and position -> slot; null while a knob's
+   * slots are its positions */
+  protected final int[][] _slotPos;
+  protected final int[][] _posSlot;
+
+  /* Materialized configurations by id: a plain array for spaces of up to
+   * DENSE_LIMIT configurations, above that an open-addressing table keyed on
+   * the id (linear probing, power-of-two capacity, at most half full), so
+   * that get() on a configuration that exists neither boxes nor allocates. */
+  public static final int DENSE_LIMIT = 1 << 10;
+
+  protected final Configuration[] _dense;
+  protected int[]           _keys = null;
+  protected Configuration[] _values = null;
+  protected int _numMaterialized = 0;
+
+  /* Recordings every configuration starts out with */
+  protected final Map<String, KnobVal> _initialRecordings = new LinkedHashMap<>();
+
+  public ConfigurationSpace(Knob[] knobs, Recording[] recordings) {
+    _knobs = knobs;
+    _recordings = recordings;
+    _radix = new int[knobs.length];
+    _stride = new int[knobs.length];
+    _slotPos = new int[knobs.length][];
+    _posSlot = new int[knobs.length][];
+
+    long size = 1;
+    for (int i = 0; i < knobs.length; i++) {
+      _radix[i] = knobs[i].numPos();
+      _stride[i] = (int) size;
+      size *= _radix[i];
+      if (size > Integer.MAX_VALUE) {
+        throw new RuntimeException("Error: Configuration space over " + Integer.MAX_VALUE + " configurations");
+      }
+    }
+    _size = (int) size;
+
+    if (_size <= DENSE_LIMIT) {
+      _dense = new Configuration[_size];
+    } else {
+      _dense = null;
+      _keys = new int[16];
+      _values = new Configuration[16];
+    }
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  public int numKnobs() {
+    return _knobs.length;
+  }
+
+  public Knob getKnob(int i) {
+    return _knobs[i];
+  }
+
+  public Knob[] getKnobs() {
+    return _knobs;
+  }
+
+  public int slot(int id, int knob) {
+    return (id / _stride[knob]) % _radix[knob];
+  }
+
+  public int position(int id, int knob) {
+    int slot = slot(id, knob);
+    return (_slotPos[knob] == null) ? slot : _slotPos[knob][slot];
+  }
+
+  public void positions(int id, int[] out) {
+    for (int i = 0; i < _knobs.length; i++) {
+      out[i] = position(id, i);
+    }
+  }
+
+  public int encode(int[] positions) {
+    int id = 0;
+    for (int i = 0; i < _knobs.length; i++) {
+      int slot = (_posSlot[i] == null) ? positions[i] : _posSlot[i][positions[i]];
+      id += slot * _stride[i];
+    }
+    return id;
+  }
+
+  /* The rank-th configuration in position order (knob 0 the least
+   * significant), i.e., the id it would have had if no settings had been
+   * replaced in place */
+  public int idAt(int rank) {
+    int id = 0;
+    for (int i = 0; i < _knobs.length; i++) {
+      int pos = (rank / _stride[i]) % _radix[i];
+      int slot = (_posSlot[i] == null) ? pos : _posSlot[i][pos];
+      id += slot * _stride[i];
+    }
+    return id;
+  }
+
+  /* The ids whose slot on knob is the given one: j-th of them, for
+   * 0 <= j < size() / radix */
+  public int idWithSlot(int knob, int slot, int j) {
+    int low = j % _stride[knob];
+    int high = j / _stride[knob];
+    return (high * _stride[knob] * _radix[knob]) + (slot * _stride[knob]) + low;
+  }
+
+  public int numWithSlot(int knob) {
+    return _size / _radix[knob];
+  }
+
+  public KnobVal getSetting(int id, int knob) {
+    return _knobs[knob].getSettingAtPos(position(id, knob));
+  }
+
+  public KnobVal getSetting(int id, Knob knob) {
+    for (int i = 0; i < _knobs.length; i++) {
+      if (_knobs[i].name().equals(knob.name())) {
+        return getSetting(id, i);
+      }
+    }
+    return null;
+  }
+
+  /* Two spaces with the same fingerprint number their configurations the
+   * same way (see SharedConfigurationStats) */
+  public long fingerprint() {
+    long fp = 0;
+    for (int i = 0; i < _knobs.length; i++) {
+      fp = Checkpoint.fingerprint(fp, _knobs[i].name());
+      for (int pos = 0; pos < _radix[i]; pos++) {
+        fp = Checkpoint.fingerprint(fp, _knobs[i].getSettingAtPos(pos).toString());
+      }
+    }
+    return fp;
+  }
+
+  public boolean hasInferredKnob() {
+    for (int i = 0; i < _knobs.length; i++) {
+      if (_knobs[i] instanceof InferredKnob) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void setInitialRecording(String name, KnobVal val) {
+    _initialRecordings.put(name, val);
+  }
+
+  /* The configuration object for id, created the first time it is asked for */
+  public Configuration get(int id) {
+    if (_dense != null) {
+      Configuration c = _dense[id];
+      if (c == null) {
+        c = create(id);
+        _dense[id] = c;
+        _numMaterialized++;
+      }
+      return c;
+    }
+
+    int i = find(id);
+    if (_values[i] != null) {
+      return _values[i];
+    }
+    Configuration c = create(id);
+    if (2 * (_numMaterialized + 1) > _keys.length) {
+      grow();
+      i = find(id);
+    }
+    _keys[i] = id;
+    _values[i] = c;
+    _numMaterialized++;
+    return c;
+  }
+
+  public boolean isMaterialized(int id) {
+    return (_dense != null) ? _dense[id] != null : _values[find(id)] != null;
+  }
+
+  public int numMaterialized() {
+    return _numMaterialized;
+  }
+
+  private static int hash(int id) {
+    int h = id * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  /* The table index holding id, or the empty one where it would go */
+  private int find(int id) {
+    int mask = _keys.length - 1;
+    int i = hash(id) & mask;
+    while (_values[i] != null && _keys[i] != id) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void grow() {
+    int[] keys = _keys;
+    Configuration[] values = _values;
+    _keys = new int[keys.length * 2];
+    _values = new Configuration[values.length * 2];
+    for (int i = 0; i < keys.length; i++) {
+      if (values[i] != null) {
+        int j = find(keys[i]);
+        _keys[j] = keys[i];
+        _values[j] = values[i];
+      }
+    }
+  }
+
+  /* Empties table index i, shifting back the entries of its probe run that
+   * would no longer be found */
+  private void removeAt(int i) {
+    int mask = _keys.length - 1;
+    _values[i] = null;
+    _numMaterialized--;
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (_values[j] == null) {
+        return;
+      }
+      int home = hash(_keys[j]) & mask;
+      boolean reachable = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+      if (!reachable) {
+        _keys[i] = _keys[j];
+        _values[i] = _values[j];
+        _values[j] = null;
+        i = j;
+      }
+    }
+  }
+
+  protected Configuration create(int id) {
+    int[] positions = new int[_knobs.length];
+    positions(id, positions);
+    Configuration c = new Configuration(id, positions, _knobs, _recordings);
+    for (Map.Entry<String, KnobVal> e : _initialRecordings.entrySet()) {
+      c.updateRecording(e.getKey(), e.getValue());
+    }
+    return c;
+  }
+
+  /* The knob's settings have been changed in place (same count) from
+   * oldSettings, by position: a setting still there keeps its slot, new ones
+   * take the freed slots. Configurations on a freed slot are dropped, the
+   * other materialized ones follow their settings to the new positions.
+   * Returns the freed (now reused) slots, the only ids that changed. */
+  public int[] replaceSettings(int knob, KnobVal[] oldSettings) {
+    Knob k = _knobs[knob];
+    int radix = _radix[knob];
+    if (k.numPos() != radix || oldSettings.length != radix) {
+      throw new RuntimeException("Error: Knob " + k.name() + " changed its number of settings");
+    }
+
+    int[] posSlot = new int[radix];
+    Arrays.fill(posSlot, -1);
+    boolean[] kept = new boolean[radix];
+    int numKept = 0;
+    for (int p = 0; p < radix; p++) {
+      String old = oldSettings[p].toString();
+      for (int q = 0; q < radix; q++) {
+        if (posSlot[q] < 0 && k.getSettingAtPos(q).toString().equals(old)) {
+          int slot = (_posSlot[knob] == null) ? p : _posSlot[knob][p];
+          posSlot[q] = slot;
+          kept[slot] = true;
+          numKept++;
+          break;
+        }
+      }
+    }
+
+    int[] freed = new int[radix - numKept];
+    int f = 0;
+    for (int slot = 0; slot < radix; slot++) {
+      if (!kept[slot]) {
+        freed[f++] = slot;
+      }
+    }
+    f = 0;
+    int[] slotPos = new int[radix];
+    boolean identity = true;
+    for (int q = 0; q < radix; q++) {
+      if (posSlot[q] < 0) {
+        posSlot[q] = freed[f++];
+      }
+      slotPos[posSlot[q]] = q;
+      identity &= (posSlot[q] == q);
+    }
+    _posSlot[knob] = identity ? null : posSlot;
+    _slotPos[knob] = identity ? null : slotPos;
+
+    if (_dense != null) {
+      for (int id = 0; id < _size; id++) {
+        if (_dense[id] != null) {
+          int slot = slot(id, knob);
+          if (!kept[slot]) {
+            _dense[id] = null;
+            _numMaterialized--;
+          } else {
+            _dense[id].setPosition(knob, slotPos[slot]);
+          }
+        }
+      }
+    } else {
+      // A removal may shift another entry into i, so i is looked at again
+      int i = 0;
+      while (i < _keys.length) {
+        if (_values[i] != null) {
+          int slot = slot(_keys[i], knob);
+          if (!kept[slot]) {
+            removeAt(i);
+            continue;
+          }
+          _values[i].setPosition(knob, slotPos[slot]);
+        }
+        i++;
+      }
+    }
+    return freed;
+  }
+
+  /* Checkpoint section: the slot layout, so that ids mean the same after a
+   * restore; see AeneasMachine.writeCheckpoint() */
+  public void writeLayout(DataOutputStream out) throws IOException {
+    out.writeInt(_knobs.length);
+    for (int i = 0; i < _knobs.length; i++) {
+      out.writeBoolean(_posSlot[i] != null);
+      if (_posSlot[i] != null) {
+        for (int pos = 0; pos < _radix[i]; pos++) {
+          out.writeInt(_posSlot[i][pos]);
+        }
+      }
+    }
+  }
+
+  /* Only on a space that has not materialized anything yet */
+  public void readLayout(DataInputStream in) throws IOException {
+    if (in.readInt() != _knobs.length) {
+      throw new IOException("slot layout for a different number of knobs");
+    }
+    for (int i = 0; i < _knobs.length; i++) {
+      if (!in.readBoolean()) {
+        _posSlot[i] = null;
+        _slotPos[i] = null;
+        continue;
+      }
+      int[] posSlot = new int[_radix[i]];
+      int[] slotPos = new int[_radix[i]];
+      Arrays.fill(slotPos, -1);
+      for (int pos = 0; pos < _radix[i]; pos++) {
+        int slot = in.readInt();
+        if (slot < 0 || slot >= _radix[i] || slotPos[slot] >= 0) {
+          throw new IOException("bad slot " + slot + " for knob " + _knobs[i].name());
+        }
+        posSlot[pos] = slot;
+        slotPos[slot] = pos;
+      }
+      _posSlot[i] = posSlot;
+      _slotPos[i] = slotPos;
+    }
+  }
+
+  /* Only for the small, legacy helpers that sort whole configuration sets */
+  public Configuration[] materializeAll() {
+    Configuration[] configs = new Configuration[_size];
+    for (int i = 0; i < _size; i++) {
+      configs[i] = get(idAt(i));
+    }
+    return configs;
+  }
+
+  /* Same text as Configuration.toString(), without creating the configuration */
+  public String describe(int id) {
+    String s = String.format("%d - Knobs: {", id);
+    for (int i = 0; i < _knobs.length; i++) {
+      s += String.format("%s:%s ", _knobs[i].name(), getSetting(id, i));
+    }
+    s += "} ";
+    return s;
+  }
+}
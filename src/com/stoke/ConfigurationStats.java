@@ -0,0 +1,385 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.util.Arrays;
+
+/* The running Q functions of a mini bandit, stored as primitive arrays and
+ * addressed directly by configuration id (ids are dense, 0..n-1, within one
+ * configuration set). Every policy reads the bandit through this API, so a
+ * learn step is a handful of array writes and a policy scan walks contiguous
+ * memory instead of boxing through hash maps. */
+public class ConfigurationStats {
+
+  protected final int      _size;
+
+  protected final double[] _leftRewards;
+  protected final double[] _lastRewards;
+  protected final double[] _rightRewards;
+  protected final int[]    _numOns;
+  protected final int[]    _restoredNumOns;
+
+  /* newRound() only bumps _round; a configuration's _restoredNumOns is
+   * brought up to date on its next write (see touch()), so a round costs
+   * O(1) rather than a copy of every count. */
+  protected final int[]    _rounds;
+  protected int _round = 0;
+
+  /* Spread of the rewards learned here (Welford): sum of squared deviations
+   * from the running Q, and how many rewards it covers. Kept apart from
+   * numOn because restored and shared pulls carry a mean but no spread. The
+   * totals pool the spread over all configurations (_m2Dof is the sum of
+   * their n - 1). */
+  protected final double[] _m2;
+  protected final int[]    _m2Counts;
+  protected double _m2Total = 0.0;
+  protected int    _m2Dof = 0;
+
+  /* The observation fed to the last learn() */
+  protected int    _lastId = -1;
+  protected double _lastReward = 0.0;
+
+  /* Exploitation target (lowest |Q|), kept up to date on every write so that
+   * argMaxSelect does not have to scan. */
+  protected final BestArmIndex _best;
+
+  /* Candidates: configurations the policies may still select. Sampling
+   * policies that rule configurations out (SAMPLE_ELIMINATE) remove them;
+   * the rest are kept densely in _candidates (order is not meaningful) so a
+   * uniform draw is one index, and non-candidates never win bestId(). */
+  protected final int[] _candidates;
+  protected final int[] _candidatePos;
+  protected int _numCandidates;
+
+  /* Largest freshNumOn over all configurations; pulls only ever grow, so this
+   * is maintained incrementally as well. */
+  protected int _maxFreshNumOn = 0;
+
+  public ConfigurationStats(int size) {
+    _size = size;
+    _leftRewards = new double[size];
+    _lastRewards = new double[size];
+    _rightRewards = new double[size];
+    _numOns = new int[size];
+    _restoredNumOns = new int[size];
+    _rounds = new int[size];
+    _m2 = new double[size];
+    _m2Counts = new int[size];
+    _best = new BestArmIndex(size);
+    _candidates = new int[size];
+    _candidatePos = new int[size];
+    resetCandidates();
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  public double qvalue(int id) {
+    return _leftRewards[id];
+  }
+
+  /* Q value before the most recent update of this configuration */
+  public double lastQvalue(int id) {
+    return _lastRewards[id];
+  }
+
+  public double rightReward(int id) {
+    return _rightRewards[id];
+  }
+
+  public int numOn(int id) {
+    return _numOns[id];
+  }
+
+  public int restoredNumOn(int id) {
+    return (_rounds[id] == _round) ? _restoredNumOns[id] : _numOns[id];
+  }
+
+  /* Pulls made since the configuration was (re)created, i.e., not carried
+   * over from a previous round through restore(). */
+  public int freshNumOn(int id) {
+    return (_rounds[id] == _round) ? _numOns[id] - _restoredNumOns[id] : 0;
+  }
+
+  /* Before _numOns[id] changes: counts from before newRound() become
+   * restored ones */
+  protected void touch(int id) {
+    if (_rounds[id] != _round) {
+      _restoredNumOns[id] = _numOns[id];
+      _rounds[id] = _round;
+    }
+  }
+
+  public boolean isCandidate(int id) {
+    return _candidatePos[id] >= 0;
+  }
+
+  public int numCandidates() {
+    return _numCandidates;
+  }
+
+  /* The k-th candidate, 0 <= k < numCandidates(); the identity until a
+   * configuration is eliminated */
+  public int candidate(int k) {
+    return _candidates[k];
+  }
+
+  public void eliminate(int id) {
+    int pos = _candidatePos[id];
+    if (pos < 0 || _numCandidates == 1) {
+      return;
+    }
+    int last = _candidates[--_numCandidates];
+    _candidates[pos] = last;
+    _candidatePos[last] = pos;
+    _candidatePos[id] = -1;
+    _best.update(id, score(id));
+  }
+
+  public void resetCandidates() {
+    _numCandidates = _size;
+    for (int id = 0; id < _size; id++) {
+      boolean wasOut = _candidatePos[id] < 0;
+      _candidates[id] = id;
+      _candidatePos[id] = id;
+      if (wasOut) {
+        _best.update(id, score(id));
+      }
+    }
+  }
+
+  /* What bestId() minimizes */
+  protected double score(int id) {
+    return (_candidatePos[id] >= 0) ? Math.abs(_leftRewards[id]) : Double.MAX_VALUE;
+  }
+
+  /* Id of the configuration with the lowest |Q|, ties to the lowest id */
+  public int bestId() {
+    return _best.best();
+  }
+
+  /* Sample variance of the rewards learned for this configuration, NaN
+   * until it has two of them */
+  public double variance(int id) {
+    int n = _m2Counts[id];
+    return (n > 1) ? _m2[id] / (n - 1) : Double.NaN;
+  }
+
+  public double m2(int id) {
+    return _m2[id];
+  }
+
+  public int m2Count(int id) {
+    return _m2Counts[id];
+  }
+
+  /* Within-configuration variance pooled over all configurations, NaN until
+   * some configuration has two rewards */
+  public double pooledVariance() {
+    return (_m2Dof > 0) ? _m2Total / _m2Dof : Double.NaN;
+  }
+
+  public int maxFreshNumOn() {
+    return _maxFreshNumOn;
+  }
+
+  public int lastId() {
+    return _lastId;
+  }
+
+  public double lastReward() {
+    return _lastReward;
+  }
+
+  /* Sample average update: Q(a) <- Q(a) + 1/n * (r - Q(a)) */
+  public void learn(int id, double leftReward, double rightReward) {
+    touch(id);
+    int numOn = _numOns[id] + 1;
+    double qa = _leftRewards[id];
+
+    _numOns[id] = numOn;
+    _lastRewards[id] = qa;
+    double alpha = 1.0 / (double) numOn;
+    double q = qa + (alpha * (leftReward - qa));
+    _leftRewards[id] = q;
+    _rightRewards[id] += rightReward;
+
+    double dm2 = (leftReward - qa) * (leftReward - q);
+    _m2[id] += dm2;
+    _m2Total += dm2;
+    if (_m2Counts[id]++ > 0) {
+      _m2Dof++;
+    }
+
+    _best.update(id, score(id));
+
+    if (freshNumOn(id) > _maxFreshNumOn) {
+      _maxFreshNumOn = freshNumOn(id);
+    }
+
+    _lastId = id;
+    _lastReward = leftReward;
+  }
+
+  /* Carry state over from an earlier configuration set */
+  public void restore(int id, double q, int numOn) {
+    int oldFresh = freshNumOn(id);
+    touch(id);
+    _leftRewards[id] = q;
+    _lastRewards[id] = q;
+    _numOns[id] = numOn;
+    _restoredNumOns[id] = numOn;
+    _best.update(id, score(id));
+    freshNumOnChanged(id, oldFresh);
+    clearSpread(id);
+  }
+
+  /* A new round over the same configurations (see
+   * MiniMachine.beginRound()): what was learned so far counts as restored,
+   * as if every configuration had gone through restore(), but the spread
+   * stays since the configurations themselves did not change. Every
+   * configuration is a candidate again. */
+  public void newRound() {
+    _round++;
+    _maxFreshNumOn = 0;
+    if (_numCandidates < _size) {
+      resetCandidates();
+    }
+  }
+
+  /* Overwrite the estimate, e.g., from an offline profile or counts merged
+   * from other processes. The spread learned here still applies. */
+  public void set(int id, double q, int numOn) {
+    int oldFresh = freshNumOn(id);
+    touch(id);
+    _leftRewards[id] = q;
+    _numOns[id] = numOn;
+    _best.update(id, score(id));
+    freshNumOnChanged(id, oldFresh);
+  }
+
+  /* Drop everything learned for a configuration (e.g., after its rewards
+   * have changed), so that it is sampled as if new */
+  public void forget(int id) {
+    int oldFresh = freshNumOn(id);
+    touch(id);
+    _leftRewards[id] = 0.0;
+    _lastRewards[id] = 0.0;
+    _rightRewards[id] = 0.0;
+    _numOns[id] = 0;
+    _restoredNumOns[id] = 0;
+    _best.update(id, score(id));
+    freshNumOnChanged(id, oldFresh);
+    clearSpread(id);
+  }
+
+  protected void clearSpread(int id) {
+    _m2Total -= _m2[id];
+    _m2Dof -= Math.max(_m2Counts[id] - 1, 0);
+    _m2[id] = 0.0;
+    _m2Counts[id] = 0;
+  }
+
+  /* Counts can only shrink through restore()/set(), which happen between
+   * rounds; rescan only if the current maximum may have been lowered. */
+  protected void freshNumOnChanged(int id, int oldFresh) {
+    int fresh = freshNumOn(id);
+    if (fresh >= _maxFreshNumOn) {
+      _maxFreshNumOn = fresh;
+    } else if (oldFresh == _maxFreshNumOn) {
+      recomputeMaxFreshNumOn();
+    }
+  }
+
+  protected void recomputeMaxFreshNumOn() {
+    _maxFreshNumOn = 0;
+    for (int i = 0; i < _size; i++) {
+      if (freshNumOn(i) > _maxFreshNumOn) {
+        _maxFreshNumOn = freshNumOn(i);
+      }
+    }
+  }
+
+  /* Checkpoint section; see Checkpoint */
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(_size);
+    for (int id = 0; id < _size; id++) {
+      out.writeDouble(_leftRewards[id]);
+      out.writeDouble(_lastRewards[id]);
+      out.writeDouble(_rightRewards[id]);
+      out.writeInt(_numOns[id]);
+      out.writeInt(restoredNumOn(id));
+      out.writeDouble(_m2[id]);
+      out.writeInt(_m2Counts[id]);
+    }
+    out.writeInt(_lastId);
+    out.writeDouble(_lastReward);
+    out.writeInt(_numCandidates);
+    for (int k = 0; k < _numCandidates; k++) {
+      out.writeInt(_candidates[k]);
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size != _size) {
+      throw new IOException(String.format("checkpoint has %d configurations, expected %d", size, _size));
+    }
+    for (int id = 0; id < _size; id++) {
+      _leftRewards[id] = in.readDouble();
+      _lastRewards[id] = in.readDouble();
+      _rightRewards[id] = in.readDouble();
+      _numOns[id] = in.readInt();
+      _restoredNumOns[id] = in.readInt();
+      _rounds[id] = _round;
+      _m2[id] = in.readDouble();
+      _m2Counts[id] = in.readInt();
+    }
+    _m2Total = 0.0;
+    _m2Dof = 0;
+    for (int id = 0; id < _size; id++) {
+      _m2Total += _m2[id];
+      _m2Dof += Math.max(_m2Counts[id] - 1, 0);
+    }
+    _lastId = in.readInt();
+    _lastReward = in.readDouble();
+
+    int numCandidates = in.readInt();
+    if (numCandidates < 1 || numCandidates > _size) {
+      throw new IOException("bad candidate count " + numCandidates);
+    }
+    Arrays.fill(_candidatePos, -1);
+    for (int k = 0; k < numCandidates; k++) {
+      int id = in.readInt();
+      if (id < 0 || id >= _size || _candidatePos[id] >= 0) {
+        throw new IOException("bad candidate " + id);
+      }
+      _candidates[k] = id;
+      _candidatePos[id] = k;
+    }
+    _numCandidates = numCandidates;
+    for (int id = 0; id < _size; id++) {
+      _best.update(id, score(id));
+    }
+    recomputeMaxFreshNumOn();
+  }
+}
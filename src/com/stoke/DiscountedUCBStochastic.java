@@ -0,0 +1,161 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.lang.Math;
+
+import com.stoke.util.*;
+
+/* Discounted UCB (Garivier and Moulines) for rewards that drift, e.g., with
+ * temperature, signal strength or battery level. Every reward is weighted by
+ * gamma^age, so old observations fade instead of being thrown away by a reset:
+ *
+ *   N(a) = sum gamma^(t-s) [a_s = a]     S(a) = sum gamma^(t-s) r_s [a_s = a]
+ *   index(a) = -(|S(a)/N(a)| - L) / (H - L) + 2 sqrt(XI log n / N(a))
+ *
+ * with n = sum_a N(a), and L and H the smallest and largest |reward| seen,
+ * so the exploitation term is in [-1, 0] whatever the reward's units. A configuration that has not been
+ * pulled for a while loses weight in N(a), its bonus grows, and it is tried
+ * again; with discount gamma the memory is about 1 / (1 - gamma) steps.
+ *
+ * Updates are O(1): each configuration keeps N and S as of its last pull and
+ * the tick of that pull, and the decay since then is applied when the index
+ * is read (S/N needs none, the factors cancel). n has a closed form. The
+ * STOKE_UCB_DISCOUNT property sets gamma. */
+public class DiscountedUCBStochastic extends StochasticPolicy {
+
+  public static final double DISCOUNT = 0.995;
+  protected static final double XI = 0.6;
+
+  protected double _gamma = DISCOUNT;
+  protected double _logGamma;
+
+  protected final double[] _counts;
+  protected final double[] _sums;
+  protected final long[]   _ticks;
+  protected long   _tick = 0;
+  protected double _low = Double.MAX_VALUE;
+  protected double _high = 0.0;
+
+  public DiscountedUCBStochastic(MiniMachine machine, ConfigurationSpace space) {
+    super(machine, space);
+    Double gamma = (Double) AndroidUtil.getProperty("STOKE_UCB_DISCOUNT");
+    if (gamma != null) {
+      _gamma = gamma;
+    }
+    _logGamma = Math.log(_gamma);
+
+    int n = _stats.size();
+    _counts = new double[n];
+    _sums = new double[n];
+    _ticks = new long[n];
+  }
+
+  public boolean shouldRandomize() {
+    return true;
+  }
+
+  public void learn() { }
+
+  @Override
+  public void observe(int id, double reward) {
+    _tick++;
+    double decay = Math.exp((_tick - _ticks[id]) * _logGamma);
+    _counts[id] = (_counts[id] * decay) + 1.0;
+    _sums[id] = (_sums[id] * decay) + reward;
+    _ticks[id] = _tick;
+    _low = Math.min(_low, Math.abs(reward));
+    _high = Math.max(_high, Math.abs(reward));
+  }
+
+  @Override
+  public void forget(int id) {
+    _counts[id] = 0.0;
+    _sums[id] = 0.0;
+    _ticks[id] = _tick;
+  }
+
+  @Override
+  public void reset() {
+    _low = Double.MAX_VALUE;
+    _high = 0.0;
+  }
+
+  /* Discounted number of pulls over all configurations */
+  protected double total() {
+    if (_gamma >= 1.0) {
+      return _tick;
+    }
+    return (1.0 - Math.exp(_tick * _logGamma)) / (1.0 - _gamma);
+  }
+
+  public Configuration stochasticSelect(int step) {
+    double logN = Math.log(Math.max(total(), 1.0));
+    double low = (_high > _low) ? _low : 0.0;
+    double range = (_high > _low) ? _high - _low : Math.max(_high, 1.0);
+    double bestIndex = -Double.MAX_VALUE;
+    int bestI = 0;
+
+    for (int i = 0; i < _counts.length; i++) {
+      if (!_stats.isCandidate(i)) {
+        continue;
+      }
+      if (_counts[i] == 0.0) {
+        return _space.get(i);
+      }
+      double n = _counts[i] * Math.exp((_tick - _ticks[i]) * _logGamma);
+      double index = (-(Math.abs(_sums[i] / _counts[i]) - low) / range) + (2.0 * Math.sqrt((XI * logN) / n));
+      if (index > bestIndex) {
+        bestIndex = index;
+        bestI = i;
+      }
+    }
+    return _space.get(bestI);
+  }
+
+  public StochasticPolicyType type() {
+    return StochasticPolicyType.UCB_DISCOUNTED;
+  }
+
+  @Override
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeLong(_tick);
+    out.writeDouble(_low);
+    out.writeDouble(_high);
+    for (int i = 0; i < _counts.length; i++) {
+      out.writeDouble(_counts[i]);
+      out.writeDouble(_sums[i]);
+      out.writeLong(_ticks[i]);
+    }
+  }
+
+  @Override
+  public void readState(DataInputStream in) throws IOException {
+    _tick = in.readLong();
+    _low = in.readDouble();
+    _high = in.readDouble();
+    for (int i = 0; i < _counts.length; i++) {
+      _counts[i] = in.readDouble();
+      _sums[i] = in.readDouble();
+      _ticks[i] = in.readLong();
+    }
+  }
+}
@@ -27,8 +27,8 @@ public class EpsilonGreedyStochastic extends StochasticPolicy {
   protected double _epsilon;
   protected Random _random = new Random();
 
-  public EpsilonGreedyStochastic(MiniMachine bandit, Configuration[] configurations, double epsilon) {
-    super(bandit, configurations);
+  public EpsilonGreedyStochastic(MiniMachine bandit, ConfigurationSpace space, double epsilon) {
+    super(bandit, space);
     _epsilon = epsilon;
   }
 
@@ -37,11 +37,16 @@ public class EpsilonGreedyStochastic extends StochasticPolicy {
   }
 
   public Configuration stochasticSelect(int step) {
-    return _configurations[_random.nextInt(_configurations.length)];
+    return _space.get(_stats.candidate(_random.nextInt(_stats.numCandidates())));
   } 
 
   public void learn() { }
 
+  @Override
+  public void setSeed(long seed) {
+    _random.setSeed(seed);
+  }
+
   public StochasticPolicyType type() {
     return StochasticPolicyType.EPSILON_GREEDY_0;
   }
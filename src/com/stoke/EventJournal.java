@@ -0,0 +1,394 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.util.*;
+
+import java.io.*;
+
+/* A binary journal of the events stoke.log records as text (ETask, ECycle,
+ * run and round markers, configuration dumps), for offline analysis without
+ * regex-parsing the log.
+ *
+ * File: MAGIC, VERSION, then records of
+ *
+ *   int length (of what follows), byte type, long time (ms), payload
+ *
+ * Payloads are fixed per type (see the write methods), so records are written
+ * straight into the buffered stream without building them first; the length
+ * prefix lets a reader skip record types it does not know.
+ *
+ * The journal is off unless opened, through open() or the STOKE_JOURNAL
+ * property, and every write method is a no-op while it is off. */
+public class EventJournal {
+  public static final int MAGIC   = 0x53544b4a; // "STKJ"
+  public static final int VERSION = 1;
+
+  public static final byte TASK        = 1;
+  public static final byte CYCLE       = 2;
+  public static final byte RUN_START   = 3;
+  public static final byte RUN_END     = 4;
+  public static final byte ROUND_START = 5;
+  public static final byte ROUND_END   = 6;
+  public static final byte CONFIG      = 7;
+
+  private static final int HEADER = 1 + 8;
+
+  private static DataOutputStream _out = null;
+
+  static {
+    String path = (String) AndroidUtil.getProperty("STOKE_JOURNAL");
+    if (path != null) {
+      open(path);
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread("stoke-journal-flush") {
+      @Override
+      public void run() {
+        close();
+      }
+    });
+  }
+
+  public static synchronized void open(String path) {
+    close();
+    try {
+      _out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+      _out.writeInt(MAGIC);
+      _out.writeInt(VERSION);
+    } catch (IOException e) {
+      System.err.format("STOKE: Unable to open journal %s: %s\n", path, e);
+      _out = null;
+    }
+  }
+
+  public static synchronized boolean isOpen() {
+    return _out != null;
+  }
+
+  public static synchronized void flush() {
+    if (_out == null) {
+      return;
+    }
+    try {
+      _out.flush();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  public static synchronized void close() {
+    if (_out == null) {
+      return;
+    }
+    try {
+      _out.close();
+    } catch (IOException e) {
+      System.err.format("STOKE: Unable to close journal: %s\n", e);
+    }
+    _out = null;
+  }
+
+  /* A journal that cannot be written is dropped, not retried every task */
+  private static void fail(IOException e) {
+    System.err.format("STOKE: Disabling journal: %s\n", e);
+    try {
+      _out.close();
+    } catch (IOException ignored) {
+    }
+    _out = null;
+  }
+
+  private static void header(int payload, byte type) throws IOException {
+    _out.writeInt(HEADER + payload);
+    _out.writeByte(type);
+    _out.writeLong(System.currentTimeMillis());
+  }
+
+  /* ETask: one learned task */
+  public static synchronized void task(int totalStep, int step, int configId,
+      double energy, double reward, double raw, long ms, double totalReward) {
+    if (_out == null) {
+      return;
+    }
+    try {
+      header(4 + 4 + 4 + 8 + 8 + 8 + 8 + 8, TASK);
+      _out.writeInt(totalStep);
+      _out.writeInt(step);
+      _out.writeInt(configId);
+      _out.writeDouble(energy);
+      _out.writeDouble(reward);
+      _out.writeDouble(raw);
+      _out.writeLong(ms);
+      _out.writeDouble(totalReward);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /* ECycle: end of an offline-collection cycle */
+  public static synchronized void cycle(int configId, double energy, double power) {
+    if (_out == null) {
+      return;
+    }
+    try {
+      header(4 + 8 + 8, CYCLE);
+      _out.writeInt(configId);
+      _out.writeDouble(energy);
+      _out.writeDouble(power);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  public static synchronized void runStart(int run) {
+    marker(RUN_START, run, -1, 0);
+  }
+
+  public static synchronized void runEnd(int run, long ms) {
+    marker(RUN_END, run, -1, ms);
+  }
+
+  public static synchronized void roundStart(int round) {
+    marker(ROUND_START, round, -1, 0);
+  }
+
+  /* winId is -1 when the round ended without a winner (widening) */
+  public static synchronized void roundEnd(int round, int winId) {
+    marker(ROUND_END, round, winId, 0);
+  }
+
+  private static void marker(byte type, int n, int configId, long ms) {
+    if (_out == null) {
+      return;
+    }
+    try {
+      header(4 + 4 + 8, type);
+      _out.writeInt(n);
+      _out.writeInt(configId);
+      _out.writeLong(ms);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /* One line of a configuration dump: id, knob positions, pulls and Q */
+  public static synchronized void config(ConfigurationSpace space, int id, int numOn, double reward) {
+    if (_out == null) {
+      return;
+    }
+    try {
+      int knobs = space.numKnobs();
+      header(4 + 4 + 8 + 4 + (4 * knobs), CONFIG);
+      _out.writeInt(id);
+      _out.writeInt(numOn);
+      _out.writeDouble(reward);
+      _out.writeInt(knobs);
+      for (int i = 0; i < knobs; i++) {
+        _out.writeInt(space.position(id, i));
+      }
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /* A decoded record. Reader.next() refills the same instance; only the
+   * fields of its type are meaningful. */
+  public static class Event {
+    public byte   _type;
+    public long   _time;
+
+    public int    _totalStep;
+    public int    _step;
+    public int    _configId;
+    public int    _numOn;
+    public int    _n;          // run or round number
+    public long   _ms;
+    public double _energy;
+    public double _reward;
+    public double _raw;
+    public double _totalReward;
+    public double _power;
+    public int[]  _positions = new int[0];
+
+    public String typeName() {
+      switch (_type) {
+        case TASK:        return "task";
+        case CYCLE:       return "cycle";
+        case RUN_START:   return "run-start";
+        case RUN_END:     return "run-end";
+        case ROUND_START: return "round-start";
+        case ROUND_END:   return "round-end";
+        case CONFIG:      return "config";
+        default:          return "unknown-" + _type;
+      }
+    }
+  }
+
+  /* Streams a journal record by record; records of unknown types are
+   * skipped. */
+  public static class Reader implements Closeable {
+    private final DataInputStream _in;
+    private final Event _event = new Event();
+
+    public Reader(InputStream in) throws IOException {
+      _in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+      int magic = _in.readInt();
+      int version = _in.readInt();
+      if (magic != MAGIC) {
+        throw new IOException("not an event journal");
+      }
+      if (version != VERSION) {
+        throw new IOException("unsupported journal version " + version);
+      }
+    }
+
+    public Reader(String path) throws IOException {
+      this(new FileInputStream(path));
+    }
+
+    /* null at the end of the journal; a record cut short by a crash ends it
+     * as well */
+    public Event next() throws IOException {
+      while (true) {
+        int length;
+        try {
+          length = _in.readInt();
+        } catch (EOFException e) {
+          return null;
+        }
+        try {
+          Event ev = _event;
+          ev._type = _in.readByte();
+          ev._time = _in.readLong();
+          int payload = length - HEADER;
+          switch (ev._type) {
+            case TASK:
+              ev._totalStep = _in.readInt();
+              ev._step = _in.readInt();
+              ev._configId = _in.readInt();
+              ev._energy = _in.readDouble();
+              ev._reward = _in.readDouble();
+              ev._raw = _in.readDouble();
+              ev._ms = _in.readLong();
+              ev._totalReward = _in.readDouble();
+              return ev;
+            case CYCLE:
+              ev._configId = _in.readInt();
+              ev._energy = _in.readDouble();
+              ev._power = _in.readDouble();
+              return ev;
+            case RUN_START:
+            case RUN_END:
+            case ROUND_START:
+            case ROUND_END:
+              ev._n = _in.readInt();
+              ev._configId = _in.readInt();
+              ev._ms = _in.readLong();
+              return ev;
+            case CONFIG:
+              ev._configId = _in.readInt();
+              ev._numOn = _in.readInt();
+              ev._reward = _in.readDouble();
+              int knobs = _in.readInt();
+              if (ev._positions.length != knobs) {
+                ev._positions = new int[knobs];
+              }
+              for (int i = 0; i < knobs; i++) {
+                ev._positions[i] = _in.readInt();
+              }
+              return ev;
+            default:
+              _in.skipBytes(payload);
+              break;
+          }
+        } catch (EOFException e) {
+          return null;
+        }
+      }
+    }
+
+    public void close() throws IOException {
+      _in.close();
+    }
+  }
+
+  public static final String CSV_HEADER =
+    "type,time,n,total_step,step,config,num_on,ms,energy,reward,raw,total_reward,power,positions";
+
+  public static void toCsv(Reader reader, PrintWriter out) throws IOException {
+    out.println(CSV_HEADER);
+    StringBuilder sb = new StringBuilder();
+    Event ev;
+    while ((ev = reader.next()) != null) {
+      sb.setLength(0);
+      sb.append(ev.typeName()).append(',').append(ev._time).append(',');
+      switch (ev._type) {
+        case TASK:
+          sb.append(",").append(ev._totalStep).append(',').append(ev._step).append(',')
+            .append(ev._configId).append(",,").append(ev._ms).append(',')
+            .append(ev._energy).append(',').append(ev._reward).append(',').append(ev._raw).append(',')
+            .append(ev._totalReward).append(",,");
+          break;
+        case CYCLE:
+          sb.append(",,,").append(ev._configId).append(",,,").append(ev._energy).append(",,,,")
+            .append(ev._power).append(',');
+          break;
+        case CONFIG:
+          sb.append(",,,").append(ev._configId).append(',').append(ev._numOn).append(",,,")
+            .append(ev._reward).append(",,,,");
+          for (int i = 0; i < ev._positions.length; i++) {
+            if (i > 0) {
+              sb.append(' ');
+            }
+            sb.append(ev._positions[i]);
+          }
+          break;
+        default:
+          sb.append(ev._n).append(",,,");
+          if (ev._configId >= 0) {
+            sb.append(ev._configId);
+          }
+          sb.append(",,").append(ev._ms).append(",,,,,,");
+          break;
+      }
+      out.println(sb);
+    }
+    out.flush();
+  }
+
+  /* Converter: java com.stoke.EventJournal <journal> [<csv>] */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: EventJournal <journal> [<csv>]");
+      System.exit(1);
+    }
+    Reader reader = new Reader(args[0]);
+    PrintWriter out = (args.length > 1)
+      ? new PrintWriter(new BufferedWriter(new FileWriter(args[1])))
+      : new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+    try {
+      toCsv(reader, out);
+    } finally {
+      reader.close();
+      out.close();
+    }
+  }
+}
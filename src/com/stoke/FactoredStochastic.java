@@ -0,0 +1,288 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.util.Random;
+
+import com.stoke.util.*;
+
+/* Factored (additive) model of the reward, for spaces with many knobs:
+ *
+ *   Q(c) ~ mu + sum_i theta_i[p_i(c)]  (+ sum_i<j phi_ij[p_i(c), p_j(c)])
+ *
+ * i.e., one estimate per knob setting (and, with the STOKE_FACTORED_PAIRS
+ * property, per pair of settings) instead of one per configuration. Every
+ * task informs the estimates of all configurations that share one of its
+ * settings, so the model needs on the order of sum(n_i) tasks rather than
+ * prod(n_i).
+ *
+ * Rewards are learned by stochastic backfitting: mu and then each term in
+ * turn moves toward the residual left by the ones before it, with a running
+ * average step 1/n floored at MIN_STEP (so estimates fitted against immature
+ * terms are eventually forgotten). That is O(#knobs) per reward, or
+ * O(#knobs^2) with pairs.
+ *
+ * The best configuration is the lowest predicted |Q|, found by coordinate
+ * descent over the knobs starting from the previous best; for an energy-only
+ * reward the terms separate and one sweep is exact. Exploration is
+ * epsilon-greedy, but moves a single knob of the best configuration to a
+ * random setting. Sampling every configuration first defeats the purpose:
+ * use SAMPLE_PRIORITY or SAMPLE_NONE. */
+public class FactoredStochastic extends StochasticPolicy {
+
+  protected static final double EPSILON = 0.10;
+  protected static final double MIN_STEP = 0.05;
+  protected static final int MAX_SWEEPS = 4;
+
+  protected final int   _k;
+  protected final int[] _radix;
+  protected final int[] _offset;
+
+  protected double   _mu = 0.0;
+  protected long     _n = 0;
+  protected final double[] _theta;
+  protected final int[]    _thetaCounts;
+
+  /* Pair (i, j), i < j, owns radix_i * radix_j cells from _pairOffset[i * k + j] */
+  protected final boolean  _pairs;
+  protected final int[]    _pairOffset;
+  protected final double[] _phi;
+  protected final int[]    _phiCounts;
+
+  protected final int[] _pos;
+  protected int     _bestId = 0;
+  protected boolean _dirty = true;
+
+  protected double _epsilon = EPSILON;
+  protected Random _random = new Random();
+
+  public FactoredStochastic(MiniMachine machine, ConfigurationSpace space) {
+    super(machine, space);
+    _k = space.numKnobs();
+    _radix = new int[_k];
+    _offset = new int[_k];
+    int settings = 0;
+    for (int i = 0; i < _k; i++) {
+      _radix[i] = space.getKnob(i).numPos();
+      _offset[i] = settings;
+      settings += _radix[i];
+    }
+    _theta = new double[settings];
+    _thetaCounts = new int[settings];
+
+    Boolean pairs = (Boolean) AndroidUtil.getProperty("STOKE_FACTORED_PAIRS");
+    _pairs = (pairs != null) && pairs;
+    _pairOffset = new int[_k * _k];
+    int cells = 0;
+    if (_pairs) {
+      for (int i = 0; i < _k; i++) {
+        for (int j = i + 1; j < _k; j++) {
+          _pairOffset[(i * _k) + j] = cells;
+          cells += _radix[i] * _radix[j];
+        }
+      }
+    }
+    _phi = new double[cells];
+    _phiCounts = new int[cells];
+    _pos = new int[_k];
+  }
+
+  public boolean shouldRandomize() {
+    return (_random.nextDouble() < _epsilon);
+  }
+
+  public void learn() { }
+
+  @Override
+  public void observe(int id, double reward) {
+    _space.positions(id, _pos);
+    double pred = predict(_pos);
+
+    _n++;
+    double delta = (reward - pred) * Math.max(1.0 / _n, MIN_STEP);
+    _mu += delta;
+    pred += delta;
+
+    for (int i = 0; i < _k; i++) {
+      int t = _offset[i] + _pos[i];
+      delta = (reward - pred) * Math.max(1.0 / ++_thetaCounts[t], MIN_STEP);
+      _theta[t] += delta;
+      pred += delta;
+    }
+    if (_pairs) {
+      for (int i = 0; i < _k; i++) {
+        for (int j = i + 1; j < _k; j++) {
+          int c = cell(i, j, _pos);
+          delta = (reward - pred) * Math.max(1.0 / ++_phiCounts[c], MIN_STEP);
+          _phi[c] += delta;
+          pred += delta;
+        }
+      }
+    }
+    _dirty = true;
+  }
+
+  /* The model has no per-configuration terms to drop: instead the counts
+   * of the configuration's settings start over, so its next rewards move
+   * those terms as if they were new */
+  @Override
+  public void forget(int id) {
+    _space.positions(id, _pos);
+    for (int i = 0; i < _k; i++) {
+      _thetaCounts[_offset[i] + _pos[i]] = 0;
+    }
+    if (_pairs) {
+      for (int i = 0; i < _k; i++) {
+        for (int j = i + 1; j < _k; j++) {
+          _phiCounts[cell(i, j, _pos)] = 0;
+        }
+      }
+    }
+    _dirty = true;
+  }
+
+  @Override
+  public void reset() {
+    _dirty = true;
+  }
+
+  protected int cell(int i, int j, int[] pos) {
+    return _pairOffset[(i * _k) + j] + (pos[i] * _radix[j]) + pos[j];
+  }
+
+  public double predict(int[] pos) {
+    double q = _mu;
+    for (int i = 0; i < _k; i++) {
+      q += _theta[_offset[i] + pos[i]];
+    }
+    if (_pairs) {
+      for (int i = 0; i < _k; i++) {
+        for (int j = i + 1; j < _k; j++) {
+          q += _phi[cell(i, j, pos)];
+        }
+      }
+    }
+    return q;
+  }
+
+  /* Coordinate descent on |predict| over candidate configurations */
+  public int bestId() {
+    if (!_dirty) {
+      return _bestId;
+    }
+    _space.positions(_bestId, _pos);
+    double bestAbs = _stats.isCandidate(_bestId) ? Math.abs(predict(_pos)) : Double.MAX_VALUE;
+    for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+      boolean improved = false;
+      for (int i = 0; i < _k; i++) {
+        int keep = _pos[i];
+        for (int p = 0; p < _radix[i]; p++) {
+          if (p == keep) {
+            continue;
+          }
+          _pos[i] = p;
+          if (!_stats.isCandidate(_space.encode(_pos))) {
+            continue;
+          }
+          double abs = Math.abs(predict(_pos));
+          if (abs < bestAbs) {
+            bestAbs = abs;
+            keep = p;
+            improved = true;
+          }
+        }
+        _pos[i] = keep;
+      }
+      if (!improved) {
+        break;
+      }
+    }
+    _bestId = (bestAbs < Double.MAX_VALUE) ? _space.encode(_pos) : _stats.bestId();
+    _dirty = false;
+    return _bestId;
+  }
+
+  @Override
+  public Configuration argMaxSelect(int step) {
+    return _space.get(bestId());
+  }
+
+  public Configuration stochasticSelect(int step) {
+    int best = bestId();
+    int i = _random.nextInt(_k);
+    if (_radix[i] < 2) {
+      return _space.get(best);
+    }
+    _space.positions(best, _pos);
+    int p = _random.nextInt(_radix[i] - 1);
+    _pos[i] = (p >= _pos[i]) ? p + 1 : p;
+    int id = _space.encode(_pos);
+    return _space.get(_stats.isCandidate(id) ? id : best);
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    _random.setSeed(seed);
+  }
+
+  public StochasticPolicyType type() {
+    return StochasticPolicyType.FACTORED;
+  }
+
+  @Override
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeBoolean(_pairs);
+    out.writeDouble(_mu);
+    out.writeLong(_n);
+    for (int t = 0; t < _theta.length; t++) {
+      out.writeDouble(_theta[t]);
+      out.writeInt(_thetaCounts[t]);
+    }
+    for (int c = 0; c < _phi.length; c++) {
+      out.writeDouble(_phi[c]);
+      out.writeInt(_phiCounts[c]);
+    }
+    out.writeInt(_bestId);
+  }
+
+  @Override
+  public void readState(DataInputStream in) throws IOException {
+    if (in.readBoolean() != _pairs) {
+      throw new IOException("factored model written with" + (_pairs ? "out" : "") + " pairs");
+    }
+    _mu = in.readDouble();
+    _n = in.readLong();
+    for (int t = 0; t < _theta.length; t++) {
+      _theta[t] = in.readDouble();
+      _thetaCounts[t] = in.readInt();
+    }
+    for (int c = 0; c < _phi.length; c++) {
+      _phi[c] = in.readDouble();
+      _phiCounts[c] = in.readInt();
+    }
+    int bestId = in.readInt();
+    if (bestId < 0 || bestId >= _stats.size()) {
+      throw new IOException("bad factored best configuration " + bestId);
+    }
+    _bestId = bestId;
+    _dirty = true;
+  }
+}
@@ -0,0 +1,350 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.util.*;
+
+/* Bayesian optimization of the InferredKnobs (ContinuousSearch.GAUSSIAN_PROCESS):
+ * instead of rounds of interval division, every point (one setting per
+ * knob) tried so far is an observation of a Gaussian-process regression of
+ * the reward Q, and the next point is the one with the highest expected
+ * improvement of |Q|.
+ *
+ * The observations are the machine's _states map (mean Q, task count and
+ * spread per point), so whatever an earlier round or a restored checkpoint
+ * learned counts as well. Each knob's coordinate (its setting, or the log
+ * of it; see InferredKnob) is scaled to [0, 1] over its limits, and the
+ * model is
+ *
+ *   Q(u) ~ GP(m, s_f^2 exp(-|u - u'|^2 / 2 l^2)),  noise s^2 / n(u)
+ *
+ * with m and s_f^2 the mean and variance of the observed Qs, s^2 the reward
+ * variance pooled over points, and l the length scale of LENGTH_SCALES with
+ * the highest marginal likelihood. Q is modeled with its sign (it is smooth
+ * where |Q| has a kink at an SLA), and the improvement is taken on |Q|
+ * against the lowest posterior |Q| of a tried point:
+ *
+ *   EI(u) = E[max(0, b - |Q(u)|)]
+ *
+ * over a grid of about CANDIDATES points per knob, and a grid as fine again
+ * over the grid cell around the best tried point. Once no candidate's EI is
+ * worth EI_MIN standard deviations of Q, the best tried point is kept.
+ *
+ * With discrete knobs alongside, a point is the inferred knobs' settings
+ * only, and its Q is the mean reward over the discrete configurations the
+ * mini bandit ran there (each equally often with SAMPLE_ALL; see
+ * AeneasMachine.gaussianProcessStep). The search thus optimizes the reward
+ * marginal over the discrete knobs; these are only optimized by the mini
+ * bandit at the point the search settles on.
+ *
+ * The design points (the knobs' seeds) are tried first, in order. A fit
+ * costs O(n^3) in the number of distinct points tried, once per proposal. */
+public class GaussianProcessSearch {
+  public static final int CANDIDATES = 256;
+  public static final double[] LENGTH_SCALES = { 0.05, 0.1, 0.2, 0.4 };
+  protected static final double EI_MIN = 1e-3;
+  protected static final double JITTER = 1e-9;
+
+  protected final InferredKnob[] _knobs;
+  protected final double[]   _low;
+  protected final double[]   _high;
+  protected final double[][] _design;
+  protected final int        _grid;
+
+  protected double _lastEI = 0.0;
+  protected AeneasMachine.StateKey _best = null;
+
+  public GaussianProcessSearch(InferredKnob[] knobs, double[][] design) {
+    int dims = knobs.length;
+    _knobs = knobs;
+    _low = new double[dims];
+    _high = new double[dims];
+    for (int d = 0; d < dims; d++) {
+      _low[d] = knobs[d].toCoordinate(knobs[d]._lowLimit);
+      _high[d] = knobs[d].toCoordinate(knobs[d]._highLimit);
+    }
+    _design = design;
+    _grid = Math.max(2, (int) Math.floor(Math.pow(CANDIDATES * dims, 1.0 / dims) + 1e-9));
+  }
+
+  /* EI of the last proposal, 0 when it kept the best point */
+  public double lastEI() {
+    return _lastEI;
+  }
+
+  /* Best tried point as of the last proposal */
+  public AeneasMachine.StateKey best() {
+    return _best;
+  }
+
+  public double[] propose(Map<AeneasMachine.StateKey, AeneasMachine.StatePreserve> states) {
+    _lastEI = 0.0;
+    for (int i = 0; i < _design.length; i++) {
+      AeneasMachine.StatePreserve sp = states.get(new AeneasMachine.StateKey(_design[i]));
+      if (sp == null || sp._numOn == 0) {
+        return _design[i];
+      }
+    }
+
+    List<AeneasMachine.StateKey> keys = new ArrayList<>();
+    for (Map.Entry<AeneasMachine.StateKey, AeneasMachine.StatePreserve> e : states.entrySet()) {
+      if (e.getValue()._numOn > 0) {
+        keys.add(e.getKey());
+      }
+    }
+    // A fixed order keeps proposals independent of the map's iteration order
+    Collections.sort(keys, new Comparator<AeneasMachine.StateKey>() {
+      @Override
+      public int compare(AeneasMachine.StateKey l, AeneasMachine.StateKey r) {
+        for (int k = 0; k < l._coords.length; k++) {
+          int c = Double.compare(l._coords[k], r._coords[k]);
+          if (c != 0) {
+            return c;
+          }
+        }
+        return 0;
+      }
+    });
+    int n = keys.size();
+    if (n < 2) {
+      return (n == 1) ? keys.get(0)._coords : unscale(new double[_low.length], 0.5);
+    }
+
+    double[][] u = new double[n][];
+    double[] y = new double[n];
+    double[] count = new double[n];
+    double mean = 0.0;
+    double m2 = 0.0;
+    int dof = 0;
+    for (int i = 0; i < n; i++) {
+      AeneasMachine.StatePreserve sp = states.get(keys.get(i));
+      u[i] = scale(keys.get(i)._coords);
+      y[i] = sp._q;
+      count[i] = sp._numOn;
+      mean += y[i];
+      if (sp._numOn > 1) {
+        m2 += sp._m2;
+        dof += sp._numOn - 1;
+      }
+    }
+    mean /= n;
+    double signal = 0.0;
+    double magnitude = 0.0;
+    for (int i = 0; i < n; i++) {
+      signal += (y[i] - mean) * (y[i] - mean);
+      magnitude += y[i] * y[i];
+    }
+    signal = Math.max(signal / n, 1e-6 * ((magnitude / n) + 1e-12));
+    double noise = (dof > 0) ? (m2 / dof) : 0.05 * signal;
+
+    double[] r = new double[n];
+    for (int i = 0; i < n; i++) {
+      r[i] = y[i] - mean;
+    }
+
+    // Length scale by marginal likelihood
+    double[] chol = new double[n * n];
+    double[] alpha = new double[n];
+    double bestLml = -Double.MAX_VALUE;
+    double length = -1.0;
+    for (int l = 0; l < LENGTH_SCALES.length; l++) {
+      double lml = fit(u, r, count, signal, noise, LENGTH_SCALES[l], chol, alpha);
+      if (lml > bestLml) {
+        bestLml = lml;
+        length = LENGTH_SCALES[l];
+      }
+    }
+    if (length < 0) {
+      return keys.get(0)._coords;
+    }
+    fit(u, r, count, signal, noise, length, chol, alpha);
+
+    // Incumbent: the lowest posterior |Q| among the tried points
+    double incumbent = Double.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      double q = mean;
+      for (int j = 0; j < n; j++) {
+        q += kernel(u[i], u[j], signal, length) * alpha[j];
+      }
+      if (Math.abs(q) < incumbent) {
+        incumbent = Math.abs(q);
+        _best = keys.get(i);
+      }
+    }
+
+    // The grid over all of [0, 1], then one as fine again over the cell
+    // around the incumbent
+    int dims = _low.length;
+    int total = 1;
+    for (int d = 0; d < dims; d++) {
+      total *= _grid;
+    }
+    double[] center = scale(_best._coords);
+    double cell = 1.0 / (_grid - 1);
+    double[] k = new double[n];
+    double[] uc = new double[dims];
+    double bestEI = 0.0;
+    double[] next = _best._coords;
+    for (int c = 0; c < 2 * total; c++) {
+      for (int d = 0, rest = c % total; d < dims; d++, rest /= _grid) {
+        double step = (double) (rest % _grid) / (_grid - 1);
+        uc[d] = (c < total) ? step : Math.min(1.0, Math.max(0.0, center[d] + (((2.0 * step) - 1.0) * cell)));
+      }
+      double q = mean;
+      for (int j = 0; j < n; j++) {
+        k[j] = kernel(uc, u[j], signal, length);
+        q += k[j] * alpha[j];
+      }
+      solveLower(chol, n, k);
+      double var = signal;
+      for (int j = 0; j < n; j++) {
+        var -= k[j] * k[j];
+      }
+      double ei = expectedImprovement(q, Math.sqrt(Math.max(var, 0.0)), incumbent);
+      if (ei > bestEI) {
+        bestEI = ei;
+        next = unscale(uc, -1.0);
+      }
+    }
+    if (bestEI < EI_MIN * Math.sqrt(signal)) {
+      return _best._coords;
+    }
+    _lastEI = bestEI;
+    return next;
+  }
+
+  protected double[] scale(double[] point) {
+    double[] u = new double[point.length];
+    for (int d = 0; d < point.length; d++) {
+      if (_high[d] != _low[d]) {
+        double c = _knobs[d].toCoordinate(point[d]);
+        u[d] = Math.min(1.0, Math.max(0.0, (c - _low[d]) / (_high[d] - _low[d])));
+      }
+    }
+    return u;
+  }
+
+  /* The point at u, or at fill on every knob when fill is in [0, 1] */
+  protected double[] unscale(double[] u, double fill) {
+    double[] point = new double[u.length];
+    for (int d = 0; d < u.length; d++) {
+      double ud = (fill >= 0.0) ? fill : u[d];
+      point[d] = _knobs[d].fromCoordinate(_low[d] + (ud * (_high[d] - _low[d])));
+    }
+    return point;
+  }
+
+  protected static double kernel(double[] a, double[] b, double signal, double length) {
+    double d2 = 0.0;
+    for (int d = 0; d < a.length; d++) {
+      double d1 = (a[d] - b[d]) / length;
+      d2 += d1 * d1;
+    }
+    return signal * Math.exp(-0.5 * d2);
+  }
+
+  /* Cholesky factor of K + noise into chol and K^-1 r into alpha; returns
+   * the log marginal likelihood (up to a constant), or -MAX if K is not
+   * positive definite */
+  protected static double fit(double[][] u, double[] r, double[] count, double signal, double noise,
+      double length, double[] chol, double[] alpha) {
+    int n = u.length;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j <= i; j++) {
+        double kij = kernel(u[i], u[j], signal, length);
+        if (i == j) {
+          kij += (noise / count[i]) + (JITTER * signal);
+        }
+        double s = kij;
+        for (int m = 0; m < j; m++) {
+          s -= chol[(i * n) + m] * chol[(j * n) + m];
+        }
+        if (i == j) {
+          if (!(s > 0.0)) {
+            return -Double.MAX_VALUE;
+          }
+          chol[(i * n) + i] = Math.sqrt(s);
+        } else {
+          chol[(i * n) + j] = s / chol[(j * n) + j];
+        }
+      }
+    }
+    System.arraycopy(r, 0, alpha, 0, n);
+    solveLower(chol, n, alpha);
+    double fitTerm = 0.0;
+    double logDet = 0.0;
+    for (int i = 0; i < n; i++) {
+      fitTerm += alpha[i] * alpha[i];
+      logDet += Math.log(chol[(i * n) + i]);
+    }
+    solveUpper(chol, n, alpha);
+    return (-0.5 * fitTerm) - logDet;
+  }
+
+  /* x <- L^-1 x */
+  protected static void solveLower(double[] chol, int n, double[] x) {
+    for (int i = 0; i < n; i++) {
+      double s = x[i];
+      for (int m = 0; m < i; m++) {
+        s -= chol[(i * n) + m] * x[m];
+      }
+      x[i] = s / chol[(i * n) + i];
+    }
+  }
+
+  /* x <- L^-T x */
+  protected static void solveUpper(double[] chol, int n, double[] x) {
+    for (int i = n - 1; i >= 0; i--) {
+      double s = x[i];
+      for (int m = i + 1; m < n; m++) {
+        s -= chol[(m * n) + i] * x[m];
+      }
+      x[i] = s / chol[(i * n) + i];
+    }
+  }
+
+  /* E[max(0, b - |f|)] for f ~ N(mu, sd^2) */
+  protected static double expectedImprovement(double mu, double sd, double b) {
+    if (!(sd > 0.0)) {
+      return Math.max(0.0, b - Math.abs(mu));
+    }
+    double lo = (-b - mu) / sd;
+    double zero = -mu / sd;
+    double hi = (b - mu) / sd;
+    double inside = normalCdf(hi) - normalCdf(lo);
+    // E[f 1{a < f < c}] = mu P(a < f < c) + sd (pdf(a') - pdf(c'))
+    double upper = (mu * (normalCdf(hi) - normalCdf(zero))) + (sd * (normalPdf(zero) - normalPdf(hi)));
+    double lower = (mu * (normalCdf(zero) - normalCdf(lo))) + (sd * (normalPdf(lo) - normalPdf(zero)));
+    return Math.max(0.0, (b * inside) - upper + lower);
+  }
+
+  protected static double normalPdf(double z) {
+    return Math.exp(-0.5 * z * z) / Math.sqrt(2.0 * Math.PI);
+  }
+
+  /* Abramowitz and Stegun 7.1.26 (absolute error below 1.5e-7) */
+  protected static double normalCdf(double z) {
+    double x = Math.abs(z) / Math.sqrt(2.0);
+    double t = 1.0 / (1.0 + (0.3275911 * x));
+    double poly = t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429))));
+    double erfc = poly * Math.exp(-x * x);
+    return (z >= 0) ? 1.0 - (0.5 * erfc) : 0.5 * erfc;
+  }
+}
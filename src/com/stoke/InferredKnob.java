@@ -22,9 +22,16 @@ package com.stoke;
 import com.stoke.types.*;
 import java.util.*;
 
+/* A knob whose settings are inferred over a range rather than listed. The
+ * settings are integers or doubles, spaced linearly or, for ranges that span
+ * orders of magnitude (timeouts, ratios), logarithmically: the division and
+ * the Gaussian-process search then work on log(setting), so that 10 ms - 100
+ * ms gets as many settings as 10 s - 100 s. */
 public class InferredKnob extends Knob {
-  int _highLimit;
-  int _lowLimit;
+  double _highLimit;
+  double _lowLimit;
+  boolean _integer = true;
+  boolean _logScale = false;
 
   public InferredKnob(String name, int high, int low, int interpolation) {
     super(name, null, 0);  
@@ -40,13 +47,19 @@ public class InferredKnob extends Knob {
       settings[i] = KnobValT.haveInteger(seeds.get(i));
     }
 
-    _settings = settings;
+    changeSettings(settings);
   }
 
   public InferredKnob(String name, int high, int low, Integer[] seeds) {
+    this(name, high, low, seeds, false);
+  }
+
+  public InferredKnob(String name, int high, int low, Integer[] seeds, boolean logScale) {
     super(name, null, 0);  
     _highLimit = high;
     _lowLimit = low;
+    _logScale = logScale;
+    checkLimits();
     Arrays.sort(seeds, new Comparator<Integer>() {
       @Override
       public int compare(Integer l, Integer r) {
@@ -61,8 +74,93 @@ public class InferredKnob extends Knob {
     settings[0] = KnobValT.haveInteger(high);
     settings[settings.length-1] = KnobValT.haveInteger(low);
 
-    _settings = settings;
+    changeSettings(settings);
   }
 
-}
+  public InferredKnob(String name, double high, double low, Double[] seeds) {
+    this(name, high, low, seeds, false);
+  }
+
+  public InferredKnob(String name, double high, double low, Double[] seeds, boolean logScale) {
+    super(name, null, 0);  
+    _highLimit = high;
+    _lowLimit = low;
+    _integer = false;
+    _logScale = logScale;
+    checkLimits();
+    Arrays.sort(seeds, new Comparator<Double>() {
+      @Override
+      public int compare(Double l, Double r) {
+        return Double.compare(r, l);
+      }
+    });
+
+    KnobVal[] settings = new KnobVal[seeds.length + 2];
+    for (int i = 1; i < settings.length-1; i++) {
+      settings[i] = KnobValT.haveDouble(seeds[i-1]);
+    }
+    settings[0] = KnobValT.haveDouble(high);
+    settings[settings.length-1] = KnobValT.haveDouble(low);
+
+    changeSettings(settings);
+  }
+
+  protected void checkLimits() {
+    if (_lowLimit > _highLimit) {
+      throw new RuntimeException("Error: Knob " + name() + " has a low limit above its high limit");
+    }
+    if (_logScale && _lowLimit <= 0) {
+      throw new RuntimeException("Error: Log-scaled knob " + name() + " needs a positive low limit");
+    }
+  }
+
+  /* Integer settings spaced linearly, divided with the integer seeds */
+  public boolean isIntegerLinear() {
+    return _integer && !_logScale;
+  }
+
+  /* The coordinate settings are searched on, and back */
+  public double toCoordinate(double value) {
+    return _logScale ? Math.log(value) : value;
+  }
+
+  public double fromCoordinate(double coordinate) {
+    return _logScale ? Math.exp(coordinate) : coordinate;
+  }
 
+  /* The setting closest to value within the limits */
+  public KnobVal settingFor(double value) {
+    double v = Math.min(_highLimit, Math.max(_lowLimit, value));
+    if (_integer) {
+      return KnobValT.haveInteger((int) Math.round(v));
+    }
+    return KnobValT.haveDouble(v);
+  }
+
+  /* Settings for coordinates in descending order, without the repeats
+   * rounding may leave at the low end of an integer log scale */
+  public KnobVal[] settingsFor(List<Double> coordinates) {
+    List<KnobVal> settings = new ArrayList<>();
+    double last = Double.NaN;
+    for (int i = 0; i < coordinates.size(); i++) {
+      KnobVal setting = settingFor(fromCoordinate(coordinates.get(i)));
+      double value = KnobValT.forceDouble(setting);
+      if (value != last) {
+        settings.add(setting);
+        last = value;
+      }
+    }
+    return settings.toArray(new KnobVal[]{});
+  }
+
+  /* Whether settings this close cannot be told apart any more: 50 for
+   * linear integers (milliseconds), otherwise 1/200 of the range */
+  public boolean indivisible(double slow, double fast) {
+    if (isIntegerLinear()) {
+      return slow - fast < 50;
+    }
+    double span = toCoordinate(_highLimit) - toCoordinate(_lowLimit);
+    return toCoordinate(slow) - toCoordinate(fast) < span / 200.0;
+  }
+
+}
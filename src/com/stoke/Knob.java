@@ -24,6 +24,10 @@ import com.stoke.types.*;
 public abstract class Knob {
   private int _curPos = 0;
 
+  /* The setting at _curPos, published for app threads that read the knob
+   * while the machine thread is selecting (see AeneasMachine async interact). */
+  private volatile KnobVal _current = null;
+
   private final String    _name;
   protected KnobVal[] _settings;
   private final int _priority;
@@ -32,6 +36,9 @@ public abstract class Knob {
     _name     = name;
     _settings = settings;
     _priority = priority;
+    if (_settings != null) {
+      _current = _settings[0];
+    }
   }
 
   public String name() {
@@ -45,13 +52,17 @@ public abstract class Knob {
   public void changeSettings(KnobVal[] settings) {
     _settings = settings;
     _curPos = 0;
+    _current = settings[0];
   }
 
-  public void setPos(int pos) { _curPos = pos; }
+  public void setPos(int pos) {
+    _curPos = pos;
+    _current = _settings[pos];
+  }
 
   public int getPos() { return _curPos; }
 
-  public KnobVal getSetting() { return _settings[_curPos]; }
+  public KnobVal getSetting() { return _current; }
 
   public KnobVal getSettingAtPos(int pos) { return _settings[pos]; }
 
@@ -0,0 +1,293 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.util.*;
+
+/* Sampling for SAMPLE_PRIORITY. Assumes every knob moves the reward
+ * monotonically, each in a direction of its own, and uses the partial order
+ * of the configuration lattice (Configuration.comparePositions) to sample
+ * only its frontier instead of every configuration.
+ *
+ * First the axes: the base configuration (every knob at position 0) and,
+ * knob by knob from the highest priority down, every other position of that
+ * knob with the rest at the base; 1 + sum(n_i - 1) configurations. Their Q
+ * values give each knob's direction. Once oriented so that Q grows upwards,
+ * every sampled configuration s bounds the unsampled ones: Q(c) >= Q(s) for
+ * c above s and Q(c) <= Q(s) for c below it. An unsampled configuration
+ * whose interval [lo, hi] holds no |Q| below the best sampled one is
+ * eliminated (see ConfigurationStats.eliminate) without being sampled; of
+ * the rest, the one whose interval comes closest to 0 is sampled next, until
+ * none is left.
+ *
+ * Each configuration is sampled for numTaskSamples tasks. next() only
+ * changes what it returns once learned() has counted them, so it can be
+ * called again after a restore. */
+public class LatticeSampler {
+  protected final ConfigurationSpace _space;
+  protected final ConfigurationStats _stats;
+
+  /* Axis configurations, in sampling order */
+  protected final int[] _axis;
+
+  protected final boolean[] _reversed;
+  protected final boolean[] _sampled;
+  protected final double[] _lo;
+  protected final double[] _hi;
+
+  protected final int[] _sPos;
+  protected final int[] _cPos;
+
+  protected int _axisNext = 0;
+  protected boolean _oriented = false;
+  protected int _current = -1;
+  protected int _taken = 0;
+
+  protected int _numSampled = 0;
+  protected int _pruned = 0;
+  protected double _bestAbs = Double.MAX_VALUE;
+
+  public LatticeSampler(ConfigurationSpace space, ConfigurationStats stats) {
+    _space = space;
+    _stats = stats;
+
+    int n = space.size();
+    int k = space.numKnobs();
+    _reversed = new boolean[k];
+    _sampled = new boolean[n];
+    _lo = new double[n];
+    _hi = new double[n];
+    Arrays.fill(_lo, Double.NEGATIVE_INFINITY);
+    Arrays.fill(_hi, Double.POSITIVE_INFINITY);
+    _sPos = new int[k];
+    _cPos = new int[k];
+
+    Integer[] order = new Integer[k];
+    int axisSize = 1;
+    for (int i = 0; i < k; i++) {
+      order[i] = i;
+      axisSize += space.getKnob(i).numPos() - 1;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Integer.compare(_space.getKnob(b).getPriority(), _space.getKnob(a).getPriority());
+      }
+    });
+
+    _axis = new int[axisSize];
+    int a = 0;
+    int[] pos = new int[k];
+    _axis[a++] = space.encode(pos);
+    for (int j = 0; j < k; j++) {
+      int i = order[j];
+      for (int p = 1; p < space.getKnob(i).numPos(); p++) {
+        pos[i] = p;
+        _axis[a++] = space.encode(pos);
+      }
+      pos[i] = 0;
+    }
+  }
+
+  /* Sampling starts over for a new round (MiniMachine.beginRound()), in the
+   * arrays already allocated. The axes only depend on the knobs' positions
+   * and priorities, which a round keeps. */
+  public void reset() {
+    Arrays.fill(_reversed, false);
+    Arrays.fill(_sampled, false);
+    Arrays.fill(_lo, Double.NEGATIVE_INFINITY);
+    Arrays.fill(_hi, Double.POSITIVE_INFINITY);
+    Arrays.fill(_sPos, 0);
+    Arrays.fill(_cPos, 0);
+    _axisNext = 0;
+    _oriented = false;
+    _current = -1;
+    _taken = 0;
+    _numSampled = 0;
+    _pruned = 0;
+    _bestAbs = Double.MAX_VALUE;
+  }
+
+  /* The configuration to run next, or -1 once sampling is over */
+  public int next() {
+    if (_current >= 0) {
+      return _current;
+    }
+    if (_axisNext < _axis.length) {
+      _current = _axis[_axisNext];
+    } else {
+      if (!_oriented) {
+        orient();
+      }
+      _current = frontier();
+    }
+    return _current;
+  }
+
+  /* A task on id has been learned */
+  public void learned(int id, int numTaskSamples) {
+    if (id != _current) {
+      return;
+    }
+    _taken++;
+    if (_taken < numTaskSamples) {
+      return;
+    }
+    _taken = 0;
+    _current = -1;
+    _sampled[id] = true;
+    _numSampled++;
+    _bestAbs = Math.min(_bestAbs, Math.abs(_stats.qvalue(id)));
+    if (_oriented) {
+      bound(id);
+    } else {
+      _axisNext++;
+    }
+  }
+
+  public int numSampled() {
+    return _numSampled;
+  }
+
+  public int numAxis() {
+    return _axis.length;
+  }
+
+  public int numPruned() {
+    return _pruned;
+  }
+
+  /* Each knob's direction from its axis: reversed if Q falls from position
+   * 0 to the last one. Then the axis configurations bound the rest. */
+  protected void orient() {
+    int k = _space.numKnobs();
+    double base = _stats.qvalue(_axis[0]);
+    int[] pos = new int[k];
+    for (int i = 0; i < k; i++) {
+      int last = _space.getKnob(i).numPos() - 1;
+      if (last > 0) {
+        pos[i] = last;
+        _reversed[i] = _stats.qvalue(_space.encode(pos)) < base;
+        pos[i] = 0;
+      }
+    }
+    _oriented = true;
+    for (int a = 0; a < _axis.length; a++) {
+      bound(_axis[a]);
+    }
+  }
+
+  protected void bound(int s) {
+    double q = _stats.qvalue(s);
+    _space.positions(s, _sPos);
+    for (int c = 0; c < _lo.length; c++) {
+      if (_sampled[c] || !_stats.isCandidate(c)) {
+        continue;
+      }
+      _space.positions(c, _cPos);
+      switch (Configuration.comparePositions(_sPos, _cPos, _reversed)) {
+        case BELOW:
+          _lo[c] = Math.max(_lo[c], q);
+          break;
+        case ABOVE:
+          _hi[c] = Math.min(_hi[c], q);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /* Eliminates the configurations that cannot beat the best sampled one and
+   * returns the most promising of the rest, or -1 */
+  protected int frontier() {
+    int next = -1;
+    double nextAbs = Double.MAX_VALUE;
+    for (int c = 0; c < _lo.length; c++) {
+      if (_sampled[c] || !_stats.isCandidate(c)) {
+        continue;
+      }
+      double abs = optimistic(c);
+      if (abs >= _bestAbs) {
+        _stats.eliminate(c);
+        _pruned++;
+      } else if (abs < nextAbs) {
+        next = c;
+        nextAbs = abs;
+      }
+    }
+    return next;
+  }
+
+  /* Smallest |Q| within [lo, hi] */
+  protected double optimistic(int c) {
+    double lo = _lo[c];
+    double hi = _hi[c];
+    if (lo <= 0.0 && hi >= 0.0) {
+      return 0.0;
+    }
+    return Math.min(Math.abs(lo), Math.abs(hi));
+  }
+
+  /* Checkpoint section; written after the stats, and the bounds are derived
+   * again from them on reading */
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(_axisNext);
+    out.writeBoolean(_oriented);
+    out.writeInt(_current);
+    out.writeInt(_taken);
+    out.writeInt(_pruned);
+    for (int c = 0; c < _sampled.length; c++) {
+      out.writeBoolean(_sampled[c]);
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    _axisNext = in.readInt();
+    boolean oriented = in.readBoolean();
+    _current = in.readInt();
+    _taken = in.readInt();
+    _pruned = in.readInt();
+    if (_axisNext < 0 || _axisNext > _axis.length || _current < -1 || _current >= _sampled.length) {
+      throw new IOException("bad lattice sampling state");
+    }
+    _numSampled = 0;
+    _bestAbs = Double.MAX_VALUE;
+    for (int c = 0; c < _sampled.length; c++) {
+      _sampled[c] = in.readBoolean();
+      if (_sampled[c]) {
+        _numSampled++;
+        _bestAbs = Math.min(_bestAbs, Math.abs(_stats.qvalue(c)));
+      }
+    }
+    Arrays.fill(_lo, Double.NEGATIVE_INFINITY);
+    Arrays.fill(_hi, Double.POSITIVE_INFINITY);
+    _oriented = false;
+    if (oriented) {
+      orient();
+      for (int c = 0; c < _sampled.length; c++) {
+        if (_sampled[c]) {
+          bound(c);
+        }
+      }
+    }
+  }
+}
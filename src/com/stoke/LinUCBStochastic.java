@@ -0,0 +1,256 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+
+import com.stoke.util.*;
+
+/* LinUCB (Li et al.) over the device context the app passes to
+ * AeneasMachine.interact(double[]). Every configuration a keeps a ridge
+ * regression of its reward on the features x = (1, context),
+ *
+ *   theta(a) = A(a)^-1 b(a),  A(a) = LAMBDA I + sum x x',  b(a) = sum -|r| x
+ *
+ * and the selected configuration maximizes
+ *
+ *   x' theta(a) + ALPHA (H - L) sqrt(x' A(a)^-1 x)
+ *
+ * with L and H the smallest and largest |reward| seen (see
+ * DiscountedUCBStochastic), so the best configuration can differ from one
+ * context to the next.
+ *
+ * A(a)^-1 is kept directly and updated by Sherman-Morrison in O(d^2), and
+ * selection costs O(d^2) per configuration with preallocated scratch
+ * vectors. A configuration's matrix is only allocated when it first learns a
+ * reward; until then its A^-1 is I / LAMBDA and theta is 0, i.e., it looks
+ * as good as a reward of 0 could, so it is tried. ALPHA can be set with the
+ * STOKE_LINUCB_ALPHA property. */
+public class LinUCBStochastic extends StochasticPolicy {
+
+  public static final double ALPHA = 1.0;
+  protected static final double LAMBDA = 1.0;
+
+  protected double _alpha = ALPHA;
+
+  /* Feature count (the context plus the constant), fixed on first use */
+  protected int _d = -1;
+
+  protected final double[][] _aInv;
+  protected final double[][] _b;
+
+  protected double[] _x;
+  protected double[] _u;
+
+  protected double _low = Double.MAX_VALUE;
+  protected double _high = 0.0;
+
+  public LinUCBStochastic(MiniMachine machine, ConfigurationSpace space) {
+    super(machine, space);
+    _aInv = new double[_stats.size()][];
+    _b = new double[_stats.size()][];
+    Double alpha = (Double) AndroidUtil.getProperty("STOKE_LINUCB_ALPHA");
+    if (alpha != null) {
+      _alpha = alpha;
+    }
+  }
+
+  public boolean shouldRandomize() {
+    return true;
+  }
+
+  public void learn() { }
+
+  /* The context dimension may only be set after the policy is built */
+  protected void features() {
+    double[] context = _miniBandit.machine().taskContext();
+    if (_d < 0) {
+      _d = context.length + 1;
+      _x = new double[_d];
+      _u = new double[_d];
+    } else if (context.length + 1 != _d) {
+      throw new RuntimeException(String.format("Error: Context dimension changed from %d to %d", _d - 1, context.length));
+    }
+    _x[0] = 1.0;
+    System.arraycopy(context, 0, _x, 1, _d - 1);
+  }
+
+  @Override
+  public void observe(int id, double reward) {
+    features();
+    double[] aInv = _aInv[id];
+    if (aInv == null) {
+      aInv = new double[_d * _d];
+      for (int i = 0; i < _d; i++) {
+        aInv[(i * _d) + i] = 1.0 / LAMBDA;
+      }
+      _aInv[id] = aInv;
+      _b[id] = new double[_d];
+    }
+
+    // A^-1 <- A^-1 - (A^-1 x)(A^-1 x)' / (1 + x' A^-1 x)
+    double xu = multiply(aInv, _x, _u);
+    double scale = 1.0 / (1.0 + xu);
+    for (int i = 0; i < _d; i++) {
+      double ui = _u[i] * scale;
+      int row = i * _d;
+      for (int j = 0; j < _d; j++) {
+        aInv[row + j] -= ui * _u[j];
+      }
+    }
+
+    double y = -Math.abs(reward);
+    double[] b = _b[id];
+    for (int i = 0; i < _d; i++) {
+      b[i] += y * _x[i];
+    }
+
+    _low = Math.min(_low, Math.abs(reward));
+    _high = Math.max(_high, Math.abs(reward));
+  }
+
+  /* Back to untried: A^-1 = I / LAMBDA and b = 0 on its next reward */
+  @Override
+  public void forget(int id) {
+    _aInv[id] = null;
+    _b[id] = null;
+  }
+
+  @Override
+  public void reset() {
+    _low = Double.MAX_VALUE;
+    _high = 0.0;
+  }
+
+  /* u = A^-1 x; returns x' u */
+  protected double multiply(double[] aInv, double[] x, double[] u) {
+    double xu = 0.0;
+    for (int i = 0; i < _d; i++) {
+      int row = i * _d;
+      double s = 0.0;
+      for (int j = 0; j < _d; j++) {
+        s += aInv[row + j] * x[j];
+      }
+      u[i] = s;
+      xu += x[i] * s;
+    }
+    return xu;
+  }
+
+  public Configuration stochasticSelect(int step) {
+    return _space.get(select(_alpha));
+  }
+
+  /* Without the bonus: the best configuration for the current context */
+  @Override
+  public Configuration argMaxSelect(int step) {
+    return _space.get(select(0.0));
+  }
+
+  protected int select(double alpha) {
+    features();
+    double range = (_high > _low) ? _high - _low : Math.max(_high, 1.0);
+    double xx = 0.0;
+    for (int i = 0; i < _d; i++) {
+      xx += _x[i] * _x[i];
+    }
+    double untried = alpha * range * Math.sqrt(xx / LAMBDA);
+
+    double bestIndex = -Double.MAX_VALUE;
+    int bestI = 0;
+    for (int a = 0; a < _aInv.length; a++) {
+      if (!_stats.isCandidate(a)) {
+        continue;
+      }
+      double index;
+      if (_aInv[a] == null) {
+        index = untried;
+      } else {
+        double var = multiply(_aInv[a], _x, _u);
+        double mean = 0.0;
+        double[] b = _b[a];
+        for (int i = 0; i < _d; i++) {
+          mean += _u[i] * b[i];
+        }
+        index = mean + (alpha * range * Math.sqrt(Math.max(var, 0.0)));
+      }
+      if (index > bestIndex) {
+        bestIndex = index;
+        bestI = a;
+      }
+    }
+    return bestI;
+  }
+
+  public StochasticPolicyType type() {
+    return StochasticPolicyType.LINUCB;
+  }
+
+  @Override
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(_d);
+    out.writeDouble(_low);
+    out.writeDouble(_high);
+    for (int a = 0; a < _aInv.length; a++) {
+      out.writeBoolean(_aInv[a] != null);
+      if (_aInv[a] != null) {
+        for (int i = 0; i < _aInv[a].length; i++) {
+          out.writeDouble(_aInv[a][i]);
+        }
+        for (int i = 0; i < _d; i++) {
+          out.writeDouble(_b[a][i]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void readState(DataInputStream in) throws IOException {
+    int d = in.readInt();
+    int expected = _miniBandit.machine().contextDimension() + 1;
+    if (d >= 0 && d != expected) {
+      throw new IOException(String.format("context dimension %d, expected %d", d - 1, expected - 1));
+    }
+    if (d >= 0) {
+      _d = d;
+      _x = new double[d];
+      _u = new double[d];
+    }
+    _low = in.readDouble();
+    _high = in.readDouble();
+    for (int a = 0; a < _aInv.length; a++) {
+      if (in.readBoolean()) {
+        double[] aInv = new double[d * d];
+        double[] b = new double[d];
+        for (int i = 0; i < aInv.length; i++) {
+          aInv[i] = in.readDouble();
+        }
+        for (int i = 0; i < d; i++) {
+          b[i] = in.readDouble();
+        }
+        _aInv[a] = aInv;
+        _b[a] = b;
+      } else {
+        _aInv[a] = null;
+        _b[a] = null;
+      }
+    }
+  }
+}
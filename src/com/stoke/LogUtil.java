@@ -0,0 +1,299 @@
+/* ************************************************************************************************ 
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this 
+ * software and associated documentation files (the "Software"), to deal in the Software 
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit 
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class LogUtil {
+  public static final String LOG_PREFIX_ENVVAR = "STOKE_LOG"; 
+
+  /* Async mode: capacity of the ring and the most records written per batch */
+  public static final int QUEUE_CAPACITY = 8192;
+  public static final int BATCH = 256;
+
+  protected static String _logname = "stoke.log";
+
+  private static volatile PrintWriter logger = null;
+
+  /* Non-null while async mode is on: writeLogger only enqueues, and the
+   * writer thread owns all writes to the logger. */
+  private static volatile AsyncWriter _async = null;
+
+  private static final AtomicLong _dropped = new AtomicLong();
+
+  /* Verbosity of the STOKE: diagnostics on stderr. Per-step diagnostics
+   * check isLoggable() before formatting anything, so a disabled level costs
+   * one field read. The log file itself is not leveled.
+   *
+   *   ERROR  failures only
+   *   INFO   lifecycle (threads, rounds, restores)
+   *   DEBUG  one line per task (rewards, Q updates, epsilon, timings)
+   *   TRACE  one line per configuration per task
+   */
+  public enum Level { ERROR, INFO, DEBUG, TRACE }
+
+  private static volatile int _level = Level.TRACE.ordinal();
+
+  /* Off for tools that run machines without a device to log for (e.g., the
+   * Simulator): writeLogger then returns without writing. */
+  private static volatile boolean _fileEnabled = true;
+
+  static {
+    initLogger();
+
+    String level = (String) AndroidUtil.getProperty("STOKE_LOG_LEVEL");
+    if (level != null) {
+      setLevel(Level.valueOf(level));
+    }
+
+    Boolean async = (Boolean) AndroidUtil.getProperty("STOKE_LOG_ASYNC");
+    if (async != null && async) {
+      setAsync(true);
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread("stoke-log-flush") {
+      @Override
+      public void run() {
+        flushOnExit();
+      }
+    });
+  }
+
+  public static void initLogger() {
+    String logname = System.getenv(LOG_PREFIX_ENVVAR);
+    if (logname != null) {
+      _logname = logname;
+    } 
+    
+    openLogger();
+  }
+
+  /* Records are handed to a background writer through a bounded,
+   * preallocated ring (ArrayBlockingQueue) instead of being written on the
+   * calling thread. When the ring is full the record is dropped and counted
+   * rather than blocking the machine; see droppedLogs(). Turning async mode
+   * off, closeLogger() and process exit all drain the ring first; a record
+   * that races with turning it off is written directly instead. */
+  public static synchronized void setAsync(boolean async) {
+    if (async && _async == null) {
+      Integer capacity = (Integer) AndroidUtil.getProperty("STOKE_LOG_QUEUE");
+      _async = new AsyncWriter((capacity != null) ? capacity : QUEUE_CAPACITY);
+      _async.start();
+    } else if (!async && _async != null) {
+      AsyncWriter writer = _async;
+      _async = null;
+      writer.finish();
+    }
+  }
+
+  public static void setLevel(Level level) {
+    _level = level.ordinal();
+  }
+
+  public static Level getLevel() {
+    return Level.values()[_level];
+  }
+
+  public static boolean isLoggable(Level level) {
+    return level.ordinal() <= _level;
+  }
+
+  public static boolean isAsync() {
+    return _async != null;
+  }
+
+  public static long droppedLogs() {
+    return _dropped.get();
+  }
+
+  static final class AsyncWriter extends Thread {
+    private static final String STOP = new String("stop");
+
+    private final BlockingQueue<String> _queue;
+    private final List<String> _batch = new ArrayList<>(BATCH);
+
+    /* Set by finish(); offers in progress are counted so finish() can wait
+     * for the ones that saw it open before draining the ring. */
+    private volatile boolean _closed = false;
+    private final AtomicInteger _offering = new AtomicInteger();
+
+    AsyncWriter(int capacity) {
+      super("stoke-log-writer");
+      setDaemon(true);
+      _queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /* False if the ring is full, or if the writer is closed (see closed()) */
+    boolean offer(String msg) {
+      _offering.incrementAndGet();
+      try {
+        return !_closed && _queue.offer(msg);
+      } finally {
+        _offering.decrementAndGet();
+      }
+    }
+
+    boolean closed() {
+      return _closed;
+    }
+
+    /* Everything enqueued before this call, or by an offer() that returned
+     * true, is written and flushed when it returns. */
+    void finish() {
+      _closed = true;
+      try {
+        _queue.put(STOP);
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      // Records from threads that saw the writer just before it was detached
+      while (_offering.get() != 0) {
+        Thread.yield();
+      }
+      PrintWriter out = logger;
+      String msg;
+      while ((msg = _queue.poll()) != null) {
+        if (out != null && msg != STOP) {
+          out.write(msg);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      boolean stopping = false;
+      while (!stopping) {
+        try {
+          _batch.add(_queue.take());
+        } catch (InterruptedException e) {
+          stopping = true;
+        }
+        _queue.drainTo(_batch, BATCH - 1);
+
+        PrintWriter out = logger;
+        for (int i = 0; i < _batch.size(); i++) {
+          String msg = _batch.get(i);
+          if (msg == STOP) {
+            stopping = true;
+          } else if (out != null) {
+            out.write(msg);
+          }
+        }
+        _batch.clear();
+        if (out != null && (stopping || _queue.isEmpty())) {
+          out.flush();
+        }
+      }
+    }
+  }
+
+  private static void flushOnExit() {
+    setAsync(false);
+    PrintWriter out = logger;
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  public static void openLogger() {
+    try {
+      switch (OsUtil.getOsType()) {
+      case WINDOWS:
+        System.err.println("Windows not supported. Exiting.");
+        System.exit(1);
+        break;
+      case MACOS:
+        System.err.println("Windows not supported. Exiting.");
+        System.exit(1);
+        break;
+      case LINUX:
+        logger = new PrintWriter(new BufferedWriter(new FileWriter(_logname)));
+        break;
+      case ANDROID:
+        logger = new PrintWriter(new BufferedWriter(new FileWriter("/sdcard/stoke/" + _logname)));
+        break;
+      case NONE:
+        System.err.println("Encountered unsupported operating system. Exiting.");
+        System.exit(1);
+        break;
+      }
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      throw new RuntimeException("uh oh");
+    }
+  }
+
+  public static void closeLogger() {
+    setAsync(false);
+    try {
+      logger.close();
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      throw new RuntimeException("uh oh");
+    }
+  }
+
+  public static void setFileEnabled(boolean enabled) {
+    _fileEnabled = enabled;
+  }
+
+  public static boolean isFileEnabled() {
+    return _fileEnabled;
+  }
+
+  public static void writeLogger(String msg) {
+    if (!_fileEnabled) {
+      return;
+    }
+    AsyncWriter async = _async;
+    if (async != null) {
+      if (async.offer(msg)) {
+        return;
+      }
+      if (!async.closed()) {
+        _dropped.incrementAndGet();
+        return;
+      }
+      // Async mode went off since _async was read: write directly
+    }
+    try {
+      logger.write(msg);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      throw new RuntimeException("uh oh");
+    }
+  }
+
+  public static void appendSuffix(int n) {
+    try {
+      String newName = String.format("%s.%d", _logname, n);
+      new File(_logname).renameTo(new File(newName));
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      throw new RuntimeException("uh oh");
+    }
+  }
+}
@@ -37,19 +37,12 @@ import java.lang.StringBuilder;
  * we can run over and over, and *swap* other mini bandits with it. */
 public class MiniMachine {
 
-  Configuration[] _configurations    = null;
+  ConfigurationSpace _space         = null;
   Configuration   _selected          = null; 
   Map<String,Knob>  _inputKnobs = null;
 
-  protected Map<Integer, Configuration> _configurationsMap = new HashMap<>();
-
-  /* Running Q functions */
-  Map<Integer, Double>  _leftRewards = new HashMap<>();
-  Map<Integer, Double>  _lastRewards = new HashMap<>();
-  Map<Integer, Integer> _numOns = new HashMap<>();
-
-  Map<Integer, Double>  _rightRewards = new HashMap<>();
-
+  /* Running Q functions, indexed by configuration id */
+  ConfigurationStats _stats = null;
 
   double _totalLeftReward = 0.0;
 
@@ -60,12 +53,11 @@ public class MiniMachine {
   /* Main Bandit logic: The combination of these two policies creates the 
    * individual bandit machines. */
   protected StochasticPolicy _stochasticPolicy = null;
+  protected StochasticPolicyType _stochasticPolicyType;
 
   protected int       _internalStep = 0;
   protected int       _postConfigStep = 0;
 
-  protected static int _totalStep = 0;
-
   protected boolean   _inSampling = true;
 
   private int         _taskDelay  = 0; 
@@ -82,11 +74,9 @@ public class MiniMachine {
 
   protected AeneasMachine _theBandit;
 
-  Map<Integer, Integer>  _restoredNumOns = new HashMap<>();
-
   public MiniMachine(AeneasMachine theBandit,
       Map<String,Knob> inputKnobs,
-      Configuration[] configurations,
+      ConfigurationSpace space,
       SamplingPolicy samplingPolicy,
       StochasticPolicyType stochasticPolicyType,
       RewardType rewardType) 
@@ -96,49 +86,154 @@ public class MiniMachine {
     _theBandit = theBandit;
     _inputKnobs = inputKnobs;
     _samplingPolicy = samplingPolicy;
-    _configurations = configurations;
+    _space = space;
     _rewardType = rewardType;
 
+    _stats = createStats();
+
+    _stochasticPolicyType = stochasticPolicyType;
     initPolicies(stochasticPolicyType);
+    setChangeDetection(_theBandit._changeDetection);
     if (_samplingPolicy == SamplingPolicy.SAMPLE_NONE) {
       _inSampling = false;
     }
-
-
-    // Build 
-    for (int i = 0; i < _configurations.length; i++) {
-      Configuration config = _configurations[i];
-      _configurationsMap.put(config.getId(), config);
-      _leftRewards.put(config.getId(), 0.0);
-      _rightRewards.put(config.getId(), 0.0);
-      _lastRewards.put(config.getId(), 0.0);
-      _numOns.put(config.getId(), 0);
-      _restoredNumOns.put(config.getId(), 0);
+    if (_samplingPolicy == SamplingPolicy.SAMPLE_PRIORITY) {
+      _lattice = new LatticeSampler(_space, _stats);
     }
 
+    selectInitialConfiguration();
+  }
+
+  protected void selectInitialConfiguration() {
     selectConfigurationByPos(0); 
 
     if (_theBandit._experiment == Experiment.OVERHEAD) {
-      selectConfigurationByPos(_configurations.length-1);
+      selectConfigurationByPos(_space.size()-1);
     }
     if (_theBandit._experiment == Experiment.OVERHEAD2) {
-      selectConfigurationByPos(_configurations.length-3);
+      selectConfigurationByPos(_space.size()-3);
     }
+  }
 
+  /* Another round over the same space, once AeneasMachine has replaced some
+   * knob settings in place (see ConfigurationSpace.replaceSettings()): the
+   * stats start a new round (ConfigurationStats.newRound()) and the caller
+   * retire()s the configurations whose settings changed; then sampling and
+   * the counters start over just as in a new mini bandit. The policy is
+   * kept, with what it learned for the other configurations, and only its
+   * round scalars are reset (StochasticPolicy.reset()). */
+  public void retire(int id, AeneasMachine.StatePreserve restored) {
+    _stats.forget(id);
+    _stochasticPolicy.forget(id);
+    if (_detector != null) {
+      _detector.reset(id);
+    }
+    if (restored != null) {
+      _stats.restore(id, restored._q, restored._numOn);
+    }
   }
 
-  public void restoreState(Map<Integer, AeneasMachine.StatePreserve> states, Knob contKnob) {
-    for (int i = 0; i < _configurations.length; i++) {
-      Configuration c = _configurations[i];
-      Integer interval = KnobValT.needInteger(c.getSettingForKnob(contKnob));
-      if (states.get(interval) != null) {
-        AeneasMachine.StatePreserve sp = states.get(interval);
-        _leftRewards.put(c.getId(), sp._q);
-        _numOns.put(c.getId(), sp._numOn);
-        _lastRewards.put(c.getId(), sp._q);
-        _restoredNumOns.put(c.getId(), sp._numOn);
+  public void beginRound() {
+    _internalStep = 0;
+    _postConfigStep = 0;
+    _totalLeftReward = 0.0;
+    _inSampling = (_samplingPolicy != SamplingPolicy.SAMPLE_NONE);
+    _inDelay = false;
+    _reexploreLeft = 0;
+    _sampleCursor = 0;
+    _sampleSkipped = 0;
+    _eliminateCursor = 0;
+    _eliminateRound = 0;
+    _eliminateTasks = 0;
+
+    _stochasticPolicy.reset();
+    if (_lattice != null) {
+      _lattice.reset();
+    }
+    selectInitialConfiguration();
+  }
+
+  protected ConfigurationStats createStats() {
+    String shared = _theBandit._sharedStatsPath;
+    if (shared != null && !_space.hasInferredKnob()) {
+      try {
+        return new SharedConfigurationStats(_space.size(), shared, _space.fingerprint());
+      } catch (IOException e) {
+        System.err.format("STOKE: Not sharing stats through %s: %s\n", shared, e.getMessage());
       }
     }
+    return new ConfigurationStats(_space.size());
+  }
+
+  public void restoreState(Map<AeneasMachine.StateKey, AeneasMachine.StatePreserve> states, Knob[] contKnobs) {
+    for (int id = 0; id < _space.size(); id++) {
+      AeneasMachine.StateKey key = AeneasMachine.stateKey(_space, id, contKnobs);
+      if (states.get(key) != null) {
+        AeneasMachine.StatePreserve sp = states.get(key);
+        _stats.restore(id, sp._q, sp._numOn);
+      }
+    }
+  }
+
+  /* Checkpoint section; see Checkpoint. The configuration space itself is
+   * rebuilt from the knobs, only what was learned over it is saved. */
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(_internalStep);
+    out.writeInt(_postConfigStep);
+    out.writeBoolean(_inSampling);
+    out.writeBoolean(_doneWithExperiment);
+    out.writeBoolean(_tableLoaded);
+    out.writeDouble(_totalLeftReward);
+    out.writeInt(_selected.getId());
+    out.writeInt(_eliminateCursor);
+    out.writeInt(_eliminateRound);
+    out.writeInt(_eliminateTasks);
+    out.writeInt(_reexploreId);
+    out.writeInt(_reexploreLeft);
+    out.writeBoolean(_detector != null);
+    if (_detector != null) {
+      _detector.writeState(out);
+    }
+    _stats.writeState(out);
+    _stochasticPolicy.writeState(out);
+    if (_lattice != null) {
+      _lattice.writeState(out);
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    _internalStep = in.readInt();
+    _postConfigStep = in.readInt();
+    _inSampling = in.readBoolean();
+    _doneWithExperiment = in.readBoolean();
+    _tableLoaded = in.readBoolean();
+    _totalLeftReward = in.readDouble();
+    int selectedId = in.readInt();
+    if (selectedId < 0 || selectedId >= _space.size()) {
+      throw new IOException("bad selected configuration " + selectedId);
+    }
+    _eliminateCursor = in.readInt();
+    _eliminateRound = in.readInt();
+    _eliminateTasks = in.readInt();
+    int reexploreId = in.readInt();
+    int reexploreLeft = in.readInt();
+    if (reexploreLeft > 0 && (reexploreId < 0 || reexploreId >= _space.size())) {
+      throw new IOException("bad re-explored configuration " + reexploreId);
+    }
+    _reexploreId = reexploreId;
+    _reexploreLeft = reexploreLeft;
+    if (in.readBoolean() != (_detector != null)) {
+      throw new IOException("checkpoint written with change detection " + ((_detector != null) ? "off" : "on"));
+    }
+    if (_detector != null) {
+      _detector.readState(in);
+    }
+    _stats.readState(in);
+    _stochasticPolicy.readState(in);
+    if (_lattice != null) {
+      _lattice.readState(in);
+    }
+    selectConfigurationById(selectedId);
   }
 
   protected boolean isPerformingHotRun() {
@@ -148,36 +243,54 @@ public class MiniMachine {
   public void initPolicies(StochasticPolicyType stochasticPolicyType) {
     switch (stochasticPolicyType) {
       case NO_STOCHASTIC:
-        _stochasticPolicy = new NoStochastic(this, _configurations);
+        _stochasticPolicy = new NoStochastic(this, _space);
         break;
       case EPSILON_GREEDY_0:
-        _stochasticPolicy = new EpsilonGreedyStochastic(this, _configurations, 0.0);
+        _stochasticPolicy = new EpsilonGreedyStochastic(this, _space, 0.0);
         break;
       case EPSILON_GREEDY_10:
-        _stochasticPolicy = new EpsilonGreedyStochastic(this, _configurations, EpsilonGreedyStochastic.EPSILON);
+        _stochasticPolicy = new EpsilonGreedyStochastic(this, _space, EpsilonGreedyStochastic.EPSILON);
         break;
       case EPSILON_GREEDY_50:
-        _stochasticPolicy = new EpsilonGreedyStochastic(this, _configurations, 0.50);
+        _stochasticPolicy = new EpsilonGreedyStochastic(this, _space, 0.50);
         break;
       case SOFTMAX:
-        _stochasticPolicy = new SoftmaxStochastic(this, _configurations);
+        _stochasticPolicy = new SoftmaxStochastic(this, _space);
         break;
       case VBDE_05:
-        _stochasticPolicy = new VBDEStochastic(this, _configurations, 0.5); 
+        _stochasticPolicy = new VBDEStochastic(this, _space, 0.5); 
         break;
       case VBDE_10:
-        _stochasticPolicy = new VBDEStochastic(this, _configurations, 1.0); 
+        _stochasticPolicy = new VBDEStochastic(this, _space, 1.0); 
         break;
       case VBDE_50:
-        _stochasticPolicy = new VBDEStochastic(this, _configurations, 5.0); 
+        _stochasticPolicy = new VBDEStochastic(this, _space, 5.0); 
         break;
       case VBDE_200:
-        _stochasticPolicy = new VBDEStochastic(this, _configurations, 20.0); 
+        _stochasticPolicy = new VBDEStochastic(this, _space, 20.0); 
         break;
       case UCB:
         // FIX : Rework the UCB policy (normalization) 
-        _stochasticPolicy = new UCBStochastic(this, _configurations); 
+        _stochasticPolicy = new UCBStochastic(this, _space); 
+        break;
+      case THOMPSON:
+        _stochasticPolicy = new ThompsonStochastic(this, _space);
+        break;
+      case UCB_DISCOUNTED:
+        _stochasticPolicy = new DiscountedUCBStochastic(this, _space);
         break;
+      case UCB_SLIDING_WINDOW:
+        _stochasticPolicy = new SlidingWindowUCBStochastic(this, _space);
+        break;
+      case FACTORED:
+        _stochasticPolicy = new FactoredStochastic(this, _space);
+        break;
+      case LINUCB:
+        _stochasticPolicy = new LinUCBStochastic(this, _space);
+        break;
+    }
+    if (_theBandit._policySeed != null) {
+      _stochasticPolicy.setSeed(_theBandit._policySeed);
     }
   }
 
@@ -202,63 +315,82 @@ public class MiniMachine {
     }
     */
     if (_theBandit._experiment == Experiment.OVERHEAD) {
-      selectConfigurationByPos(_configurations.length-1);
+      selectConfigurationByPos(_space.size()-1);
     }
     if (_theBandit._experiment == Experiment.OVERHEAD2) {
-      selectConfigurationByPos(_configurations.length-3);
+      selectConfigurationByPos(_space.size()-3);
     }
   }
 
   public void postStep(double leftReward, double rightReward, long ms, double rawReward, double rawJoules) { 
+    postStep(_selected.getId(), leftReward, rightReward, ms, rawReward, rawJoules);
+  }
+
+  /* creditId is the configuration the task ran under, which in async mode
+   * need not be the one selected by now (see AeneasMachine.Observation) */
+  public void postStep(int creditId, double leftReward, double rightReward, long ms, double rawReward, double rawJoules) { 
     _internalStep++;
-    _totalStep++;
+    _theBandit._totalStep++;
 
     if (!_inDelay && !_doneWithExperiment) { 
       if (_theBandit._experiment != Experiment.IGNORE) {
-        learn(leftReward, rightReward); 
+        learn(creditId, leftReward, rightReward); 
         if (!_inSampling) {
           _stochasticPolicy.learn();
+        } else if (_samplingPolicy == SamplingPolicy.SAMPLE_ELIMINATE) {
+          _eliminateCursor++;
+          _eliminateTasks++;
+        } else if (_lattice != null) {
+          _lattice.learned(creditId, _numTaskSamples);
         }
       }
 
       _totalLeftReward += Math.abs(rawJoules); 
 
       // Logging
-      System.err.format(
-          "STOKE: ETask %d: Configuration:%d Energy:%.2f Power:%.2f Reward:%.2f Time:%d\n",
-          _internalStep,
-          _selected.getId(),
-          0.0,
-          0.0,
-          leftReward,
-          ms
-          );
-
-      StringBuilder sb = new StringBuilder("ETask ");
-      sb.append(MiniMachine._totalStep);
-      sb.append("-");
-      sb.append(_internalStep);
-      sb.append(": Configuration:");
-      sb.append(_selected.getId());
-      sb.append(" Energy:");
-      sb.append(rawJoules);
-      sb.append(" Reward:");
-      sb.append(leftReward);
-      sb.append(" Raw:");
-      sb.append(rawReward);
-      sb.append(" Time:");
-      sb.append(ms);
-      sb.append(" TotalReward:");
-      sb.append(_totalLeftReward);
-      sb.append("\n");
-
-      LogUtil.writeLogger(sb.toString());
+      if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+        System.err.format(
+            "STOKE: ETask %d: Configuration:%d Energy:%.2f Power:%.2f Reward:%.2f Time:%d\n",
+            _internalStep,
+            creditId,
+            0.0,
+            0.0,
+            leftReward,
+            ms
+            );
+      }
+
+      // Not even built when there is no log file to write it to
+      if (LogUtil.isFileEnabled()) {
+        StringBuilder sb = new StringBuilder("ETask ");
+        sb.append(_theBandit._totalStep);
+        sb.append("-");
+        sb.append(_internalStep);
+        sb.append(": Configuration:");
+        sb.append(creditId);
+        sb.append(" Energy:");
+        sb.append(rawJoules);
+        sb.append(" Reward:");
+        sb.append(leftReward);
+        sb.append(" Raw:");
+        sb.append(rawReward);
+        sb.append(" Time:");
+        sb.append(ms);
+        sb.append(" TotalReward:");
+        sb.append(_totalLeftReward);
+        sb.append("\n");
+
+        LogUtil.writeLogger(sb.toString());
+      }
+      EventJournal.task(_theBandit._totalStep, _internalStep, creditId, rawJoules, leftReward, rawReward, ms, _totalLeftReward);
 
       if (!_inSampling) {
         _postConfigStep++;
       }
 
-      dumpConfigurations(_configurations, false);
+      if (LogUtil.isLoggable(LogUtil.Level.TRACE)) {
+        dumpConfigurations(false);
+      }
     }
   }
 
@@ -266,34 +398,86 @@ public class MiniMachine {
     return _doneWithExperiment;
   }
 
-  protected void learn(double leftReward, double rightReward) {
+  protected void learn(int selectedId, double leftReward, double rightReward) {
     if (_inSampling || _stochasticPolicy.type() != StochasticPolicyType.NO_STOCHASTIC) {
-      int selectedId = _selected.getId();
-      _numOns.put(selectedId, _numOns.get(selectedId) + 1);
+      double Qa = _stats.qvalue(selectedId);
+      double varA = _stats.variance(selectedId);
+      int countA = _stats.m2Count(selectedId);
+
+      _stats.learn(selectedId, leftReward, rightReward);
+      _stochasticPolicy.observe(selectedId, leftReward);
+      if (_reexploreLeft > 0 && selectedId == _reexploreId) {
+        _reexploreLeft--;
+      }
 
-      double Qa = _leftRewards.get(selectedId);
-      double alpha = 1.0 / (double) _numOns.get(selectedId);
+      if (_detector != null && !_inSampling && _reexploreLeft == 0
+          && _detector.update(selectedId, leftReward, Qa, varA, countA)) {
+        reexplore(selectedId);
+      }
 
-      System.err.format("Alpha: %.2f LeftReward: %.2f\n", alpha, leftReward);
+      if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+        double alpha = 1.0 / (double) _stats.numOn(selectedId);
+        double Qap1 = _stats.qvalue(selectedId);
 
-      double temporalDiff = alpha * (leftReward - Qa);
-      double Qap1 = Qa + temporalDiff;
+        System.err.format("Alpha: %.2f LeftReward: %.2f\n", alpha, leftReward);
+        System.err.format("STOKE: Qa:%.2f Delta:%.2f Qa+1:%.2f\n", Qa, Qap1 - Qa, Qap1);
+      }
+    } 
+  } 
 
-      _lastRewards.put(selectedId, Qa);
-      _leftRewards.put(selectedId, Qap1);
+  /* Change detection: see ChangeDetector. A configuration whose rewards have
+   * shifted loses its statistics and is sampled again, _numTaskSamples times
+   * in a row, before the policy takes over again; everything learned about
+   * the other configurations is kept. A forced pull is only counted once it
+   * is learned, so a checkpoint taken between selecting and learning it
+   * restores to the same pull. */
+  protected ChangeDetector _detector = null;
+  protected int _reexploreId = -1;
+  protected int _reexploreLeft = 0;
+
+  public void setChangeDetection(boolean on) {
+    if (!on) {
+      _detector = null;
+      _reexploreLeft = 0;
+    } else if (_detector == null) {
+      _detector = new ChangeDetector(_space.size());
+      Double delta = (Double) AndroidUtil.getProperty("STOKE_CHANGE_DELTA");
+      Double lambda = (Double) AndroidUtil.getProperty("STOKE_CHANGE_LAMBDA");
+      _detector.setThresholds(
+          (delta != null) ? delta : ChangeDetector.DELTA,
+          (lambda != null) ? lambda : ChangeDetector.LAMBDA);
+    }
+  }
 
-      System.err.format("STOKE: Qa:%.2f Delta:%.2f Qa+1:%.2f\n", Qa, temporalDiff, Qap1);
+  public ChangeDetector changeDetector() {
+    return _detector;
+  }
 
-      _rightRewards.put(selectedId, _rightRewards.get(selectedId) + rightReward);
-    } 
-  } 
+  protected void reexplore(int id) {
+    _stats.forget(id);
+    _stochasticPolicy.forget(id);
+    _reexploreId = id;
+    _reexploreLeft = _numTaskSamples;
+    if (LogUtil.isLoggable(LogUtil.Level.INFO)) {
+      System.err.format("STOKE: Change detected on configuration %d, re-exploring it\n", id);
+    }
+    LogUtil.writeLogger(String.format("STOKE: Change detected on configuration %d\n", id));
+  }
 
   public double qvalue(Configuration c) {
     return qvalue(c.getId());
   }
 
   public double qvalue(int id) {
-    return _leftRewards.get(id);
+    return _stats.qvalue(id);
+  }
+
+  public ConfigurationStats stats() {
+    return _stats;
+  }
+
+  public AeneasMachine machine() {
+    return _theBandit;
   }
 
   /*
@@ -393,6 +577,10 @@ public class MiniMachine {
     if (_inSampling) {
       return;
     }
+    if (_reexploreLeft > 0) {
+      selectConfigurationById(_reexploreId);
+      return;
+    }
 
     Configuration next = null;
     if (_stochasticPolicy.shouldRandomize()) {
@@ -430,20 +618,18 @@ public class MiniMachine {
       String l = br.readLine();
       System.err.format("Read:%s\n", l);
       String[] tokens = l.split(" ");
-      for (int i = 0; i < _configurations.length; i++) {
-        Configuration c = _configurations[i];
+      for (int i = 0; i < _space.size(); i++) {
         l = br.readLine();
         System.err.format("Read:%s\n", l);
         tokens = l.split(" ");
         int id = Integer.parseInt(tokens[0].split(":")[1]);
         double reward = Double.parseDouble(tokens[1].split(":")[1]);
         int numOn = Integer.parseInt(tokens[2].split(":")[1]);
-        if (c.getId() != id) {
+        if (i != id) {
           throw new RuntimeException("Error when reading offline table!");
         }
         // TODO : left reward hack
-        _leftRewards.put(c.getId(), reward);
-        _numOns.put(c.getId(), numOn);
+        _stats.set(id, reward, numOn);
       }
 
     } catch (Exception e) {
@@ -464,7 +650,7 @@ public class MiniMachine {
   } 
 
   protected boolean sampleAll(int step) {
-    if (step < (_configurations.length * _numTaskSamples)) {
+    if (step < (_space.size() * _numTaskSamples)) {
       if (step % _numTaskSamples != 0) {
         return true;
       }
@@ -472,7 +658,7 @@ public class MiniMachine {
       if (_samplingPolicy == SamplingPolicy.SAMPLE_ALL) {
         selectConfigurationByPos(next);
       } else if (_samplingPolicy == SamplingPolicy.SAMPLE_REVERSE) {
-        selectConfigurationByPos(_configurations.length - 1 - next);
+        selectConfigurationByPos(_space.size() - 1 - next);
       } else {
         throw new RuntimeException("Should never reach!");
       }
@@ -488,11 +674,104 @@ public class MiniMachine {
     return false;
   } 
 
+  /* With shared stats, other processes (or earlier runs of this one) may have
+   * sampled some configurations already: walk the same order as sampleAll,
+   * but stay on a configuration only until the merged count reaches
+   * _numTaskSamples and skip the ones that are already there. */
+  private int _sampleCursor = 0;
+  private int _sampleSkipped = 0;
+
+  protected boolean sampleShared() {
+    SharedConfigurationStats shared = (SharedConfigurationStats) _stats;
+    if (_sampleCursor > 0) {
+      int current = _selected.getId();
+      shared.refresh(current);
+      if (shared.numOn(current) < _numTaskSamples) {
+        return true;
+      }
+    }
+
+    while (_sampleCursor < _space.size()) {
+      int next = _sampleCursor++;
+      if (_samplingPolicy == SamplingPolicy.SAMPLE_REVERSE) {
+        next = _space.size() - 1 - next;
+      }
+      next = _space.idAt(next);
+      shared.refresh(next);
+      if (shared.numOn(next) < _numTaskSamples) {
+        selectConfigurationById(next);
+        return true;
+      }
+      _sampleSkipped++;
+    }
+
+    System.err.format("STOKE: Shared stats: skipped sampling %d of %d configurations\n", _sampleSkipped, _space.size());
+    LogUtil.writeLogger(String.format("STOKE: Shared stats: skipped sampling %d of %d configurations\n", _sampleSkipped, _space.size()));
+    _inSampling = false;
+    return false;
+  }
+
+  /* Successive elimination (SAMPLE_ELIMINATE): sample in rounds of one task
+   * per candidate, and after every round from the second on eliminate the
+   * candidates whose interval |Q| +- ELIMINATE_Z * s / sqrt(n) (s pooled over
+   * all configurations) lies entirely above the best candidate's. Sampling
+   * ends after _numTaskSamples rounds, or once a single candidate is left, so
+   * it never takes more tasks than SAMPLE_ALL; from then on the policy only
+   * selects among the candidates. The cursor only advances once a task is
+   * learned, so selecting again (e.g., after a restore) is idempotent. */
+  public static final double ELIMINATE_Z = 2.0;
+
+  private int _eliminateCursor = 0;
+  private int _eliminateRound = 0;
+  private int _eliminateTasks = 0;
+
+  protected boolean sampleEliminate() {
+    if (_eliminateCursor == _stats.numCandidates()) {
+      _eliminateCursor = 0;
+      _eliminateRound++;
+      if (_eliminateRound >= 2) {
+        eliminateDominated();
+      }
+      if (_eliminateRound >= _numTaskSamples || _stats.numCandidates() == 1) {
+        String msg = String.format("STOKE: Elimination: kept %d of %d configurations after %d rounds, %d of %d sampling tasks\n",
+            _stats.numCandidates(), _space.size(), _eliminateRound, _eliminateTasks, _space.size() * _numTaskSamples);
+        if (LogUtil.isLoggable(LogUtil.Level.INFO)) {
+          System.err.print(msg);
+        }
+        LogUtil.writeLogger(msg);
+        _inSampling = false;
+        return false;
+      }
+    }
+    selectConfigurationById(_stats.candidate(_eliminateCursor));
+    return true;
+  }
+
+  protected void eliminateDominated() {
+    double var = _stats.pooledVariance();
+    if (Double.isNaN(var)) {
+      return;
+    }
+    int best = _stats.bestId();
+    double bestUpper = Math.abs(_stats.qvalue(best)) + (ELIMINATE_Z * Math.sqrt(var / _stats.numOn(best)));
+    // Downward, since eliminate() moves the last candidate into the freed slot
+    for (int k = _stats.numCandidates() - 1; k >= 0; k--) {
+      int id = _stats.candidate(k);
+      if (id == best) {
+        continue;
+      }
+      double lower = Math.abs(_stats.qvalue(id)) - (ELIMINATE_Z * Math.sqrt(var / _stats.numOn(id)));
+      if (lower > bestUpper) {
+        _stats.eliminate(id);
+      }
+    }
+  }
+
   // FIX : This doesn't work anymore. No more meter readings. Need to pull out.
   protected boolean sampleOfflineCollection(int step) {
     int cycleSteps = _numTaskSamples + _taskDelay;
 
-    if (step < ((_configurations.length * cycleSteps)-_taskDelay)) {
+    if (step < ((_space.size() * cycleSteps)-_taskDelay)) {
       int currentStep = step % cycleSteps;
 
       // Start of cycle reading, -- active samples
@@ -523,6 +802,7 @@ public class MiniMachine {
                 0,
                 0
                 )); 
+          EventJournal.cycle(_selected.getId(), 0, 0);
 
           int cyclesPassed = step / cycleSteps;
           int next = (step - (cyclesPassed * _taskDelay)) / _numTaskSamples;
@@ -551,57 +831,30 @@ public class MiniMachine {
                 0,
                 0
                 )); 
+        EventJournal.cycle(_selected.getId(), 0, 0);
       }
     }
     return false;
   }
 
-  private Knob _highPrioKnob = null;
-
-  /*
-  protected boolean samplePriority(int step) {
-    if (_highPrioKnob == null) {
-      _highPrioKnob = _theBandit.findHighestPriorityKnob();
-      //System.err.format("STOKE: Selecting %s as the high priority knob\n", _highPrioKnob);
-    }
-
-    if (step % _numTaskSamples != 0) {
-      return false;
-    }
+  /* Lattice frontier sampling (SAMPLE_PRIORITY); see LatticeSampler */
+  protected LatticeSampler _lattice = null;
 
-    int nextSetting = step / _numTaskSamples;
-
-    if (nextSetting != 0) {
-      Configuration[] configs = 
-        _latticePolicy.getFromSettings(_highPrioKnob.name(), nextSetting-1);
-      for (int i = 0; i < configs.length; i++) {
-        Configuration c = configs[i]; 
-        _leftRewards.put(c.getId(), _leftRewards.get(_selected.getId()));
-        _rightRewards.put(c.getId(), _rightRewards.get(_selected.getId()));
-        _numOns.put(c.getId(), _numOns.get(_selected.getId()));
+  protected boolean samplePriority() {
+    int next = _lattice.next();
+    if (next < 0) {
+      String msg = String.format("STOKE: Lattice: sampled %d of %d configurations (%d on the axes), %d ruled out\n",
+          _lattice.numSampled(), _space.size(), _lattice.numAxis(), _lattice.numPruned());
+      if (LogUtil.isLoggable(LogUtil.Level.INFO)) {
+        System.err.print(msg);
       }
-    }
-    
-    if (nextSetting >= _highPrioKnob.numPos()) {
+      LogUtil.writeLogger(msg);
       _inSampling = false;
-      return true;
-    } 
-
-    Configuration nextSample = 
-      _latticePolicy.getFromSettings(_highPrioKnob.name(), nextSetting)[0];
-
-    selectConfigurationById(nextSample.getId()); 
-
-    String configstr = "";
-    for (int i = 0; i < _inputKnobs.size(); i++) {
-      configstr += String.format("%d ", _selected.getPosition(i));
+      return false;
     }
-
-    //System.err.format("Exercising configuration %s\n", configstr);
-    
+    selectConfigurationById(next);
     return true;
   }
-  */
 
   protected boolean sampleConfigurations(int step) {
     if (_inSampling) {
@@ -610,12 +863,17 @@ public class MiniMachine {
         case SAMPLE_REVERSE:
           if (isPerformingHotRun()) {
             sampleOfflineCollection(step);
+          } else if (_stats instanceof SharedConfigurationStats) {
+            sampleShared();
           } else {
             sampleAll(step);
           }
           break;
         case SAMPLE_PRIORITY:
-          //samplePriority(step);
+          samplePriority();
+          break;
+        case SAMPLE_ELIMINATE:
+          sampleEliminate();
           break;
       }
       return true;
@@ -626,12 +884,13 @@ public class MiniMachine {
   
   /* Various selection methods that select an actual configuration for the 
    * machine to use. */
+  /* The i-th configuration in position order; see ConfigurationSpace.idAt() */
   protected void selectConfigurationByPos(int i) {
-    selectConfiguration(_configurations[i]);
+    selectConfiguration(_space.get(_space.idAt(i)));
   }
 
   protected void selectConfigurationById(int id) {
-    selectConfiguration(_configurationsMap.get(id));
+    selectConfiguration(_space.get(id));
   }
 
   protected void selectConfiguration(Configuration config) {
@@ -651,20 +910,36 @@ public class MiniMachine {
     _taskDelay = taskDelay;
   } 
 
+  public void dumpConfigurations(boolean dumpToLog) {
+    if (dumpToLog) {
+      for (int i = 0; i < _space.size(); i++) {
+        int id = _space.idAt(i);
+        LogUtil.writeLogger(String.format("STOKE: Config: %s | -- on:%d reward:%.4f\n", _space.describe(id), _stats.numOn(id), qvalue(id)));
+        EventJournal.config(_space, id, _stats.numOn(id), qvalue(id));
+      }
+    } else {
+      for (int i = 0; i < _space.size(); i++) {
+        int id = _space.idAt(i);
+        System.err.format("STOKE: Config: %s | -- on:%d reward:%.4f\n", _space.describe(id), _stats.numOn(id), qvalue(id));
+      }
+    }
+  }
+
   /* Having to dump configurations based on a specific order is useful even
    * externally to the bandit. */
   public void dumpConfigurations(Configuration[] configs, boolean dumpToLog) {
     if (dumpToLog) {
       for (int i = 0; i < configs.length; i++) {
         Configuration c = configs[i];
-        int numOn = _numOns.get(c.getId());
+        int numOn = _stats.numOn(c.getId());
         double reward = qvalue(c);
         LogUtil.writeLogger(String.format("STOKE: Config: %s | -- on:%d reward:%.4f\n", c.toString(), numOn, reward));
+        EventJournal.config(_space, c.getId(), numOn, reward);
       }
     } else {
       for (int i = 0; i < configs.length; i++) {
         Configuration c = configs[i];
-        int numOn = _numOns.get(c.getId());
+        int numOn = _stats.numOn(c.getId());
         double reward = qvalue(c);
         System.err.format("STOKE: Config: %s | -- on:%d reward:%.4f\n", c.toString(), numOn, reward);
       }
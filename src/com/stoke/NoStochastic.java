@@ -21,8 +21,8 @@ package com.stoke;
 
 public class NoStochastic extends StochasticPolicy { 
 
-  public NoStochastic(MiniMachine miniBandit, Configuration[] configurations) {
-    super(miniBandit, configurations);
+  public NoStochastic(MiniMachine miniBandit, ConfigurationSpace space) {
+    super(miniBandit, space);
   }
 
   public boolean shouldRandomize() {
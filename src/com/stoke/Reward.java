@@ -90,7 +90,9 @@ public class Reward {
     _lastSec = _taskWatch.elapsed(TimeUnit.MILLISECONDS) / 1000.0;
     _taskWatch.reset();
     _taskWatch.start();
-    System.err.format("STOKE: Elapsed Seconds: %.2f\n", _lastSec);
+    if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+      System.err.format("STOKE: Elapsed Seconds: %.2f\n", _lastSec);
+    }
     double joules = _lastSec * getBatteryWatts();
     _cachedJoules = joules;
     return joules;
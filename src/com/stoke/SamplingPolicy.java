@@ -25,6 +25,7 @@ public enum SamplingPolicy {
   SAMPLE_ALL,
   SAMPLE_REVERSE,
   SAMPLE_PRIORITY,
+  SAMPLE_ELIMINATE,
   OFFLINE_PROFILE ;
 
   public static SamplingPolicy toSamplingPolicy(String s) {
@@ -37,6 +38,8 @@ public enum SamplingPolicy {
         return SamplingPolicy.SAMPLE_REVERSE;
       case "SAMPLE_PRIORITY":
         return SamplingPolicy.SAMPLE_PRIORITY;
+      case "SAMPLE_ELIMINATE":
+        return SamplingPolicy.SAMPLE_ELIMINATE;
       case "OFFLINE_PROFILE":
         return SamplingPolicy.OFFLINE_PROFILE;
       default:
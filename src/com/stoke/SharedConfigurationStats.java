@@ -0,0 +1,327 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/* ConfigurationStats whose observations are also published to a memory
+ * mapped file, so every process on the host that tunes the same knobs learns
+ * from the others' tasks without any IPC round trips.
+ *
+ * The file holds one slot per process. A process claims a slot by holding an
+ * exclusive FileLock on its byte range (the OS drops it when the process
+ * dies, and the next process to claim the slot inherits its observations), so
+ * every slot has exactly one writer and no update needs a CAS. Each
+ * configuration's entry in a slot is a seqlock-protected (count, reward sum)
+ * pair: the writer bumps the sequence to odd, writes, and bumps it back to
+ * even; readers retry until they see the same even sequence on both sides.
+ *
+ * The local arrays hold the merged view (own + other slots). A learn() updates
+ * it right away and writes our slot; other processes' progress is folded in
+ * for the learned configuration and for a rolling batch of others on every
+ * learn, so a full sweep costs O(slots) per step rather than a pause.
+ *
+ * forget() zeroes our slot for the configuration and records what the other
+ * slots held at that point as a baseline, so that only their observations
+ * made after it are folded back in. The baselines live in this process only.
+ *
+ * Only spaces without InferredKnobs can be shared: their configuration ids
+ * mean different settings from round to round. */
+public class SharedConfigurationStats extends ConfigurationStats {
+  public static final int MAGIC   = 0x53544b51; // "STKQ"
+  public static final int VERSION = 1;
+  public static final int SLOTS   = 8;
+
+  /* Configurations folded in from other slots per learn() */
+  public static final int REFRESH_BATCH = 64;
+
+  static final int HEADER_BYTES = 64;
+  static final int ENTRY_BYTES  = 16;   // int seq, int count, double sum
+
+  private static final int SEQ   = 0;
+  private static final int COUNT = 4;
+  private static final int SUM   = 8;
+
+  /* One mapping and one claimed slot per file and process, reused by every
+   * mini bandit this process builds over the same space. */
+  static final class Mapping {
+    final String           _path;
+    final long             _fingerprint;
+    final int              _size;
+    final int              _slots;
+    final int              _slot;
+    final RandomAccessFile _file;
+    final FileLock         _lock;
+    final MappedByteBuffer _buffer;
+
+    Mapping(String path, long fingerprint, int size, int slots, int slot,
+        RandomAccessFile file, FileLock lock, MappedByteBuffer buffer) {
+      _path = path;
+      _fingerprint = fingerprint;
+      _size = size;
+      _slots = slots;
+      _slot = slot;
+      _file = file;
+      _lock = lock;
+      _buffer = buffer;
+    }
+
+    long slotBytes() {
+      return (long) _size * ENTRY_BYTES;
+    }
+
+    int entry(int slot, int id) {
+      return (int) (HEADER_BYTES + (slot * slotBytes()) + ((long) id * ENTRY_BYTES));
+    }
+  }
+
+  private static final Map<String, Mapping> _mappings = new HashMap<>();
+
+  static synchronized Mapping map(String path, long fingerprint, int size) throws IOException {
+    Mapping m = _mappings.get(path);
+    if (m != null) {
+      if (m._fingerprint != fingerprint || m._size != size) {
+        throw new IOException(path + " is already shared for a different configuration space");
+      }
+      return m;
+    }
+
+    RandomAccessFile file = new RandomAccessFile(path, "rw");
+    try {
+      FileChannel channel = file.getChannel();
+      int slots = SLOTS;
+
+      // The header lock serializes creation against other processes opening
+      // the same file.
+      FileLock init = channel.lock(0, HEADER_BYTES, false);
+      try {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        boolean fresh = file.length() < HEADER_BYTES;
+        if (!fresh) {
+          channel.read(header, 0);
+          header.flip();
+          int magic = header.getInt();
+          if (magic == 0) {
+            fresh = true;
+          } else {
+            int version = header.getInt();
+            long fp = header.getLong();
+            int fsize = header.getInt();
+            slots = header.getInt();
+            if (magic != MAGIC || version != VERSION || fp != fingerprint || fsize != size) {
+              throw new IOException(path + " was created for a different configuration space");
+            }
+          }
+        }
+        if (fresh) {
+          file.setLength(HEADER_BYTES + ((long) slots * size * ENTRY_BYTES));
+          header.clear();
+          header.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putInt(size).putInt(slots);
+          header.flip();
+          channel.write(header, 0);
+        }
+      } finally {
+        init.release();
+      }
+
+      long bytes = HEADER_BYTES + ((long) slots * size * ENTRY_BYTES);
+      if (bytes > Integer.MAX_VALUE) {
+        throw new IOException(path + " would be larger than a single mapping");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+
+      long slotBytes = (long) size * ENTRY_BYTES;
+      for (int slot = 0; slot < slots; slot++) {
+        FileLock lock = null;
+        try {
+          lock = channel.tryLock(HEADER_BYTES + (slot * slotBytes), slotBytes, false);
+        } catch (OverlappingFileLockException e) {
+          lock = null;
+        }
+        if (lock != null) {
+          m = new Mapping(path, fingerprint, size, slots, slot, file, lock, buffer);
+          _mappings.put(path, m);
+          System.err.format("STOKE: Sharing stats through %s (slot %d of %d)\n", path, slot, slots);
+          return m;
+        }
+      }
+      throw new IOException("all " + slots + " slots of " + path + " are taken");
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  private final Mapping          _map;
+  private final MappedByteBuffer _buffer;
+
+  /* Mirrors of our own slot */
+  private final int[]    _ownCounts;
+  private final double[] _ownSums;
+
+  /* What each other slot held for a configuration when we last forgot it,
+   * indexed [slot * _size + id] */
+  private final int[]    _baseCounts;
+  private final double[] _baseSums;
+
+  private int _refreshCursor = 0;
+
+  /* A writer that died mid-update leaves its sequence odd until the slot is
+   * claimed again; readers give up on such an entry instead of spinning. */
+  static final int MAX_SPINS = 1000;
+
+  /* Volatile accesses order the plain buffer accesses around the seqlock */
+  private volatile int _fence;
+
+  public SharedConfigurationStats(int size, String path, long fingerprint) throws IOException {
+    super(size);
+    _map = map(path, fingerprint, size);
+    _buffer = _map._buffer;
+    _ownCounts = new int[size];
+    _ownSums = new double[size];
+    _baseCounts = new int[_map._slots * size];
+    _baseSums = new double[_map._slots * size];
+
+    for (int id = 0; id < size; id++) {
+      int entry = _map.entry(_map._slot, id);
+      int seq = _buffer.getInt(entry + SEQ);
+      if ((seq & 1) != 0) {
+        _buffer.putInt(entry + SEQ, seq + 1);
+      }
+      _ownCounts[id] = _buffer.getInt(entry + COUNT);
+      _ownSums[id] = _buffer.getDouble(entry + SUM);
+      refresh(id);
+    }
+  }
+
+  public int slot() {
+    return _map._slot;
+  }
+
+  /* Pulls of id made by this process, as opposed to numOn(id) */
+  public int ownNumOn(int id) {
+    return _ownCounts[id];
+  }
+
+  @Override
+  public void learn(int id, double leftReward, double rightReward) {
+    super.learn(id, leftReward, rightReward);
+
+    _ownCounts[id]++;
+    _ownSums[id] += leftReward;
+    publish(id);
+
+    refresh(id);
+    for (int i = 0; i < REFRESH_BATCH && i < _size; i++) {
+      refresh(_refreshCursor);
+      _refreshCursor = (_refreshCursor + 1 == _size) ? 0 : _refreshCursor + 1;
+    }
+  }
+
+  /* The other slots' observations of id so far are stale as well (e.g., a
+   * change was detected here): they stay in the file for their writers, but
+   * refresh() only counts what they add after this call. */
+  @Override
+  public void forget(int id) {
+    super.forget(id);
+
+    _ownCounts[id] = 0;
+    _ownSums[id] = 0.0;
+    publish(id);
+
+    for (int slot = 0; slot < _map._slots; slot++) {
+      if (slot == _map._slot) {
+        continue;
+      }
+      int base = (slot * _size) + id;
+      if (read(_map.entry(slot, id))) {
+        _baseCounts[base] = _readCount;
+        _baseSums[base] = _readSum;
+      } else {
+        _baseCounts[base] = 0;
+        _baseSums[base] = 0.0;
+      }
+    }
+  }
+
+  private void publish(int id) {
+    int entry = _map.entry(_map._slot, id);
+    int seq = _buffer.getInt(entry + SEQ);
+    _buffer.putInt(entry + SEQ, seq + 1);
+    _fence = seq;
+    _buffer.putInt(entry + COUNT, _ownCounts[id]);
+    _buffer.putDouble(entry + SUM, _ownSums[id]);
+    _fence = seq;
+    _buffer.putInt(entry + SEQ, seq + 2);
+  }
+
+  /* The entry last read by read() */
+  private int    _readCount;
+  private double _readSum;
+
+  /* Seqlock read of another slot's entry; false if its writer stayed
+   * mid-update for MAX_SPINS tries */
+  private boolean read(int entry) {
+    for (int spin = 0; spin < MAX_SPINS; spin++) {
+      int seq = _buffer.getInt(entry + SEQ);
+      int f = _fence;
+      int c = _buffer.getInt(entry + COUNT);
+      double s = _buffer.getDouble(entry + SUM);
+      f = _fence;
+      if ((seq & 1) == 0 && seq == _buffer.getInt(entry + SEQ)) {
+        _readCount = c;
+        _readSum = s;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /* Folds the other slots' observations of id into the merged view */
+  public void refresh(int id) {
+    int count = _ownCounts[id];
+    double sum = _ownSums[id];
+    boolean rebased = false;
+
+    for (int slot = 0; slot < _map._slots; slot++) {
+      if (slot == _map._slot) {
+        continue;
+      }
+      if (read(_map.entry(slot, id))) {
+        int base = (slot * _size) + id;
+        if (_readCount < _baseCounts[base]) {
+          // The slot was forgotten or reclaimed since: all of it is newer
+          _baseCounts[base] = 0;
+          _baseSums[base] = 0.0;
+          rebased = true;
+        }
+        count += _readCount - _baseCounts[base];
+        sum += _readSum - _baseSums[base];
+      }
+    }
+
+    if ((count != _numOns[id] || rebased) && count > 0) {
+      set(id, sum / (double) count, count);
+    }
+  }
+}
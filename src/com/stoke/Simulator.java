@@ -0,0 +1,624 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.eval.*;
+import com.stoke.types.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Offline replay of recorded rewards, for comparing policies without
+ * redeploying to a phone.
+ *
+ * A Trace holds the rewards a real run observed for each configuration (from
+ * the ETask lines of stoke.log, an offline table, or an EventJournal). Every
+ * replay builds its own machine over a knob set of the trace's shape and runs
+ * it for a fixed number of tasks on a TraceReward, which answers each task
+ * with a recorded reward of the configuration that was selected (drawn with
+ * replacement). Replays share nothing but the trace, so a grid of policies,
+ * sampling parameters and seeds runs in parallel on a ForkJoinPool.
+ *
+ * For every setup, averaged over its replays:
+ *
+ *   sampling     tasks spent in the sampling phase
+ *   regret       sum over tasks of (mean reward of the selected configuration
+ *                - mean reward of the best one), in the trace's units
+ *   energy       sum of the replayed joules
+ *   convergence  the task from which the machine's own best configuration
+ *                (ConfigurationStats.bestId) is the trace's best for the rest
+ *                of the replay; replays that end on another one do not count
+ *
+ * Only discrete knobs are replayed: inferred knobs renumber the configurations
+ * every round, so their traces are rejected. */
+public class Simulator {
+  public static final int STEPS = 500;
+  public static final int RUNS  = 20;
+
+  /* A policy and its parameters */
+  public static class Setup {
+    public final StochasticPolicyType _policy;
+    public final SamplingPolicy _sampling;
+    public final int _numTaskSamples;
+
+    public Setup(StochasticPolicyType policy, SamplingPolicy sampling, int numTaskSamples) {
+      _policy = policy;
+      _sampling = sampling;
+      _numTaskSamples = numTaskSamples;
+    }
+
+    public String toString() {
+      return String.format("%s %s x%d", _policy, _sampling, _numTaskSamples);
+    }
+  }
+
+  public static class Result {
+    public final Setup _setup;
+    public int    _runs;
+    public double _sampling;
+    public double _regret;
+    public double _energy;
+    public int    _converged;
+    public double _convergence;
+    public String _error = null;
+
+    Result(Setup setup) {
+      _setup = setup;
+    }
+  }
+
+  /* Recorded rewards by configuration id */
+  public static class Trace {
+    protected double[][] _raw;
+    protected double[][] _joules;
+    protected long[][]   _ms;
+    protected int[]      _count;
+    protected int[]      _radix = null;
+    protected String[]   _knobNames = null;
+
+    protected double[] _mean;
+    protected int      _best;
+
+    protected Trace(int size) {
+      _raw = new double[size][];
+      _joules = new double[size][];
+      _ms = new long[size][];
+      _count = new int[size];
+      for (int id = 0; id < size; id++) {
+        _raw[id] = new double[4];
+        _joules[id] = new double[4];
+        _ms[id] = new long[4];
+      }
+    }
+
+    protected void add(int id, double raw, double joules, long ms) {
+      if (id >= _count.length) {
+        grow(id + 1);
+      }
+      int n = _count[id];
+      if (n == _raw[id].length) {
+        _raw[id] = Arrays.copyOf(_raw[id], n * 2);
+        _joules[id] = Arrays.copyOf(_joules[id], n * 2);
+        _ms[id] = Arrays.copyOf(_ms[id], n * 2);
+      }
+      _raw[id][n] = raw;
+      _joules[id][n] = joules;
+      _ms[id][n] = ms;
+      _count[id] = n + 1;
+    }
+
+    private void grow(int size) {
+      int old = _count.length;
+      _raw = Arrays.copyOf(_raw, size);
+      _joules = Arrays.copyOf(_joules, size);
+      _ms = Arrays.copyOf(_ms, size);
+      _count = Arrays.copyOf(_count, size);
+      for (int id = old; id < size; id++) {
+        _raw[id] = new double[4];
+        _joules[id] = new double[4];
+        _ms[id] = new long[4];
+      }
+    }
+
+    /* Every configuration needs at least one reward to replay */
+    protected void finish(String source) {
+      int missing = 0;
+      for (int id = 0; id < _count.length; id++) {
+        if (_count[id] == 0) {
+          missing++;
+        }
+      }
+      if (_count.length == 0 || missing > 0) {
+        throw new RuntimeException(String.format(
+              "Error: Trace %s has no rewards for %d of %d configurations", source, missing, _count.length));
+      }
+      if (_radix != null) {
+        int product = 1;
+        for (int i = 0; i < _radix.length; i++) {
+          product *= _radix[i];
+        }
+        if (product != _count.length) {
+          _radix = null;
+          _knobNames = null;
+        }
+      }
+
+      _mean = new double[_count.length];
+      _best = 0;
+      for (int id = 0; id < _count.length; id++) {
+        double sum = 0.0;
+        for (int i = 0; i < _count[id]; i++) {
+          sum += _raw[id][i];
+        }
+        _mean[id] = sum / _count[id];
+        if (_mean[id] < _mean[_best]) {
+          _best = id;
+        }
+      }
+    }
+
+    public int size() {
+      return _count.length;
+    }
+
+    public int samples(int id) {
+      return _count[id];
+    }
+
+    public double mean(int id) {
+      return _mean[id];
+    }
+
+    public int best() {
+      return _best;
+    }
+
+    /* A fresh knob set per machine (knobs carry the selected position). With
+     * no recorded shape the space is a single knob over all configurations. */
+    public Knob[] knobs() {
+      int[] radix = (_radix != null) ? _radix : new int[]{ _count.length };
+      Knob[] knobs = new Knob[radix.length];
+      for (int i = 0; i < radix.length; i++) {
+        Integer[] settings = new Integer[radix[i]];
+        for (int pos = 0; pos < radix[i]; pos++) {
+          settings[pos] = pos;
+        }
+        String name = (_knobNames != null) ? _knobNames[i] : "knob-" + i;
+        knobs[i] = new DiscreteKnob(name, KnobValT.haveIntegers(settings));
+      }
+      return knobs;
+    }
+
+    /* Reads a journal, a log or an offline table, by content */
+    public static Trace load(String path) throws IOException {
+      DataInputStream in = new DataInputStream(new FileInputStream(path));
+      int magic = 0;
+      try {
+        magic = in.readInt();
+      } catch (EOFException e) {
+        // Too short for a journal
+      } finally {
+        in.close();
+      }
+      if (magic == EventJournal.MAGIC) {
+        return fromJournal(path);
+      }
+      return fromText(path);
+    }
+
+    public static Trace fromJournal(String path) throws IOException {
+      Trace trace = new Trace(0);
+      EventJournal.Reader reader = new EventJournal.Reader(path);
+      try {
+        EventJournal.Event ev;
+        while ((ev = reader.next()) != null) {
+          switch (ev._type) {
+            case EventJournal.TASK:
+              trace.add(ev._configId, ev._raw, ev._energy, ev._ms);
+              break;
+            case EventJournal.ROUND_START:
+              throw new RuntimeException("Error: Trace " + path + " is from a run with an inferred knob");
+            case EventJournal.CONFIG:
+              if (trace._radix == null) {
+                trace._radix = new int[ev._positions.length];
+              }
+              for (int i = 0; i < ev._positions.length && i < trace._radix.length; i++) {
+                trace._radix[i] = Math.max(trace._radix[i], ev._positions[i] + 1);
+              }
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      trace.finish(path);
+      return trace;
+    }
+
+    /* stoke.log: one ETask line per task, e.g.
+     *
+     *   ETask 12-3: Configuration:5 Energy:1.2 Reward:-1.2 Raw:1.2 Time:80 TotalReward:9.7
+     *
+     * and configuration dumps, which give the knob shape. Anything else is an
+     * offline table (a header line, then Config:<id> Reward:<q> NumOn:<n>),
+     * whose averaged Q values are replayed as a single reward each. */
+    public static Trace fromText(String path) throws IOException {
+      Trace trace = new Trace(0);
+      boolean isLog = false;
+      List<String> table = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      List<Set<String>> settings = new ArrayList<>();
+
+      BufferedReader br = new BufferedReader(new FileReader(path));
+      try {
+        String l;
+        while ((l = br.readLine()) != null) {
+          if (l.startsWith("ETask ")) {
+            isLog = true;
+            int id = -1;
+            double raw = 0.0;
+            double joules = 0.0;
+            long ms = 0;
+            String[] tokens = l.split(" ");
+            for (int i = 2; i < tokens.length; i++) {
+              int colon = tokens[i].indexOf(':');
+              if (colon < 0) {
+                continue;
+              }
+              String key = tokens[i].substring(0, colon);
+              String val = tokens[i].substring(colon + 1);
+              switch (key) {
+                case "Configuration": id = Integer.parseInt(val); break;
+                case "Energy":        joules = Double.parseDouble(val); break;
+                case "Raw":           raw = Double.parseDouble(val); break;
+                case "Time":          ms = Long.parseLong(val); break;
+                default:              break;
+              }
+            }
+            if (id >= 0) {
+              trace.add(id, raw, joules, ms);
+            }
+          } else if (l.startsWith("==ROUND-START==")) {
+            throw new RuntimeException("Error: Trace " + path + " is from a run with an inferred knob");
+          } else if (l.startsWith("STOKE: Config: ")) {
+            isLog = true;
+            addShape(l, names, settings);
+          } else if (l.startsWith("Config:")) {
+            table.add(l);
+          }
+        }
+      } finally {
+        br.close();
+      }
+
+      if (isLog) {
+        if (!names.isEmpty()) {
+          trace._knobNames = names.toArray(new String[]{});
+          trace._radix = new int[settings.size()];
+          for (int i = 0; i < settings.size(); i++) {
+            trace._radix[i] = settings.get(i).size();
+          }
+        }
+      } else {
+        for (int i = 0; i < table.size(); i++) {
+          String[] tokens = table.get(i).split(" ");
+          int id = Integer.parseInt(tokens[0].split(":")[1]);
+          double reward = Double.parseDouble(tokens[1].split(":")[1]);
+          // Q is the mean of (SLA - raw) with a zero SLA
+          trace.add(id, -reward, Math.abs(reward), 0);
+        }
+      }
+      trace.finish(path);
+      return trace;
+    }
+
+    /* "STOKE: Config: 5 - Knobs: {gps:1000 sync:30 } | -- on:2 reward:-1.2" */
+    private static void addShape(String l, List<String> names, List<Set<String>> settings) {
+      int open = l.indexOf('{');
+      int close = l.indexOf('}');
+      if (open < 0 || close < open) {
+        return;
+      }
+      String[] pairs = l.substring(open + 1, close).trim().split(" ");
+      for (int i = 0; i < pairs.length; i++) {
+        int colon = pairs[i].lastIndexOf(':');
+        if (colon < 0) {
+          continue;
+        }
+        if (i == names.size()) {
+          names.add(pairs[i].substring(0, colon));
+          settings.add(new HashSet<String>());
+        }
+        settings.get(i).add(pairs[i].substring(colon + 1));
+      }
+    }
+  }
+
+  /* Answers each task with a recorded reward of the configuration the
+   * machine has selected. */
+  public static class TraceReward extends Reward {
+    protected final Trace _trace;
+    protected final Random _random;
+    protected int  _id = 0;
+    protected long _lastMs = 0;
+
+    public TraceReward(Trace trace, long seed) {
+      super(null);
+      _trace = trace;
+      _random = new Random(seed);
+    }
+
+    public void select(int id) {
+      _id = id;
+    }
+
+    public long lastMs() {
+      return _lastMs;
+    }
+
+    @Override
+    public double valuate() {
+      int i = _random.nextInt(_trace._count[_id]);
+      _cachedJoules = _trace._joules[_id][i];
+      _lastMs = _trace._ms[_id][i];
+      _lastSec = _lastMs / 1000.0;
+      return _trace._raw[_id][i];
+    }
+  }
+
+  /* One replay: { regret, energy, convergence step or -1, sampling tasks } */
+  protected static class Replay extends RecursiveTask<double[]> {
+    private static final long serialVersionUID = 1L;
+
+    private final Trace _trace;
+    private final Setup _setup;
+    private final int _steps;
+    private final long _seed;
+
+    Replay(Trace trace, Setup setup, int steps, long seed) {
+      _trace = trace;
+      _setup = setup;
+      _steps = steps;
+      _seed = seed;
+    }
+
+    @Override
+    protected double[] compute() {
+      TraceReward reward = new TraceReward(_trace, _seed);
+      AeneasMachine machine = AeneasMachine.forReplay(_trace.knobs(), _setup._policy, _setup._sampling, reward, policySeed(_seed));
+      MiniMachine mini = new MiniMachine(machine, machine._inputKnobs, machine._space,
+          _setup._sampling, _setup._policy, machine._rewardType);
+      mini.setNumTaskSamples(_setup._numTaskSamples);
+
+      int best = _trace.best();
+      double bestMean = _trace.mean(best);
+      double regret = 0.0;
+      double energy = 0.0;
+      int lastOff = -1;
+      int sampling = 0;
+      for (int step = 0; step < _steps; step++) {
+        mini.preStep(false);
+        if (mini.inSampling()) {
+          sampling++;
+        }
+        int id = mini.currentConfiguration();
+        reward.select(id);
+        double raw = reward.valuate();
+        double joules = reward.cached();
+        mini.postStep(reward.SLA() - raw, 0.0, reward.lastMs(), raw, joules);
+
+        regret += _trace.mean(id) - bestMean;
+        energy += joules;
+        if (_trace.mean(mini.stats().bestId()) > bestMean) {
+          lastOff = step;
+        }
+      }
+      double convergence = (lastOff == _steps - 1) ? -1 : lastOff + 1;
+      return new double[]{ regret, energy, convergence, sampling };
+    }
+  }
+
+  protected final Trace _trace;
+  protected int  _steps = STEPS;
+  protected int  _runs = RUNS;
+  protected long _seed = 1;
+
+  public Simulator(Trace trace) {
+    _trace = trace;
+  }
+
+  public void setSteps(int steps) {
+    _steps = steps;
+  }
+
+  public void setRuns(int runs) {
+    _runs = runs;
+  }
+
+  public void setSeed(long seed) {
+    _seed = seed;
+  }
+
+  /* The policy of a replay draws from a stream of its own, apart from the
+   * trace draws of the same seed */
+  static long policySeed(long seed) {
+    return ~seed;
+  }
+
+  /* Replays every setup _runs times on the pool. Replay r of every setup
+   * draws its rewards and its policy's random choices from seed _seed + r,
+   * so a run is reproducible and setups are compared on the same draws
+   * where they select the same configurations. */
+  public List<Result> run(List<Setup> setups, ForkJoinPool pool) {
+    List<Replay> replays = new ArrayList<>();
+    for (int s = 0; s < setups.size(); s++) {
+      for (int r = 0; r < _runs; r++) {
+        Replay replay = new Replay(_trace, setups.get(s), _steps, _seed + r);
+        replays.add(replay);
+        pool.execute(replay);
+      }
+    }
+
+    List<Result> results = new ArrayList<>();
+    for (int s = 0; s < setups.size(); s++) {
+      Result result = new Result(setups.get(s));
+      double convergence = 0.0;
+      for (int r = 0; r < _runs; r++) {
+        double[] run;
+        try {
+          run = replays.get((s * _runs) + r).join();
+        } catch (RuntimeException e) {
+          // One broken setup does not cost the others their results
+          Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+          result._error = cause.getMessage();
+          continue;
+        }
+        result._regret += run[0];
+        result._sampling += run[3];
+        result._energy += run[1];
+        if (run[2] >= 0) {
+          result._converged++;
+          convergence += run[2];
+        }
+      }
+      result._runs = _runs;
+      result._regret /= _runs;
+      result._sampling /= _runs;
+      result._energy /= _runs;
+      result._convergence = (result._converged > 0) ? convergence / result._converged : -1;
+      results.add(result);
+    }
+    return results;
+  }
+
+  public static void report(Trace trace, List<Result> results, PrintStream out) {
+    out.format("Trace: %d configurations, best %d (mean reward %.4f)\n",
+        trace.size(), trace.best(), trace.mean(trace.best()));
+    out.format("%-36s %6s %10s %12s %12s %10s %12s\n", "setup", "runs", "sampling", "regret", "energy", "converged", "convergence");
+    for (int i = 0; i < results.size(); i++) {
+      Result r = results.get(i);
+      if (r._error != null) {
+        out.format("%-36s failed: %s\n", r._setup, r._error);
+        continue;
+      }
+      out.format("%-36s %6d %10.1f %12.4f %12.4f %10d %12.1f\n",
+          r._setup, r._runs, r._sampling, r._regret, r._energy, r._converged, r._convergence);
+    }
+  }
+
+  /* java com.stoke.Simulator [-steps n] [-runs n] [-seed n] [-threads n]
+   *   [-policies P,...] [-sampling S,...] [-samples n,...] <trace>
+   *
+   * Runs every combination of the listed policies, sampling policies and task
+   * samples per configuration (by default every policy, SAMPLE_ALL and 2). */
+  public static void main(String[] args) throws Exception {
+    int steps = STEPS;
+    int runs = RUNS;
+    long seed = 1;
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<StochasticPolicyType> policies = new ArrayList<>(Arrays.asList(StochasticPolicyType.values()));
+    List<SamplingPolicy> samplings = new ArrayList<>();
+    samplings.add(SamplingPolicy.SAMPLE_ALL);
+    List<Integer> samples = new ArrayList<>();
+    samples.add(2);
+    String path = null;
+
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-steps":
+          steps = Integer.parseInt(args[++i]);
+          break;
+        case "-runs":
+          runs = Integer.parseInt(args[++i]);
+          break;
+        case "-seed":
+          seed = Long.parseLong(args[++i]);
+          break;
+        case "-threads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        case "-policies":
+          policies.clear();
+          for (String p : args[++i].split(",")) {
+            policies.add(StochasticPolicyType.valueOf(p));
+          }
+          break;
+        case "-sampling":
+          samplings.clear();
+          for (String p : args[++i].split(",")) {
+            samplings.add(SamplingPolicy.valueOf(p));
+          }
+          break;
+        case "-samples":
+          samples.clear();
+          for (String n : args[++i].split(",")) {
+            samples.add(Integer.parseInt(n));
+          }
+          break;
+        default:
+          path = args[i];
+          break;
+      }
+    }
+    if (path == null) {
+      System.err.println("usage: Simulator [-steps n] [-runs n] [-seed n] [-threads n] "
+          + "[-policies P,...] [-sampling S,...] [-samples n,...] <trace>");
+      System.exit(1);
+    }
+
+    // Loading LogUtil opens (and truncates) its log; never let that be the trace
+    String logname = System.getenv(LogUtil.LOG_PREFIX_ENVVAR);
+    if (logname == null) {
+      logname = "stoke.log";
+    }
+    if (new File(logname).getCanonicalFile().equals(new File(path).getCanonicalFile())) {
+      System.err.format("STOKE: Simulator would overwrite its trace %s; set %s to another file\n",
+          path, LogUtil.LOG_PREFIX_ENVVAR);
+      System.exit(1);
+    }
+
+    Trace trace = Trace.load(path);
+    LogUtil.setFileEnabled(false);
+    LogUtil.setLevel(LogUtil.Level.ERROR);
+
+    List<Setup> setups = new ArrayList<>();
+    for (StochasticPolicyType policy : policies) {
+      for (SamplingPolicy sampling : samplings) {
+        for (Integer n : samples) {
+          setups.add(new Setup(policy, sampling, n));
+        }
+      }
+    }
+
+    Simulator sim = new Simulator(trace);
+    sim.setSteps(steps);
+    sim.setRuns(runs);
+    sim.setSeed(seed);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      report(trace, sim.run(setups, pool), System.out);
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import java.io.*;
+import java.lang.Math;
+import java.util.Arrays;
+
+import com.stoke.util.*;
+
+/* Sliding-window UCB (Garivier and Moulines): the UCB index over only the
+ * last W rewards, so a drift is fully forgotten after W steps.
+ *
+ *   index(a) = -(|S_W(a)/N_W(a)| - L) / (H - L) + sqrt(XI log min(t, W) / N_W(a))
+ *
+ * with L and H the smallest and largest |reward| seen (see
+ * DiscountedUCBStochastic). A
+ * configuration with no pull left in the window is tried again.
+ *
+ * The window is a ring of (configuration, reward); each reward updates the
+ * per-configuration counts and sums once when it enters and once when it
+ * leaves, so updates are O(1). W defaults to the larger of WINDOW and twice
+ * the number of configurations (a smaller window would do little but cycle
+ * through configurations that fell out of it), or the STOKE_UCB_WINDOW
+ * property. */
+public class SlidingWindowUCBStochastic extends StochasticPolicy {
+
+  public static final int WINDOW = 200;
+  protected static final double XI = 0.6;
+
+  protected final int      _window;
+  protected final int[]    _ringIds;
+  protected final double[] _ringRewards;
+  protected int  _head = 0;
+  protected int  _filled = 0;
+  protected long _tick = 0;
+
+  protected final int[]    _counts;
+  protected final double[] _sums;
+  protected double _low = Double.MAX_VALUE;
+  protected double _high = 0.0;
+
+  public SlidingWindowUCBStochastic(MiniMachine machine, ConfigurationSpace space) {
+    super(machine, space);
+    int n = _stats.size();
+    Integer window = (Integer) AndroidUtil.getProperty("STOKE_UCB_WINDOW");
+    _window = (window != null) ? window : Math.max(WINDOW, 2 * n);
+    _ringIds = new int[_window];
+    _ringRewards = new double[_window];
+    _counts = new int[n];
+    _sums = new double[n];
+  }
+
+  public boolean shouldRandomize() {
+    return true;
+  }
+
+  public void learn() { }
+
+  @Override
+  public void observe(int id, double reward) {
+    _tick++;
+    if (_filled == _window) {
+      int old = _ringIds[_head];
+      if (--_counts[old] == 0) {
+        // Drop the rounding left by adding and removing
+        _sums[old] = 0.0;
+      } else {
+        _sums[old] -= _ringRewards[_head];
+      }
+    } else {
+      _filled++;
+    }
+    _ringIds[_head] = id;
+    _ringRewards[_head] = reward;
+    _head = (_head + 1 == _window) ? 0 : _head + 1;
+
+    _counts[id]++;
+    _sums[id] += reward;
+    _low = Math.min(_low, Math.abs(reward));
+    _high = Math.max(_high, Math.abs(reward));
+  }
+
+  /* Drops the configuration's rewards from the window, keeping the order of
+   * the rest. Done in place: a new round (MiniMachine.beginRound()) may
+   * forget many configurations at once. */
+  @Override
+  public void forget(int id) {
+    if (_counts[id] == 0) {
+      return;
+    }
+    if (_filled == _window && _head != 0) {
+      // Oldest reward first, as in a window that is not full yet
+      reverse(0, _head);
+      reverse(_head, _window);
+      reverse(0, _window);
+    }
+    int n = 0;
+    for (int k = 0; k < _filled; k++) {
+      if (_ringIds[k] != id) {
+        _ringIds[n] = _ringIds[k];
+        _ringRewards[n] = _ringRewards[k];
+        n++;
+      }
+    }
+    _filled = n;
+    _head = (n == _window) ? 0 : n;
+    _counts[id] = 0;
+    _sums[id] = 0.0;
+  }
+
+  /* Reverses the ring entries in [from, to) */
+  private void reverse(int from, int to) {
+    for (int i = from, j = to - 1; i < j; i++, j--) {
+      int id = _ringIds[i];
+      _ringIds[i] = _ringIds[j];
+      _ringIds[j] = id;
+      double reward = _ringRewards[i];
+      _ringRewards[i] = _ringRewards[j];
+      _ringRewards[j] = reward;
+    }
+  }
+
+  @Override
+  public void reset() {
+    _low = Double.MAX_VALUE;
+    _high = 0.0;
+  }
+
+  public Configuration stochasticSelect(int step) {
+    double logN = Math.log(Math.max(Math.min(_tick, _window), 1));
+    double low = (_high > _low) ? _low : 0.0;
+    double range = (_high > _low) ? _high - _low : Math.max(_high, 1.0);
+    double bestIndex = -Double.MAX_VALUE;
+    int bestI = 0;
+
+    for (int i = 0; i < _counts.length; i++) {
+      if (!_stats.isCandidate(i)) {
+        continue;
+      }
+      int n = _counts[i];
+      if (n == 0) {
+        return _space.get(i);
+      }
+      double index = (-(Math.abs(_sums[i] / n) - low) / range) + Math.sqrt((XI * logN) / n);
+      if (index > bestIndex) {
+        bestIndex = index;
+        bestI = i;
+      }
+    }
+    return _space.get(bestI);
+  }
+
+  public StochasticPolicyType type() {
+    return StochasticPolicyType.UCB_SLIDING_WINDOW;
+  }
+
+  @Override
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeInt(_window);
+    out.writeInt(_head);
+    out.writeInt(_filled);
+    out.writeLong(_tick);
+    out.writeDouble(_low);
+    out.writeDouble(_high);
+    for (int i = 0; i < _filled; i++) {
+      out.writeInt(_ringIds[i]);
+      out.writeDouble(_ringRewards[i]);
+    }
+  }
+
+  @Override
+  public void readState(DataInputStream in) throws IOException {
+    int window = in.readInt();
+    if (window != _window) {
+      throw new IOException(String.format("checkpoint has a window of %d, expected %d", window, _window));
+    }
+    _head = in.readInt();
+    _filled = in.readInt();
+    _tick = in.readLong();
+    _low = in.readDouble();
+    _high = in.readDouble();
+    Arrays.fill(_counts, 0);
+    Arrays.fill(_sums, 0.0);
+    for (int i = 0; i < _filled; i++) {
+      int id = in.readInt();
+      if (id < 0 || id >= _counts.length) {
+        throw new IOException("bad configuration in window " + id);
+      }
+      _ringIds[i] = id;
+      _ringRewards[i] = in.readDouble();
+      _counts[id]++;
+      _sums[id] += _ringRewards[i];
+    }
+  }
+}
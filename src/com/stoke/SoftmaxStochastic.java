@@ -20,54 +20,231 @@
 package com.stoke;
 
 import java.lang.Math;
-import java.util.Random;
 
-import com.stoke.types.KnobValT;
+import com.stoke.util.*;
 
+/* Boltzmann exploration. Configuration a is selected with probability
+ *
+ *   p(a) = exp(l(a)) / sum_b exp(l(b)),   l(a) = -(|Q(a)| / |Q*|) / T
+ *
+ * where Q* is the best Q, so the temperature is relative to the reward's own
+ * scale (at T = 0.05 a configuration 5% worse than the best is e times less
+ * likely). The sum is taken as a log-sum-exp around the largest logit, which
+ * keeps it finite for any temperature.
+ *
+ * Draws come from a Vose alias table, O(1) each. The table is rebuilt, in
+ * O(n), only when a logit has moved by more than the tolerance since it was
+ * built: the learned configuration's Q (checked in learn()), the scale, or
+ * the temperature. Accumulated drift counts, since Q is compared with its
+ * value at build time.
+ *
+ * The temperature anneals geometrically with the bandit step,
+ *
+ *   T(step) = max(minimum, T0 * decay^step)
+ *
+ * with T0, decay, minimum and the tolerance taken from the
+ * STOKE_SOFTMAX_TEMPERATURE, STOKE_SOFTMAX_DECAY, STOKE_SOFTMAX_MIN_TEMPERATURE
+ * and STOKE_SOFTMAX_TOLERANCE properties (no decay by default). */
 public class SoftmaxStochastic extends StochasticPolicy {
 
   protected static double TEMPERATURE = 0.05;
-  protected Random _random = new Random();
+  protected static double DECAY = 1.0;
+  protected static double MIN_TEMPERATURE = 0.001;
+  protected static double TOLERANCE = 0.01;
+
+  protected double _temperature = TEMPERATURE;
+  protected double _decay = DECAY;
+  protected double _minTemperature = MIN_TEMPERATURE;
+  protected double _tolerance = TOLERANCE;
+
+  protected FastRandom _random = new FastRandom();
+
+  /* Alias table: column i is i with probability _prob[i], else _alias[i] */
+  protected final double[] _prob;
+  protected final int[]    _alias;
+
+  /* Scratch for rebuilds, allocated once */
+  protected final double[] _scaled;
+  protected final int[]    _small;
+  protected final int[]    _large;
+
+  /* What the table was built from */
+  protected final double[] _builtQ;
+  protected double  _builtScale = 0.0;
+  protected double  _builtTemperature = 0.0;
+  protected int     _builtCandidates = 0;
+  protected boolean _dirty = true;
+  protected int     _rebuilds = 0;
+
+  public SoftmaxStochastic(MiniMachine bandit, ConfigurationSpace space) {
+    super(bandit, space);
 
-  public SoftmaxStochastic(MiniMachine bandit, Configuration[] configurations) {
-    super(bandit, configurations);
-    System.err.format("STOKE: Loaded softmax!\n");
+    Double temperature = (Double) AndroidUtil.getProperty("STOKE_SOFTMAX_TEMPERATURE");
+    if (temperature != null) {
+      _temperature = temperature;
+    }
+    Double decay = (Double) AndroidUtil.getProperty("STOKE_SOFTMAX_DECAY");
+    if (decay != null) {
+      _decay = decay;
+    }
+    Double minTemperature = (Double) AndroidUtil.getProperty("STOKE_SOFTMAX_MIN_TEMPERATURE");
+    if (minTemperature != null) {
+      _minTemperature = minTemperature;
+    }
+    Double tolerance = (Double) AndroidUtil.getProperty("STOKE_SOFTMAX_TOLERANCE");
+    if (tolerance != null) {
+      _tolerance = tolerance;
+    }
+
+    int n = _stats.size();
+    _prob = new double[n];
+    _alias = new int[n];
+    _scaled = new double[n];
+    _small = new int[n];
+    _large = new int[n];
+    _builtQ = new double[n];
+  }
+
+  public void setTemperature(double temperature, double decay, double minTemperature) {
+    _temperature = temperature;
+    _decay = decay;
+    _minTemperature = minTemperature;
+    _dirty = true;
+  }
+
+  public void setTolerance(double tolerance) {
+    _tolerance = tolerance;
+  }
+
+  public double temperature(int step) {
+    if (_decay == 1.0) {
+      return Math.max(_minTemperature, _temperature);
+    }
+    return Math.max(_minTemperature, _temperature * Math.pow(_decay, step));
+  }
+
+  /* Number of times the alias table was built */
+  public int rebuilds() {
+    return _rebuilds;
   }
 
   public boolean shouldRandomize() {
     return true;
   }
 
-  public void learn() { }
+  public void learn() {
+    int id = _stats.lastId();
+    if (!_dirty && id >= 0) {
+      double moved = Math.abs(Math.abs(_stats.qvalue(id)) - Math.abs(_builtQ[id]));
+      if (moved / (_builtScale * _builtTemperature) > _tolerance) {
+        _dirty = true;
+      }
+    }
+  }
+
+  @Override
+  public void forget(int id) {
+    _dirty = true;
+  }
+
+  @Override
+  public void reset() {
+    _dirty = true;
+  }
 
   public Configuration stochasticSelect(int step) {
-    throw new RuntimeException("TODO : Need to re-implement Softmax");
-    /*
-    double[] rewards = new double[_configurations.length];
-    double[] ratings = new double[_configurations.length];
+    double temperature = temperature(step);
+    double scale = scale();
+    if (_dirty
+        || _builtCandidates != _stats.numCandidates()
+        || Math.abs(temperature - _builtTemperature) > _tolerance * temperature
+        || Math.abs(scale - _builtScale) > _tolerance * scale) {
+      rebuild(scale, temperature);
+    }
 
-    double totalReward = 0;
-    double totalRating = 0;
+    int n = _prob.length;
+    int i = _random.nextInt(n);
+    return _space.get((_random.nextDouble() < _prob[i]) ? i : _alias[i]);
+  }
 
-    for(int i = 0; i < _configurations.length; i++) {
-      rewards[i] = Math.exp(-_configurations[i].getRewardMean() / TEMPERATURE);
-      ratings[i] = Math.exp(KnobValT.needDouble(_configurations[i].getRecording(AeneasMachine.FEEDBACK_KNOB)) / TEMPERATURE) / 1000;
+  protected double scale() {
+    double best = Math.abs(_stats.qvalue(_stats.bestId()));
+    return (best > 0.0) ? best : 1.0;
+  }
 
-      totalReward += rewards[i];
-      totalRating += ratings[i]; 
+  /* Vose's method over the log-sum-exp normalized probabilities */
+  protected void rebuild(double scale, double temperature) {
+    int n = _prob.length;
+    double inv = 1.0 / (scale * temperature);
+
+    // Configurations that are no longer candidates get no weight
+    double maxLogit = -Double.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      double q = _stats.qvalue(i);
+      _builtQ[i] = q;
+      double logit = -Math.abs(q) * inv;
+      _scaled[i] = logit;
+      if (logit > maxLogit && _stats.isCandidate(i)) {
+        maxLogit = logit;
+      }
+    }
+    double sum = 0.0;
+    for (int i = 0; i < n; i++) {
+      double w = _stats.isCandidate(i) ? Math.exp(_scaled[i] - maxLogit) : 0.0;
+      _scaled[i] = w;
+      sum += w;
     }
 
-    double guess = _random.nextDouble();
-    double prob = 0;
-    for(int i = 0; i < _configurations.length; i++) {
-      prob += (rewards[i] / totalReward + ratings[i] / totalRating) / 2;
-      if(prob < guess) {
-        return _configurations[i];
+    // Probabilities times n: columns below 1 are topped up from those above
+    int small = 0;
+    int large = 0;
+    double norm = n / sum;
+    for (int i = 0; i < n; i++) {
+      _scaled[i] *= norm;
+      if (_scaled[i] < 1.0) {
+        _small[small++] = i;
+      } else {
+        _large[large++] = i;
       }
     }
+    while (small > 0 && large > 0) {
+      int s = _small[--small];
+      int l = _large[--large];
+      _prob[s] = _scaled[s];
+      _alias[s] = l;
+      _scaled[l] = (_scaled[l] + _scaled[s]) - 1.0;
+      if (_scaled[l] < 1.0) {
+        _small[small++] = l;
+      } else {
+        _large[large++] = l;
+      }
+    }
+    // Leftovers are 1 up to rounding
+    while (large > 0) {
+      int l = _large[--large];
+      _prob[l] = 1.0;
+      _alias[l] = l;
+    }
+    while (small > 0) {
+      int s = _small[--small];
+      _prob[s] = _stats.isCandidate(s) ? 1.0 : 0.0;
+      _alias[s] = _stats.isCandidate(s) ? s : _stats.candidate(0);
+    }
+
+    _builtScale = scale;
+    _builtTemperature = temperature;
+    _builtCandidates = _stats.numCandidates();
+    _dirty = false;
+    _rebuilds++;
+
+    if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+      System.err.format("STOKE: Softmax table rebuilt: T:%.4f scale:%.4f\n", temperature, scale);
+    }
+  }
 
-    return _configurations[_configurations.length - 1];
-    */
+  @Override
+  public void setSeed(long seed) {
+    _random.setSeed(seed);
   }
 
   public StochasticPolicyType type() {
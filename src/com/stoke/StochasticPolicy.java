@@ -19,15 +19,20 @@
 
 package com.stoke;
 
+import java.io.*;
+
 public abstract class StochasticPolicy { 
 
-  protected Configuration[]   _configurations = null;
+  protected ConfigurationSpace _space = null;
 
   protected MiniMachine _miniBandit = null;
 
-  public StochasticPolicy(MiniMachine miniBandit, Configuration[] configurations) {
+  protected ConfigurationStats _stats = null;
+
+  public StochasticPolicy(MiniMachine miniBandit, ConfigurationSpace space) {
     _miniBandit = miniBandit;
-    _configurations = configurations;
+    _space = space;
+    _stats = miniBandit.stats();
   }
 
   public abstract boolean shouldRandomize();
@@ -35,24 +40,38 @@ public abstract class StochasticPolicy {
   public abstract Configuration stochasticSelect(int step);
 
   public Configuration argMaxSelect(int step) {
-    double minScore = Double.MAX_VALUE;
-    int minInd = 0;
-    for (int i = 0; i < _miniBandit._configurations.length; i++) {
-      Configuration c = _miniBandit._configurations[i];
-      //double escore = _bandit.scaledReward(c);
-      double reward = Math.abs(_miniBandit.qvalue(c));
-      if (Double.compare(reward, minScore) < 0) {
-        minScore = reward;
-        minInd = i;
-      }
-    }
-    Configuration ot = _miniBandit._configurations[minInd];
-    return ot;
+    return _space.get(_stats.bestId());
   }
 
   public abstract void learn();
 
+  /* Every reward the bandit learns, sampling included (learn() is only
+   * called once sampling is over). For policies that keep statistics of
+   * their own. */
+  public void observe(int id, double reward) { }
+
+  /* The configuration's rewards have shifted (see MiniMachine.reexplore()):
+   * policies that keep statistics of their own drop what they learned for
+   * it, as ConfigurationStats.forget() does. */
+  public void forget(int id) { }
+
+  /* A new round of the mini bandit (MiniMachine.beginRound()): the policy
+   * is kept, retired configurations have been forget()'d, and scalars that
+   * describe the round as a whole (exploration rate, reward range, cached
+   * picks) start over. */
+  public void reset() { }
+
+  /* Policies that draw at random reseed their generator here, so that a run
+   * can be reproduced (see AeneasMachine.setPolicySeed()). */
+  public void setSeed(long seed) { }
+
   public abstract StochasticPolicyType type();
 
+  /* Policies that carry state beyond the shared stats (e.g., VBDE's epsilon)
+   * add it to checkpoints here. */
+  public void writeState(DataOutputStream out) throws IOException { }
+
+  public void readState(DataInputStream in) throws IOException { }
+
 }
 
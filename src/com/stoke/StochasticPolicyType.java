@@ -30,7 +30,12 @@ public enum StochasticPolicyType {
   VBDE_10 ,
   VBDE_50 ,
   VBDE_200 ,
-  UCB ;
+  UCB ,
+  THOMPSON ,
+  UCB_DISCOUNTED ,
+  UCB_SLIDING_WINDOW ,
+  FACTORED ,
+  LINUCB ;
 
   public static StochasticPolicyType toStochasticPolicy(String s) {
     switch (s) {
@@ -54,6 +59,16 @@ public enum StochasticPolicyType {
         return StochasticPolicyType.VBDE_200;
       case "UCB":
         return StochasticPolicyType.UCB;
+      case "THOMPSON":
+        return StochasticPolicyType.THOMPSON;
+      case "UCB_DISCOUNTED":
+        return StochasticPolicyType.UCB_DISCOUNTED;
+      case "UCB_SLIDING_WINDOW":
+        return StochasticPolicyType.UCB_SLIDING_WINDOW;
+      case "FACTORED":
+        return StochasticPolicyType.FACTORED;
+      case "LINUCB":
+        return StochasticPolicyType.LINUCB;
       default:
         throw new RuntimeException("Error: Trying to select stochastic policy " + s + ". Does not exist.");
     }
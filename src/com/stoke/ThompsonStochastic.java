@@ -0,0 +1,94 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+import com.stoke.util.FastRandom;
+
+/* Thompson sampling. Every selection draws a plausible Q for each
+ * configuration from a Normal posterior around its running mean,
+ *
+ *   Q~(a) ~ N(Q(a), s(a)^2 / n(a))
+ *
+ * and picks the draw with the lowest |Q~|, the same criterion bestId() uses.
+ * Configurations that are clearly worse almost never win a draw, so
+ * exploration concentrates on the ones that could still be the best, and it
+ * fades by itself as n grows.
+ *
+ * s(a)^2 is the configuration's own reward variance shrunk toward the variance
+ * pooled over all configurations (worth PRIOR_DOF rewards), so that two
+ * lucky, nearly equal rewards do not collapse a posterior. Before any
+ * configuration has a spread, Q(a)^2 stands in for it. Configurations that
+ * were never tried are tried first. */
+public class ThompsonStochastic extends StochasticPolicy {
+
+  protected static final double PRIOR_DOF = 2.0;
+
+  protected FastRandom _random = new FastRandom();
+
+  public ThompsonStochastic(MiniMachine machine, ConfigurationSpace space) {
+    super(machine, space);
+  }
+
+  public boolean shouldRandomize() {
+    return true;
+  }
+
+  public void learn() { }
+
+  public Configuration stochasticSelect(int step) {
+    double pooled = _stats.pooledVariance();
+    double bestDraw = Double.MAX_VALUE;
+    int bestI = 0;
+
+    for (int i = 0; i < _stats.size(); i++) {
+      if (!_stats.isCandidate(i)) {
+        continue;
+      }
+      int n = _stats.numOn(i);
+      if (n == 0) {
+        return _space.get(i);
+      }
+      double q = _stats.qvalue(i);
+      double draw = Math.abs(q + (Math.sqrt(variance(i, q, pooled) / n) * _random.nextGaussian()));
+      if (draw < bestDraw) {
+        bestDraw = draw;
+        bestI = i;
+      }
+    }
+    return _space.get(bestI);
+  }
+
+  protected double variance(int i, double q, double pooled) {
+    double dof = Math.max(_stats.m2Count(i) - 1, 0);
+    if (Double.isNaN(pooled)) {
+      return (dof > 0) ? _stats.m2(i) / dof : q * q;
+    }
+    return (_stats.m2(i) + (PRIOR_DOF * pooled)) / (dof + PRIOR_DOF);
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    _random.setSeed(seed);
+  }
+
+  public StochasticPolicyType type() {
+    return StochasticPolicyType.THOMPSON;
+  }
+}
@@ -26,8 +26,8 @@ import com.stoke.types.KnobValT;
 
 public class UCBStochastic extends StochasticPolicy {
 
-  public UCBStochastic(MiniMachine machine, Configuration[] configurations) {
-    super(machine, configurations);
+  public UCBStochastic(MiniMachine machine, ConfigurationSpace space) {
+    super(machine, space);
   }
 
   public boolean shouldRandomize() {
@@ -44,17 +44,19 @@ public class UCBStochastic extends StochasticPolicy {
     double ucbAbsolute = -Double.MAX_VALUE;
     int ucbI = -1;
 
-    for (int i = 0; i < _configurations.length; i++) {
-      Configuration c = _configurations[i];
-      double qt = Math.abs(_miniBandit._leftRewards.get(c.getId()));
+    for (int i = 0; i < _stats.size(); i++) {
+      if (!_stats.isCandidate(i)) {
+        continue;
+      }
+      double qt = Math.abs(_stats.qvalue(i));
       qt = 1 - (qt / 200.0);
-      double ucbCur = ucb(qt, _miniBandit._numOns.get(c.getId()), curIter);
+      double ucbCur = ucb(qt, _stats.numOn(i), curIter);
       if (ucbCur > ucbAbsolute) {
           ucbAbsolute = ucbCur;
           ucbI = i;
       }
     }
-    return _configurations[ucbI];
+    return _space.get(ucbI);
   }
 
   public StochasticPolicyType type() {
@@ -19,6 +19,7 @@
 
 package com.stoke;
 
+import java.io.*;
 import java.lang.Math;
 import java.util.Random;
 
@@ -33,8 +34,8 @@ public class VBDEStochastic extends StochasticPolicy {
 
   protected double _ep = 1.0;
 
-  public VBDEStochastic(MiniMachine miniBandit, Configuration[] configurations, double sigma) {
-    super(miniBandit, configurations);
+  public VBDEStochastic(MiniMachine miniBandit, ConfigurationSpace space, double sigma) {
+    super(miniBandit, space);
     _sigma = sigma;
   }
 
@@ -48,29 +49,52 @@ public class VBDEStochastic extends StochasticPolicy {
   }
 
   protected void calculateEpsilon() {
-    double q_t = _miniBandit._leftRewards.get(_miniBandit._selected.getId());
-    double q_tm1 = _miniBandit._lastRewards.get(_miniBandit._selected.getId());
+    int selectedId = _miniBandit._selected.getId();
+    double q_t = _stats.qvalue(selectedId);
+    double q_tm1 = _stats.lastQvalue(selectedId);
 
 
     double qdiff = (-Math.abs(q_t - q_tm1));
     double ex = Math.pow(Math.E, (qdiff / _sigma));
-    double delta = 1.0 / _configurations.length;
+    double delta = 1.0 / _space.size();
     double f = (1.0-ex)/(1.0+ex);
     _ep = 
         (delta * f) +
         ((1-delta) * _ep);
 
     // Roll some stuff
-    System.err.format("STOKE: Config:%d  Q_t:%f  Q_tm1:%f  qdiff:%f  f:%f  ep_t:%f\n", 
-        _miniBandit._selected.getId(), q_t, q_tm1, qdiff, f, _ep);
+    if (LogUtil.isLoggable(LogUtil.Level.DEBUG)) {
+      System.err.format("STOKE: Config:%d  Q_t:%f  Q_tm1:%f  qdiff:%f  f:%f  ep_t:%f\n", 
+          _miniBandit._selected.getId(), q_t, q_tm1, qdiff, f, _ep);
+    }
     //LogUtil.writeLogger(String.format("STOKE: Config:%d  Q_t:%f  Q_tm1:%f  qdiff:%f  f:%f  ep_t:%f\n", _miniBandit._selected.getId(), q_t, q_tm1, qdiff, f, ep_t));
   }
 
+  @Override
+  public void reset() {
+    _ep = 1.0;
+  }
+
   public Configuration stochasticSelect(int step) {
-    return _configurations[_random.nextInt(_configurations.length)];
+    return _space.get(_stats.candidate(_random.nextInt(_stats.numCandidates())));
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    _random.setSeed(seed);
   }
 
   public StochasticPolicyType type() {
     return StochasticPolicyType.VBDE_05;
   }
+
+  @Override
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeDouble(_ep);
+  }
+
+  @Override
+  public void readState(DataInputStream in) throws IOException {
+    _ep = in.readDouble();
+  }
 }
@@ -0,0 +1,125 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke;
+
+/* Welch's t-test for "configuration a has a lower |Q| than configuration b"
+ * from their running means, sample variances and counts, with unequal
+ * variances:
+ *
+ *   t  = (|Q(b)| - |Q(a)|) / sqrt(s_a^2 / n_a + s_b^2 / n_b)
+ *   df = (s_a^2 / n_a + s_b^2 / n_b)^2
+ *        / ((s_a^2 / n_a)^2 / (n_a - 1) + (s_b^2 / n_b)^2 / (n_b - 1))
+ *
+ * and the one-sided p-value 1 - T_df(t). The Student t CDF goes through the
+ * regularized incomplete beta function (continued fraction, modified Lentz),
+ * accurate to about 1e-10, which is far more than a round needs. */
+public class WelchTest {
+  protected static final int    MAX_ITERATIONS = 200;
+  protected static final double EPSILON = 1e-12;
+  protected static final double TINY = 1e-300;
+
+  /* One-sided p-value of a being better (lower |mean|) than b; 1 when
+   * either side has fewer than two rewards */
+  public static double pValue(double meanA, double varA, int nA, double meanB, double varB, int nB) {
+    if (nA < 2 || nB < 2) {
+      return 1.0;
+    }
+    double diff = Math.abs(meanB) - Math.abs(meanA);
+    double seA = varA / nA;
+    double seB = varB / nB;
+    double se2 = seA + seB;
+    if (!(se2 > 0.0)) {
+      return (diff > 0.0) ? 0.0 : 1.0;
+    }
+    double t = diff / Math.sqrt(se2);
+    double df = (se2 * se2) / (((seA * seA) / (nA - 1)) + ((seB * seB) / (nB - 1)));
+    return 1.0 - studentTCdf(t, df);
+  }
+
+  public static double studentTCdf(double t, double df) {
+    double x = df / (df + (t * t));
+    double tail = 0.5 * regularizedBeta(x, 0.5 * df, 0.5);
+    return (t > 0) ? 1.0 - tail : tail;
+  }
+
+  /* I_x(a, b) */
+  public static double regularizedBeta(double x, double a, double b) {
+    if (x <= 0.0) {
+      return 0.0;
+    }
+    if (x >= 1.0) {
+      return 1.0;
+    }
+    double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+        + (a * Math.log(x)) + (b * Math.log(1.0 - x)));
+    // The continued fraction converges quickly only below the mean
+    if (x < (a + 1.0) / (a + b + 2.0)) {
+      return front * betaFraction(x, a, b) / a;
+    }
+    return 1.0 - (front * betaFraction(1.0 - x, b, a) / b);
+  }
+
+  protected static double betaFraction(double x, double a, double b) {
+    double c = 1.0;
+    double d = 1.0 - ((a + b) * x / (a + 1.0));
+    d = 1.0 / ((Math.abs(d) < TINY) ? TINY : d);
+    double h = d;
+    for (int m = 1; m <= MAX_ITERATIONS; m++) {
+      int m2 = 2 * m;
+      double num = m * (b - m) * x / ((a + m2 - 1.0) * (a + m2));
+      d = 1.0 + (num * d);
+      d = 1.0 / ((Math.abs(d) < TINY) ? TINY : d);
+      c = 1.0 + (num / c);
+      c = (Math.abs(c) < TINY) ? TINY : c;
+      h *= d * c;
+      num = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1.0));
+      d = 1.0 + (num * d);
+      d = 1.0 / ((Math.abs(d) < TINY) ? TINY : d);
+      c = 1.0 + (num / c);
+      c = (Math.abs(c) < TINY) ? TINY : c;
+      double delta = d * c;
+      h *= delta;
+      if (Math.abs(delta - 1.0) < EPSILON) {
+        break;
+      }
+    }
+    return h;
+  }
+
+  /* Lanczos approximation (g = 7, n = 9) */
+  protected static final double[] LANCZOS = {
+    0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+    771.32342877765313, -176.61502916214059, 12.507343278686905,
+    -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+  };
+
+  protected static double logGamma(double x) {
+    if (x < 0.5) {
+      return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1.0 - x);
+    }
+    x -= 1.0;
+    double sum = LANCZOS[0];
+    for (int i = 1; i < LANCZOS.length; i++) {
+      sum += LANCZOS[i] / (x + i);
+    }
+    double t = x + 7.5;
+    return (0.5 * Math.log(2.0 * Math.PI)) + ((x + 0.5) * Math.log(t)) - t + Math.log(sum);
+  }
+}
@@ -0,0 +1,98 @@
+/* ************************************************************************************************
+ * Copyright 2016 SUNY Binghamton
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ***********************************************************************************************/
+
+package com.stoke.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A small xorshift64* generator for policies that draw on every selection.
+ * java.util.Random updates its seed with a CAS on every call; an instance of
+ * this class belongs to one policy on one machine thread, so it keeps a plain
+ * long and never synchronizes. Not for anything security related. */
+public class FastRandom {
+  private static final AtomicLong _seeds = new AtomicLong(System.nanoTime());
+
+  private long _state;
+
+  /* Polar method: draws come in pairs, the second is kept for the next call */
+  private double  _spare;
+  private boolean _hasSpare = false;
+
+  public FastRandom() {
+    this(_seeds.addAndGet(0x9e3779b97f4a7c15L));
+  }
+
+  public FastRandom(long seed) {
+    setSeed(seed);
+  }
+
+  public void setSeed(long seed) {
+    // splitmix64 finalizer, so that nearby seeds give unrelated streams
+    long z = seed + 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    z = z ^ (z >>> 31);
+    _state = (z != 0) ? z : 0x9e3779b97f4a7c15L;
+    _hasSpare = false;
+  }
+
+  public long nextLong() {
+    long x = _state;
+    x ^= x >>> 12;
+    x ^= x << 25;
+    x ^= x >>> 27;
+    _state = x;
+    return x * 0x2545f4914f6cdd1dL;
+  }
+
+  /* Uniform in [0, 1) */
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  /* Uniform in [0, bound) */
+  public int nextInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    return (int) (((nextLong() >>> 32) * bound) >>> 32);
+  }
+
+  public boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+
+  /* Standard normal */
+  public double nextGaussian() {
+    if (_hasSpare) {
+      _hasSpare = false;
+      return _spare;
+    }
+    double u, v, s;
+    do {
+      u = (2.0 * nextDouble()) - 1.0;
+      v = (2.0 * nextDouble()) - 1.0;
+      s = (u * u) + (v * v);
+    } while (s >= 1.0 || s == 0.0);
+    double m = Math.sqrt(-2.0 * Math.log(s) / s);
+    _spare = v * m;
+    _hasSpare = true;
+    return u * m;
+  }
+}